@@ -0,0 +1,81 @@
+#!/usr/bin/env bash
+#
+# Measures download throughput and server CPU time per download for large files.
+#
+# Run it once against a server started with shareline.download.zero-copy=true and once with
+# shareline.download.zero-copy=false (the buffered copy path) and compare the two CSVs.
+#
+# Usage:
+#   SESSION=<JSESSIONID cookie value> APP_PID=<java pid> bench/download-bench.sh <label> [runs]
+#
+# Optional environment:
+#   BASE_URL   server to hit (default http://localhost:8080)
+#   SIZES      space separated sizes understood by `head -c` (default "1G 4G")
+#   WORK_DIR   where test payloads are generated (default /tmp/shareline-bench)
+#   RANGED     set to 1 to also time a ranged request for the second half of each file
+#
+# Output is CSV on stdout: label,request,size_bytes,run,seconds,bytes_per_second,cpu_ms
+
+set -euo pipefail
+
+LABEL="${1:?label required, e.g. zero-copy or buffered}"
+RUNS="${2:-5}"
+BASE_URL="${BASE_URL:-http://localhost:8080}"
+SIZES="${SIZES:-1G 4G}"
+WORK_DIR="${WORK_DIR:-/tmp/shareline-bench}"
+RANGED="${RANGED:-0}"
+
+: "${SESSION:?set SESSION to an authenticated JSESSIONID}"
+: "${APP_PID:?set APP_PID to the server process id}"
+
+CLK_TCK=$(getconf CLK_TCK)
+
+# utime + stime of the whole server process, in milliseconds
+cpu_ms() {
+    awk -v tck="$CLK_TCK" '{ print int(($14 + $15) * 1000 / tck) }' "/proc/${APP_PID}/stat"
+}
+
+fetch() {
+    local id="$1" range="${2:-}"
+    if [[ -n "$range" ]]; then
+        curl -s -o /dev/null -b "JSESSIONID=${SESSION}" -H "Range: bytes=${range}" \
+            -w '%{time_total} %{speed_download}' "${BASE_URL}/api/files/${id}"
+    else
+        curl -s -o /dev/null -b "JSESSIONID=${SESSION}" \
+            -w '%{time_total} %{speed_download}' "${BASE_URL}/api/files/${id}"
+    fi
+}
+
+measure() {
+    local request="$1" bytes="$2" run="$3" id="$4" range="${5:-}"
+    local before after result
+    before=$(cpu_ms)
+    result=$(fetch "$id" "$range")
+    after=$(cpu_ms)
+    echo "${LABEL},${request},${bytes},${run},${result% *},${result#* },$((after - before))"
+}
+
+mkdir -p "$WORK_DIR"
+echo "label,request,size_bytes,run,seconds,bytes_per_second,cpu_ms"
+
+for size in $SIZES; do
+    payload="${WORK_DIR}/payload-${size}.bin"
+    [[ -f "$payload" ]] || head -c "$size" /dev/urandom > "$payload"
+    bytes=$(stat -c %s "$payload")
+
+    id=$(curl -s -b "JSESSIONID=${SESSION}" -H 'Content-Type: application/octet-stream' \
+        --data-binary "@${payload}" "${BASE_URL}/api/files/upload/stream?filename=$(basename "$payload")" \
+        | sed -n 's/.*"id":\([0-9]*\).*/\1/p')
+
+    # Warm the page cache so runs compare the copy path, not the disk
+    fetch "$id" > /dev/null
+
+    for run in $(seq 1 "$RUNS"); do
+        measure full "$bytes" "$run" "$id"
+        if [[ "$RANGED" == "1" ]]; then
+            measure ranged "$bytes" "$run" "$id" "$((bytes / 2))-"
+        fi
+    done
+
+    curl -s -o /dev/null -X DELETE -b "JSESSIONID=${SESSION}" "${BASE_URL}/api/files/${id}"
+done
@@ -0,0 +1,83 @@
+#!/usr/bin/env bash
+#
+# Shows how many slow clients one node can carry before other requests start queueing.
+#
+# Opens N concurrent, rate-limited streaming uploads (each one holds a request-handling thread
+# while it trickles in), then times a burst of cheap requests while they are running. Run it
+# against a server started without and with SHARELINE_VIRTUAL_THREADS=true and compare.
+#
+# Usage:
+#   SESSION=<JSESSIONID cookie value> bench/slow-client-load.sh <label> [slow-client counts...]
+#
+# Optional environment:
+#   BASE_URL      server to hit (default http://localhost:8080)
+#   SLOW_RATE     upload rate per slow client, curl --limit-rate syntax (default 16k)
+#   SLOW_SIZE     bytes each slow client sends (default 4M, ~4 minutes at 16k)
+#   PROBES        cheap requests timed per step (default 50)
+#   PROBE_TIMEOUT seconds before a probe counts as an error (default 10)
+#
+# Output is CSV on stdout: label,slow_clients,probes,errors,p50_ms,p99_ms,max_ms
+
+set -euo pipefail
+
+LABEL="${1:?label required, e.g. platform or virtual}"
+shift
+if [[ $# -gt 0 ]]; then
+    STEPS=("$@")
+else
+    STEPS=(50 100 200 400 800)
+fi
+
+BASE_URL="${BASE_URL:-http://localhost:8080}"
+SLOW_RATE="${SLOW_RATE:-16k}"
+SLOW_SIZE="${SLOW_SIZE:-4M}"
+PROBES="${PROBES:-50}"
+PROBE_TIMEOUT="${PROBE_TIMEOUT:-10}"
+WORK_DIR="$(mktemp -d)"
+
+: "${SESSION:?set SESSION to an authenticated JSESSIONID}"
+
+cleanup() {
+    jobs -p | xargs -r kill 2>/dev/null || true
+    rm -rf "$WORK_DIR"
+}
+trap cleanup EXIT
+
+head -c "$SLOW_SIZE" /dev/urandom > "${WORK_DIR}/slow.bin"
+
+percentile() {
+    sort -n | awk -v p="$1" '{ v[NR] = $1 } END { if (NR == 0) { print 0; exit } i = int(NR * p / 100); if (i < 1) i = 1; print v[i] }'
+}
+
+echo "label,slow_clients,probes,errors,p50_ms,p99_ms,max_ms"
+
+for slow in "${STEPS[@]}"; do
+    for _ in $(seq 1 "$slow"); do
+        curl -s -o /dev/null -b "JSESSIONID=${SESSION}" --limit-rate "$SLOW_RATE" \
+            -H 'Content-Type: application/octet-stream' --data-binary "@${WORK_DIR}/slow.bin" \
+            "${BASE_URL}/api/files/upload/stream?filename=slow.bin" &
+    done
+    # Let the slow uploads connect and occupy their threads
+    sleep 5
+
+    : > "${WORK_DIR}/latencies"
+    errors=0
+    for _ in $(seq 1 "$PROBES"); do
+        if result=$(curl -s -o /dev/null -m "$PROBE_TIMEOUT" -w '%{http_code} %{time_total}' \
+                "${BASE_URL}/api/auth/test"); then
+            code="${result% *}"
+            [[ "$code" == "200" ]] || errors=$((errors + 1))
+            awk -v t="${result#* }" 'BEGIN { printf "%d\n", t * 1000 }' >> "${WORK_DIR}/latencies"
+        else
+            errors=$((errors + 1))
+        fi
+    done
+
+    p50=$(percentile 50 < "${WORK_DIR}/latencies")
+    p99=$(percentile 99 < "${WORK_DIR}/latencies")
+    max=$(percentile 100 < "${WORK_DIR}/latencies")
+    echo "${LABEL},${slow},${PROBES},${errors},${p50},${p99},${max}"
+
+    jobs -p | xargs -r kill 2>/dev/null || true
+    wait 2>/dev/null || true
+done
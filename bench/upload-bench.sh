@@ -0,0 +1,77 @@
+#!/usr/bin/env bash
+#
+# Compares the multipart upload path (POST /api/files/upload) with the streaming path
+# (POST /api/files/upload/stream) for a range of file sizes.
+#
+# For every upload it records wall-clock latency (curl) and the disk bytes read/written by the
+# server process (/proc/<pid>/io), which shows the extra passes the multipart path makes.
+#
+# Usage:
+#   SESSION=<JSESSIONID cookie value> APP_PID=<java pid> bench/upload-bench.sh [runs]
+#
+# Optional environment:
+#   BASE_URL   server to hit (default http://localhost:8080)
+#   SIZES      space separated sizes understood by `head -c` (default "1M 10M 100M 1G")
+#   WORK_DIR   where test payloads are generated (default /tmp/shareline-bench)
+#
+# Output is CSV on stdout: mode,size_bytes,run,latency_s,read_bytes,write_bytes
+# Note: the multipart endpoint rejects bodies above spring.servlet.multipart.max-file-size,
+# so raise that limit when benchmarking the larger sizes.
+
+set -euo pipefail
+
+RUNS="${1:-5}"
+BASE_URL="${BASE_URL:-http://localhost:8080}"
+SIZES="${SIZES:-1M 10M 100M 1G}"
+WORK_DIR="${WORK_DIR:-/tmp/shareline-bench}"
+
+: "${SESSION:?set SESSION to an authenticated JSESSIONID}"
+: "${APP_PID:?set APP_PID to the server process id}"
+
+io_counter() {
+    awk -v key="$1" '$1 == key":" { print $2 }' "/proc/${APP_PID}/io"
+}
+
+delete_file() {
+    curl -s -o /dev/null -X DELETE -b "JSESSIONID=${SESSION}" "${BASE_URL}/api/files/$1"
+}
+
+upload() {
+    local mode="$1" payload="$2"
+    if [[ "$mode" == "multipart" ]]; then
+        curl -s -b "JSESSIONID=${SESSION}" -w '\n%{time_total}' \
+            -F "file=@${payload}" "${BASE_URL}/api/files/upload"
+    else
+        curl -s -b "JSESSIONID=${SESSION}" -w '\n%{time_total}' \
+            -H 'Content-Type: application/octet-stream' --data-binary "@${payload}" \
+            "${BASE_URL}/api/files/upload/stream?filename=$(basename "$payload")"
+    fi
+}
+
+mkdir -p "$WORK_DIR"
+echo "mode,size_bytes,run,latency_s,read_bytes,write_bytes"
+
+for size in $SIZES; do
+    payload="${WORK_DIR}/payload-${size}.bin"
+    [[ -f "$payload" ]] || head -c "$size" /dev/urandom > "$payload"
+    bytes=$(stat -c %s "$payload")
+
+    for mode in multipart stream; do
+        for run in $(seq 1 "$RUNS"); do
+            sync
+            read_before=$(io_counter read_bytes)
+            write_before=$(io_counter write_bytes)
+
+            output=$(upload "$mode" "$payload")
+            latency=$(tail -n 1 <<< "$output")
+            id=$(head -n 1 <<< "$output" | sed -n 's/.*"id":\([0-9]*\).*/\1/p')
+
+            sync
+            read_after=$(io_counter read_bytes)
+            write_after=$(io_counter write_bytes)
+
+            echo "${mode},${bytes},${run},${latency},$((read_after - read_before)),$((write_after - write_before))"
+            [[ -n "$id" ]] && delete_file "$id"
+        done
+    done
+done
@@ -6,13 +6,14 @@ import FileList from './components/FileList'
 import ShareDialog from './components/ShareDialog'
 import PublicFileView from './components/PublicFileView'
 import DashboardHome from './components/DashboardHome'
-import { checkAuth, logout, getFiles } from './services/api'
+import { checkAuth, logout, getFiles, getFileStats } from './services/api'
 import './styles/App.css'
 
 function App() {
   const [user, setUser] = useState(null)
   const [loading, setLoading] = useState(true)
   const [files, setFiles] = useState([])
+  const [fileStats, setFileStats] = useState(null)
   const [filesLoading, setFilesLoading] = useState(true)
   const [filesError, setFilesError] = useState(null)
   const [selectedFile, setSelectedFile] = useState(null)
@@ -51,8 +52,10 @@ function App() {
     if (!user) return
     try {
       setFilesLoading(true)
-      const data = await getFiles()
-      setFiles(data)
+      // The dashboard only shows totals and the most recent uploads
+      const [page, stats] = await Promise.all([getFiles({ limit: 5 }), getFileStats()])
+      setFiles(page.items)
+      setFileStats(stats)
       setFilesError(null)
     } catch (err) {
       console.error('Failed to load files', err)
@@ -229,6 +232,7 @@ function App() {
                           <DashboardHome
                             user={user}
                             files={files}
+                            stats={fileStats}
                             loading={filesLoading}
                             error={filesError}
                             onRefresh={loadFiles}
@@ -256,14 +260,7 @@ function App() {
                       <Route
                         path="/files"
                         element={
-                          <FileList
-                            user={user}
-                            files={files}
-                            loading={filesLoading}
-                            error={filesError}
-                            onShare={handleShare}
-                            onRefresh={loadFiles}
-                          />
+                          <FileList user={user} onShare={handleShare} onChange={loadFiles} />
                         }
                       />
                       <Route path="*" element={<Navigate to="/home" replace />} />
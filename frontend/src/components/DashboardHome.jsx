@@ -17,21 +17,19 @@ const formatDate = (dateString) => {
   })
 }
 
-function DashboardHome({ user, files = [], loading, error, onRefresh, onUploadClick }) {
+function DashboardHome({ user, files = [], stats: totals, loading, error, onRefresh, onUploadClick }) {
+  // Totals come from the server; `files` is only the most recent page
   const stats = useMemo(() => {
-    const totalFiles = files.length
-    const totalBytes = files.reduce((sum, file) => sum + (file.fileSize || 0), 0)
-    const sharedCount = files.filter((file) => file.shareable).length
     const recentFiles = [...files].sort(
       (a, b) => new Date(b.createdAt).getTime() - new Date(a.createdAt).getTime(),
     )
     return {
-      totalFiles,
-      totalBytes,
-      sharedCount,
+      totalFiles: totals?.fileCount || 0,
+      totalBytes: totals?.totalBytes || 0,
+      sharedCount: totals?.sharedCount || 0,
       recentFiles: recentFiles.slice(0, 5),
     }
-  }, [files])
+  }, [files, totals])
 
   return (
     <div className="dashboard">
@@ -1,33 +1,76 @@
-import React, { useMemo, useState, useEffect } from 'react'
-import { getFiles, deleteFile, downloadFile } from '../services/api'
+import React, { useCallback, useEffect, useMemo, useRef, useState } from 'react'
+import { getFiles, getFileStats, deleteFile, downloadFile, getArchiveUrl } from '../services/api'
 import FilePreview from './FilePreview'
 import './FileList.css'
 
-function FileList({ user, onShare, files: externalFiles, loading: externalLoading, error: externalError, onRefresh }) {
+const PAGE_SIZE = 50
+// Matches shareline.archive.max-entries on the server
+const MAX_ARCHIVE_FILES = 1000
+
+function FileList({ user, onShare, onChange }) {
   const [files, setFiles] = useState([])
+  const [nextCursor, setNextCursor] = useState(null)
+  const [totals, setTotals] = useState(null)
   const [loading, setLoading] = useState(true)
+  const [loadingMore, setLoadingMore] = useState(false)
   const [error, setError] = useState(null)
-  const selfManaged = externalFiles === undefined
   const [query, setQuery] = useState('')
   const [previewFile, setPreviewFile] = useState(null)
+  const [selected, setSelected] = useState(() => new Set())
+  const sentinelRef = useRef(null)
 
-  useEffect(() => {
-    if (selfManaged) {
-      loadFiles()
-    }
-  }, [selfManaged])
-
-  const loadFiles = async () => {
+  const loadFiles = useCallback(async () => {
     try {
       setLoading(true)
-      const data = await getFiles()
-      setFiles(data)
+      const [page, stats] = await Promise.all([getFiles({ limit: PAGE_SIZE }), getFileStats()])
+      setFiles(page.items)
+      setNextCursor(page.nextCursor)
+      setTotals(stats)
+      setSelected(new Set())
       setError(null)
     } catch (err) {
       setError('Failed to load files')
     } finally {
       setLoading(false)
     }
+  }, [])
+
+  const loadMore = useCallback(async () => {
+    if (!nextCursor || loadingMore) return
+    try {
+      setLoadingMore(true)
+      const page = await getFiles({ cursor: nextCursor, limit: PAGE_SIZE })
+      setFiles((prev) => [...prev, ...page.items])
+      setNextCursor(page.nextCursor)
+    } catch (err) {
+      // Keep what is already shown; scrolling back down retries the same cursor
+      console.error('Failed to load more files', err)
+    } finally {
+      setLoadingMore(false)
+    }
+  }, [nextCursor, loadingMore])
+
+  useEffect(() => {
+    loadFiles()
+  }, [loadFiles])
+
+  // Infinite scroll: fetch the next page when the sentinel below the table comes into view
+  useEffect(() => {
+    const sentinel = sentinelRef.current
+    if (!sentinel || !nextCursor) return
+    const observer = new IntersectionObserver(
+      (entries) => {
+        if (entries[0].isIntersecting) loadMore()
+      },
+      { rootMargin: '200px' },
+    )
+    observer.observe(sentinel)
+    return () => observer.disconnect()
+  }, [nextCursor, loadMore])
+
+  const refresh = () => {
+    loadFiles()
+    onChange?.()
   }
 
   const handleDelete = async (id, name) => {
@@ -35,11 +78,7 @@ function FileList({ user, onShare, files: externalFiles, loading: externalLoadin
     if (!confirmed) return
     try {
       await deleteFile(id)
-      if (selfManaged) {
-        loadFiles()
-      } else if (onRefresh) {
-        onRefresh()
-      }
+      refresh()
     } catch (err) {
       setError('Failed to delete file')
     }
@@ -53,6 +92,26 @@ function FileList({ user, onShare, files: externalFiles, loading: externalLoadin
     }
   }
 
+  const toggleSelected = (id) => {
+    setSelected((prev) => {
+      const next = new Set(prev)
+      if (next.has(id)) next.delete(id)
+      else next.add(id)
+      return next
+    })
+  }
+
+  const handleDownloadSelected = () => {
+    // Keep the order the files are listed in, so the archive layout is stable across retries
+    const ids = files.filter((f) => selected.has(f.id)).map((f) => f.id)
+    if (ids.length === 0) return
+    if (ids.length > MAX_ARCHIVE_FILES) {
+      alert(`Select at most ${MAX_ARCHIVE_FILES} files to download at once`)
+      return
+    }
+    window.location.href = getArchiveUrl(ids)
+  }
+
   const formatFileSize = (bytes = 0) => {
     if (bytes === 0) return '0 Bytes'
     const k = 1024
@@ -90,27 +149,33 @@ function FileList({ user, onShare, files: externalFiles, loading: externalLoadin
     return mt
   }
 
-  const displayFiles = selfManaged ? files : externalFiles || []
-  const displayLoading = selfManaged ? loading : externalLoading
-  const displayError = selfManaged ? error : externalError
-
+  // Search only covers the pages loaded so far
   const filteredFiles = useMemo(() => {
-    if (!query.trim()) return displayFiles
+    if (!query.trim()) return files
     const lower = query.toLowerCase()
-    return displayFiles.filter((f) => f.originalFilename?.toLowerCase().includes(lower))
-  }, [displayFiles, query])
-
-  const stats = useMemo(() => {
-    const totalSize = displayFiles.reduce((sum, f) => sum + (f.fileSize || 0), 0)
-    const shared = displayFiles.filter((f) => f.shareable).length
-    return {
-      count: displayFiles.length,
-      sizeLabel: formatFileSize(totalSize),
-      shared,
-    }
-  }, [displayFiles])
+    return files.filter((f) => f.originalFilename?.toLowerCase().includes(lower))
+  }, [files, query])
+
+  const stats = useMemo(
+    () => ({
+      count: totals?.fileCount ?? files.length,
+      sizeLabel: formatFileSize(totals?.totalBytes || 0),
+      shared: totals?.sharedCount ?? 0,
+    }),
+    [totals, files.length],
+  )
 
-  if (displayLoading) {
+  const allVisibleSelected = filteredFiles.length > 0 && filteredFiles.every((f) => selected.has(f.id))
+
+  const toggleAllVisible = () => {
+    setSelected((prev) => {
+      const next = new Set(prev)
+      filteredFiles.forEach((f) => (allVisibleSelected ? next.delete(f.id) : next.add(f.id)))
+      return next
+    })
+  }
+
+  if (loading) {
     return (
       <div className="file-list-loading">
         <div className="spinner"></div>
@@ -119,11 +184,11 @@ function FileList({ user, onShare, files: externalFiles, loading: externalLoadin
     )
   }
 
-  if (displayError) {
-    return <div className="error-message">{displayError}</div>
+  if (error) {
+    return <div className="error-message">{error}</div>
   }
 
-  if (displayFiles.length === 0) {
+  if (files.length === 0) {
     return (
       <div className="file-list-empty">
         <p>No files uploaded yet. Upload your first file to get started.</p>
@@ -140,7 +205,12 @@ function FileList({ user, onShare, files: externalFiles, loading: externalLoadin
           <p className="muted">Browse, preview, and share everything in one place.</p>
         </div>
         <div className="file-top-actions">
-          <button className="ghost-button" onClick={onRefresh || loadFiles}>
+          {selected.size > 0 && (
+            <button className="ghost-button" onClick={handleDownloadSelected}>
+              Download selected ({selected.size})
+            </button>
+          )}
+          <button className="ghost-button" onClick={refresh}>
             Refresh
           </button>
         </div>
@@ -174,7 +244,15 @@ function FileList({ user, onShare, files: externalFiles, loading: externalLoadin
 
       <div className="file-table">
         <div className="file-table-head">
-          <span>Name</span>
+          <label className="file-select">
+            <input
+              type="checkbox"
+              checked={allVisibleSelected}
+              onChange={toggleAllVisible}
+              aria-label="Select all listed files"
+            />
+            <span>Name</span>
+          </label>
           <span>Type</span>
           <span>Size</span>
           <span>Added</span>
@@ -184,7 +262,15 @@ function FileList({ user, onShare, files: externalFiles, loading: externalLoadin
           {filteredFiles.map((file) => (
             <div key={file.id} className="file-row">
               <div className="file-name-cell">
-                <div className="file-name">{file.originalFilename}</div>
+                <label className="file-select">
+                  <input
+                    type="checkbox"
+                    checked={selected.has(file.id)}
+                    onChange={() => toggleSelected(file.id)}
+                    aria-label={`Select ${file.originalFilename}`}
+                  />
+                  <div className="file-name">{file.originalFilename}</div>
+                </label>
                 <div className="file-badges">
                   <span className="badge">{getTypeLabel(file)}</span>
                   {file.shareable && <span className="badge accent">Shared</span>}
@@ -219,6 +305,13 @@ function FileList({ user, onShare, files: externalFiles, loading: externalLoadin
               <p>No files match that search.</p>
             </div>
           )}
+
+          <div ref={sentinelRef} />
+          {loadingMore && (
+            <div className="file-list-loading">
+              <div className="spinner"></div>
+            </div>
+          )}
         </div>
       </div>
 
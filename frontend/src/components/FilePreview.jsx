@@ -1,23 +1,31 @@
 import React, { useState, useEffect } from 'react'
-import { getPreviewUrl, downloadFile } from '../services/api'
+import { getPreviewUrl, getThumbnailUrl, downloadFile } from '../services/api'
 import './FilePreview.css'
 
 function FilePreview({ file, onClose }) {
   const [loading, setLoading] = useState(true)
   const [error, setError] = useState(null)
   const [previewType, setPreviewType] = useState(null)
+  // Images and PDFs show the server-side rendition first; the original is only fetched when the
+  // rendition is not ready yet, does not exist, or the user asks for the full document
+  const [useRendition, setUseRendition] = useState(true)
 
   useEffect(() => {
     if (!file) return
 
     setLoading(true)
     setError(null)
+    setUseRendition(true)
     
     const mimeType = file.mimeType || ''
     
     // Determine preview type based on MIME type
     if (mimeType.startsWith('image/')) {
       setPreviewType('image')
+    } else if (mimeType.startsWith('video/')) {
+      setPreviewType('video')
+    } else if (mimeType.startsWith('audio/')) {
+      setPreviewType('audio')
     } else if (mimeType === 'application/pdf') {
       setPreviewType('pdf')
     } else if (
@@ -34,16 +42,30 @@ function FilePreview({ file, onClose }) {
   }, [file])
 
   const previewUrl = file ? getPreviewUrl(file.id) : null
+  const renditionUrl = file ? getThumbnailUrl(file.id, 'large') : null
 
   const handleImageLoad = () => {
     setLoading(false)
   }
 
   const handleImageError = () => {
+    if (useRendition) {
+      setUseRendition(false)
+      return
+    }
     setLoading(false)
     setError('Failed to load image preview')
   }
 
+  const handleRenditionError = () => {
+    setUseRendition(false)
+  }
+
+  const handleMediaError = () => {
+    setLoading(false)
+    setError('Failed to load media preview')
+  }
+
   const handleTextLoad = async () => {
     try {
       setLoading(false)
@@ -87,7 +109,7 @@ function FilePreview({ file, onClose }) {
           {previewType === 'image' && (
             <div className="file-preview-image-wrapper">
               <img
-                src={previewUrl}
+                src={useRendition ? renditionUrl : previewUrl}
                 alt={file.originalFilename}
                 onLoad={handleImageLoad}
                 onError={handleImageError}
@@ -96,7 +118,52 @@ function FilePreview({ file, onClose }) {
             </div>
           )}
 
-          {previewType === 'pdf' && (
+          {previewType === 'video' && (
+            <div className="file-preview-image-wrapper">
+              {/* Media elements fetch with Range requests, so seeking does not re-download the file */}
+              <video
+                src={previewUrl}
+                controls
+                preload="metadata"
+                className="file-preview-media"
+                onLoadedMetadata={handleImageLoad}
+                onError={handleMediaError}
+                style={{ display: loading ? 'none' : 'block' }}
+              />
+            </div>
+          )}
+
+          {previewType === 'audio' && (
+            <div className="file-preview-image-wrapper">
+              <audio
+                src={previewUrl}
+                controls
+                preload="metadata"
+                onLoadedMetadata={handleImageLoad}
+                onError={handleMediaError}
+                style={{ display: loading ? 'none' : 'block' }}
+              />
+            </div>
+          )}
+
+          {previewType === 'pdf' && useRendition && (
+            <div className="file-preview-image-wrapper" style={{ flexDirection: 'column' }}>
+              <img
+                src={renditionUrl}
+                alt={`First page of ${file.originalFilename}`}
+                onLoad={handleImageLoad}
+                onError={handleRenditionError}
+                style={{ display: loading ? 'none' : 'block' }}
+              />
+              {!loading && (
+                <button className="file-preview-open-full" onClick={() => setUseRendition(false)}>
+                  Open full document
+                </button>
+              )}
+            </div>
+          )}
+
+          {previewType === 'pdf' && !useRendition && (
             <div className="file-preview-pdf-wrapper">
               <iframe
                 src={previewUrl}
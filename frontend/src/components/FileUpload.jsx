@@ -1,9 +1,13 @@
 import React, { useCallback, useEffect, useRef, useState } from 'react'
-import { uploadFileWithProgress } from '../services/api'
+import { uploadFileByHash, uploadFileChunked, uploadFileStreaming, uploadFilesBatch } from '../services/api'
 import './FileUpload.css'
 
-const MAX_FILE_SIZE = 100 * 1024 * 1024 // 100MB
-const MAX_QUEUE = 10
+// Files above this size go through the resumable chunked upload API
+const CHUNKED_THRESHOLD = 16 * 1024 * 1024 // 16MB
+// Files up to this size are sent together through the batch endpoint, up to MAX_BATCH per request
+const BATCH_THRESHOLD = 1024 * 1024 // 1MB
+const MAX_BATCH = 50
+const MAX_QUEUE = 100
 
 function FileUpload({ onUploadSuccess }) {
   const [dragActive, setDragActive] = useState(false)
@@ -56,12 +60,7 @@ function FileUpload({ onUploadSuccess }) {
     if (files.length > allowedCount) {
       setMessage(`Queue limit is ${MAX_QUEUE} files. Added the first ${allowedCount}.`)
     }
-    const incoming = files.slice(0, allowedCount)
-    const tooLarge = incoming.filter((f) => f.size > MAX_FILE_SIZE)
-    if (tooLarge.length) {
-      setMessage(`Some files exceed ${Math.round(MAX_FILE_SIZE / (1024 * 1024))}MB and were skipped.`)
-    }
-    const valid = incoming.filter((f) => f.size <= MAX_FILE_SIZE)
+    const valid = files.slice(0, allowedCount)
     if (!valid.length) return
 
     const newItems = valid.map((file, idx) => ({
@@ -89,15 +88,19 @@ function FileUpload({ onUploadSuccess }) {
       )
 
       try {
-        await uploadFileWithProgress(item.file, {
-          signal: controller.signal,
-          onProgress: ({ loaded, total }) => {
-            const percent = total ? Math.round((loaded / total) * 100) : 0
-            setQueueSafe((prev) =>
-              prev.map((i) => (i.id === itemId ? { ...i, progress: percent } : i)),
-            )
-          },
-        })
+        const deduplicated = await uploadFileByHash(item.file, { signal: controller.signal })
+        if (!deduplicated) {
+          const upload = item.file.size > CHUNKED_THRESHOLD ? uploadFileChunked : uploadFileStreaming
+          await upload(item.file, {
+            signal: controller.signal,
+            onProgress: ({ loaded, total }) => {
+              const percent = total ? Math.round((loaded / total) * 100) : 0
+              setQueueSafe((prev) =>
+                prev.map((i) => (i.id === itemId ? { ...i, progress: percent } : i)),
+              )
+            },
+          })
+        }
 
         setQueueSafe((prev) =>
           prev.map((i) => (i.id === itemId ? { ...i, status: 'done', progress: 100, controller: null } : i)),
@@ -121,19 +124,70 @@ function FileUpload({ onUploadSuccess }) {
     [onUploadSuccess],
   )
 
+  // One request for several small files, which share its progress and its outcome
+  const uploadBatch = useCallback(
+    async (itemIds) => {
+      const items = queueRef.current.filter((i) => itemIds.includes(i.id))
+      const controller = new AbortController()
+      setQueueSafe((prev) =>
+        prev.map((i) =>
+          itemIds.includes(i.id) ? { ...i, status: 'uploading', progress: 0, error: null, controller } : i,
+        ),
+      )
+
+      try {
+        await uploadFilesBatch(
+          items.map((i) => i.file),
+          {
+            signal: controller.signal,
+            onProgress: ({ loaded, total }) => {
+              const percent = total ? Math.round((loaded / total) * 100) : 0
+              setQueueSafe((prev) =>
+                prev.map((i) => (itemIds.includes(i.id) ? { ...i, progress: percent } : i)),
+              )
+            },
+          },
+        )
+
+        setQueueSafe((prev) =>
+          prev.map((i) =>
+            itemIds.includes(i.id) ? { ...i, status: 'done', progress: 100, controller: null } : i,
+          ),
+        )
+        onUploadSuccess?.()
+      } catch (err) {
+        const status = controller.signal.aborted ? 'canceled' : 'error'
+        const message = err.response?.data?.message || err.message || 'Upload failed'
+        setQueueSafe((prev) =>
+          prev.map((i) =>
+            itemIds.includes(i.id)
+              ? { ...i, status, error: status === 'error' ? message : null, controller: null }
+              : i,
+          ),
+        )
+      }
+    },
+    [onUploadSuccess],
+  )
+
   const runQueue = useCallback(async () => {
     if (processingRef.current) return
     processingRef.current = true
     try {
       while (true) {
-        const next = queueRef.current.find((i) => i.status === 'queued')
-        if (!next) break
-        await uploadOne(next.id)
+        const queued = queueRef.current.filter((i) => i.status === 'queued')
+        if (!queued.length) break
+        const small = queued.filter((i) => i.file.size <= BATCH_THRESHOLD).slice(0, MAX_BATCH)
+        if (small.length > 1) {
+          await uploadBatch(small.map((i) => i.id))
+        } else {
+          await uploadOne(queued[0].id)
+        }
       }
     } finally {
       processingRef.current = false
     }
-  }, [uploadOne])
+  }, [uploadOne, uploadBatch])
 
   useEffect(() => {
     if (queueRef.current.some((i) => i.status === 'queued')) {
@@ -159,9 +213,10 @@ function FileUpload({ onUploadSuccess }) {
 
   const tips = [
     'Drag in multiple files at once',
+    'Small files are sent together in one request',
     'Progress shown per file',
     'Retry or cancel any upload',
-    'Up to 100MB per file',
+    'Large uploads resume where they left off',
   ]
 
   return (
@@ -190,7 +245,7 @@ function FileUpload({ onUploadSuccess }) {
           </div>
           <div className="upload-copy">
             <p className="upload-title">Drop files here or browse</p>
-            <p className="file-hint">Multiple files • {Math.round(MAX_FILE_SIZE / (1024 * 1024))}MB limit each</p>
+            <p className="file-hint">Multiple files • large files upload in resumable chunks</p>
           </div>
           <span className="browse-chip">Browse</span>
         </label>
@@ -51,8 +51,155 @@ export const uploadFileWithProgress = async (file, { onProgress, signal } = {})
   return response.data
 }
 
-export const getFiles = async () => {
-  const response = await api.get('/files')
+// Several small files in one multipart request; the server saves all of them or none
+export const uploadFilesBatch = async (files, { onProgress, signal } = {}) => {
+  const formData = new FormData()
+  files.forEach((file) => formData.append('files', file))
+
+  const response = await api.post('/files/upload/batch', formData, {
+    headers: { 'Content-Type': 'multipart/form-data' },
+    signal,
+    onUploadProgress: onProgress,
+  })
+
+  return response.data
+}
+
+// Browsers can only digest a whole buffer, so hash-first is limited to files we can hold in memory
+const HASH_FIRST_LIMIT = 64 * 1024 * 1024
+
+const sha256Hex = async (file) => {
+  const digest = await window.crypto.subtle.digest('SHA-256', await file.arrayBuffer())
+  return Array.from(new Uint8Array(digest), (b) => b.toString(16).padStart(2, '0')).join('')
+}
+
+// Hash-first handshake: returns the created file if this user already uploaded this content,
+// or null if the bytes still need to be uploaded.
+export const uploadFileByHash = async (file, { signal } = {}) => {
+  if (file.size > HASH_FIRST_LIMIT || !window.crypto?.subtle) return null
+  const sha256 = await sha256Hex(file)
+  try {
+    const response = await api.post(
+      '/files/upload/hash',
+      { sha256, fileSize: file.size, originalFilename: file.name },
+      { signal },
+    )
+    return response.data
+  } catch (error) {
+    if (error.response?.status === 404) return null
+    throw error
+  }
+}
+
+// Sends the file as the raw request body so the server can stream it to disk in one pass
+export const uploadFileStreaming = async (file, { onProgress, signal } = {}) => {
+  const response = await api.post('/files/upload/stream', file, {
+    params: { filename: file.name },
+    headers: { 'Content-Type': 'application/octet-stream' },
+    signal,
+    onUploadProgress: onProgress,
+  })
+  return response.data
+}
+
+const RESUME_KEY_PREFIX = 'shareline.upload.'
+
+const resumeKey = (file) => `${RESUME_KEY_PREFIX}${file.name}:${file.size}:${file.lastModified}`
+
+export const createUploadSession = async (file) => {
+  const response = await api.post('/files/uploads', {
+    originalFilename: file.name,
+    fileSize: file.size,
+  })
+  return response.data
+}
+
+export const getUploadSession = async (uploadId) => {
+  const response = await api.get(`/files/uploads/${uploadId}`)
+  return response.data
+}
+
+export const uploadChunk = async (uploadId, chunkIndex, blob, { onProgress, signal } = {}) => {
+  const response = await api.put(`/files/uploads/${uploadId}/chunks/${chunkIndex}`, blob, {
+    headers: { 'Content-Type': 'application/octet-stream' },
+    signal,
+    onUploadProgress: onProgress,
+  })
+  return response.data
+}
+
+export const completeUploadSession = async (uploadId) => {
+  const response = await api.post(`/files/uploads/${uploadId}/complete`)
+  return response.data
+}
+
+// Resumable upload: reuses a previous session for the same file if one is still open on the
+// server, skips chunks it already has and sends the rest with a few requests in flight.
+export const uploadFileChunked = async (file, { onProgress, signal, concurrency = 3 } = {}) => {
+  const key = resumeKey(file)
+  let session = null
+
+  const savedId = window.localStorage.getItem(key)
+  if (savedId) {
+    try {
+      session = await getUploadSession(savedId)
+    } catch (error) {
+      window.localStorage.removeItem(key)
+    }
+  }
+  if (!session) {
+    session = await createUploadSession(file)
+    window.localStorage.setItem(key, session.uploadId)
+  }
+
+  const { uploadId, chunkSize, totalChunks } = session
+  const received = new Set(session.receivedChunks)
+  const pending = []
+  for (let i = 0; i < totalChunks; i++) {
+    if (!received.has(i)) pending.push(i)
+  }
+
+  let loaded = session.bytesReceived
+  const inFlight = {}
+  const report = () => {
+    const current = loaded + Object.values(inFlight).reduce((sum, n) => sum + n, 0)
+    onProgress?.({ loaded: current, total: file.size })
+  }
+  report()
+
+  const worker = async () => {
+    while (pending.length) {
+      const index = pending.shift()
+      const start = index * chunkSize
+      const blob = file.slice(start, Math.min(start + chunkSize, file.size))
+      await uploadChunk(uploadId, index, blob, {
+        signal,
+        onProgress: ({ loaded: chunkLoaded }) => {
+          inFlight[index] = chunkLoaded
+          report()
+        },
+      })
+      delete inFlight[index]
+      loaded += blob.size
+      report()
+    }
+  }
+
+  await Promise.all(Array.from({ length: Math.min(concurrency, pending.length) }, worker))
+
+  const result = await completeUploadSession(uploadId)
+  window.localStorage.removeItem(key)
+  return result
+}
+
+// Returns one page: { items, nextCursor }; pass nextCursor back to get the following page
+export const getFiles = async ({ cursor, limit } = {}) => {
+  const response = await api.get('/files', { params: { cursor, limit } })
+  return response.data
+}
+
+export const getFileStats = async () => {
+  const response = await api.get('/files/stats')
   return response.data
 }
 
@@ -60,6 +207,12 @@ export const deleteFile = async (id) => {
   await api.delete(`/files/${id}`)
 }
 
+// Deletes many files in one request; the result has a status (DELETED or NOT_FOUND) per id
+export const deleteFiles = async (ids) => {
+  const response = await api.post('/files/bulk/delete', { ids })
+  return response.data
+}
+
 export const downloadFile = async (id, filename) => {
   const response = await api.get(`/files/${id}`, {
     responseType: 'blob',
@@ -73,6 +226,18 @@ export const downloadFile = async (id, filename) => {
   link.remove()
 }
 
+// Several files as one ZIP streamed by the server. Navigating to the URL lets the browser write
+// the archive straight to disk (and resume it) instead of buffering a blob in memory.
+export const getArchiveUrl = (ids) => {
+  return `${API_BASE_URL}/files/archive?ids=${ids.join(',')}`
+}
+
+// Downscaled JPEG of an image or a PDF's first page; 202 while it is still being rendered and
+// 404 if the file has none, so callers fall back to getPreviewUrl
+export const getThumbnailUrl = (id, size = 'small') => {
+  return `${API_BASE_URL}/files/${id}/thumbnail?size=${size}`
+}
+
 export const getPreviewUrl = (id) => {
   return `${API_BASE_URL}/files/${id}/preview`
 }
@@ -88,6 +253,16 @@ export const revokeShareLink = async (fileId) => {
   await api.delete(`/files/${fileId}/share`)
 }
 
+export const createShareLinks = async (ids, expirationDays = null) => {
+  const response = await api.post('/files/bulk/share', { ids, expirationDays })
+  return response.data
+}
+
+export const revokeShareLinks = async (ids) => {
+  const response = await api.post('/files/bulk/revoke', { ids })
+  return response.data
+}
+
 export const getSharedFileInfo = async (token) => {
   const response = await api.get(`/share/${token}/info`)
   return response.data
@@ -0,0 +1,65 @@
+package com.shareline.bench;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shareline.dto.FileInfo;
+import com.shareline.dto.FilePage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON serialization of file listing pages with the same Jackson setup Spring Boot uses, from a
+ * default page up to the largest page the API hands out and beyond.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileListingJsonBenchmark {
+
+    @Param({"50", "200", "5000"})
+    public int items;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private FilePage page;
+
+    @Setup
+    public void setUp() {
+        List<FileInfo> files = new ArrayList<>(items);
+        LocalDateTime now = LocalDateTime.now();
+        HexFormat hex = HexFormat.of();
+        for (int i = 0; i < items; i++) {
+            String hash = hex.formatHex(UUID.randomUUID().toString().getBytes()).substring(0, 64);
+            boolean shared = i % 3 == 0;
+            files.add(new FileInfo((long) i, "blobs/" + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash,
+                    "Quarterly report " + i + " (final).pdf", 1_048_576L + i, "application/pdf",
+                    shared ? UUID.randomUUID().toString() : null, shared ? now.plusDays(7) : null,
+                    now.minusMinutes(i), shared, "READY"));
+        }
+        page = new FilePage(files, "MjAyNC0wMS0wMVQwMDowMDowMHwxMjM0NQ");
+    }
+
+    @Benchmark
+    public byte[] serialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+}
@@ -0,0 +1,88 @@
+package com.shareline.bench;
+
+import org.apache.tika.Tika;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Content sniffing as done for every upload by the post-upload job queue: Tika magic-byte
+ * detection over the first 64KB of the stored content, for representative kinds of content.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MimeDetectionBenchmark {
+
+    private static final int HEAD_SIZE = 64 * 1024;
+
+    @Param({"png", "pdf", "zip", "json", "text", "binary"})
+    public String kind;
+
+    private final Tika tika = new Tika();
+    private byte[] head;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] filler = new byte[HEAD_SIZE];
+        new Random(42).nextBytes(filler);
+        head = switch (kind) {
+            case "png" -> withPrefix(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'}, filler);
+            case "pdf" -> withPrefix("%PDF-1.7\n%âãÏÓ\n".getBytes(StandardCharsets.ISO_8859_1), filler);
+            case "zip" -> zip(filler);
+            case "json" -> repeat("{\"id\": 12345, \"name\": \"report.csv\", \"tags\": [\"a\", \"b\"]},\n");
+            case "text" -> repeat("The quick brown fox jumps over the lazy dog. ");
+            default -> filler;
+        };
+    }
+
+    @Benchmark
+    public String detect() {
+        return tika.detect(head);
+    }
+
+    private static byte[] withPrefix(byte[] prefix, byte[] filler) {
+        byte[] bytes = filler.clone();
+        System.arraycopy(prefix, 0, bytes, 0, prefix.length);
+        return bytes;
+    }
+
+    private static byte[] zip(byte[] filler) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("data.bin"));
+            zip.write(filler);
+            zip.closeEntry();
+        }
+        byte[] all = bytes.toByteArray();
+        return Arrays.copyOf(all, Math.min(all.length, HEAD_SIZE));
+    }
+
+    private static byte[] repeat(String line) {
+        StringBuilder text = new StringBuilder(HEAD_SIZE);
+        while (text.length() + line.length() <= HEAD_SIZE) {
+            text.append(line);
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
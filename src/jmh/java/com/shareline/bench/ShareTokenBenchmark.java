@@ -0,0 +1,181 @@
+package com.shareline.bench;
+
+import com.shareline.entity.File;
+import com.shareline.repository.FileRepository;
+import com.shareline.repository.ShareRevocationRepository;
+import com.shareline.service.FileStorageService;
+import com.shareline.service.ShareLinkSigner;
+import com.shareline.service.ShareRevocationList;
+import com.shareline.service.ShareService;
+import com.shareline.service.ShareTokenCache;
+import com.shareline.storage.ShardedLocalStorage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
+import java.util.stream.Stream;
+
+/**
+ * Share token generation and the public lookup path ({@link ShareService#getFileByShareToken}:
+ * format check, {@link ShareTokenCache}, expiry check) for hot tokens, tokens that are not cached
+ * yet and unknown tokens, next to signed links ({@link ShareLinkSigner}: signing, then MAC check,
+ * decoding and the revocation list on lookup). The repositories are in-memory, so a miss costs
+ * no database trip.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class ShareTokenBenchmark {
+
+    private static final int HOT_TOKENS = 1_000;
+
+    private Path root;
+    private ShareService shareService;
+    private ShareLinkSigner signer;
+    private File[] hotFiles;
+    private String[] hotTokens;
+    private String[] signedTokens;
+
+    @Setup
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("shareline-jmh");
+        FileStorageService storage = new FileStorageService(root.toString(), new ShardedLocalStorage(List.of(root)));
+        byte[] key = new byte[32];
+        RandomGenerator.getDefault().nextBytes(key);
+        signer = new ShareLinkSigner(storage, true, "1:" + Base64.getEncoder().encodeToString(key), 1, 30);
+
+        Map<String, File> files = new HashMap<>();
+        hotFiles = new File[HOT_TOKENS];
+        hotTokens = new String[HOT_TOKENS];
+        signedTokens = new String[HOT_TOKENS];
+        for (int i = 0; i < HOT_TOKENS; i++) {
+            byte[] hash = new byte[32];
+            RandomGenerator.getDefault().nextBytes(hash);
+            File file = new File();
+            file.setId((long) i);
+            file.setBlobHash(HexFormat.of().formatHex(hash));
+            file.setChecksum(file.getBlobHash());
+            file.setFilename(storage.blobKey(file.getBlobHash()));
+            file.setOriginalFilename("report-" + i + ".pdf");
+            file.setFileSize(1L << 20);
+            file.setMimeType("application/pdf");
+            file.setCrc32(0x1234_5678L);
+            file.setCreatedAt(LocalDateTime.now());
+            file.setShareGeneration(1);
+            file.setShareToken(UUID.randomUUID().toString());
+            file.setShareExpiresAt(LocalDateTime.now().plusDays(7));
+            files.put(file.getShareToken(), file);
+            hotFiles[i] = file;
+            hotTokens[i] = file.getShareToken();
+            signedTokens[i] = signer.sign(file);
+        }
+        FileRepository repository = (FileRepository) Proxy.newProxyInstance(
+                FileRepository.class.getClassLoader(), new Class<?>[]{FileRepository.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("findByShareToken")) {
+                        return Optional.ofNullable(files.get((String) args[0]));
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        // No revocations, so signed lookups measure the in-memory check only
+        ShareRevocationRepository revocations = (ShareRevocationRepository) Proxy.newProxyInstance(
+                ShareRevocationRepository.class.getClassLoader(), new Class<?>[]{ShareRevocationRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "findAll", "findRevokedSince" -> List.of();
+                    case "deleteRevokedBefore" -> 0;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+        PlatformTransactionManager noTransactions = (PlatformTransactionManager) Proxy.newProxyInstance(
+                PlatformTransactionManager.class.getClassLoader(), new Class<?>[]{PlatformTransactionManager.class},
+                (proxy, method, args) -> method.getName().equals("getTransaction") ? new SimpleTransactionStatus() : null);
+        ShareRevocationList revocationList = new ShareRevocationList(revocations,
+                new TransactionTemplate(noTransactions), true, 30);
+        // Long TTLs: the hot set stays cached for the whole run
+        shareService = new ShareService(repository, new ShareTokenCache(100_000, 3600, 3600),
+                signer, revocationList, new SimpleMeterRegistry(), 1000);
+        for (String token : hotTokens) {
+            shareService.getFileByShareToken(token);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return UUID.randomUUID().toString();
+    }
+
+    @Benchmark
+    public File lookupHot() {
+        return shareService.getFileByShareToken(hotTokens[ThreadLocalRandom.current().nextInt(HOT_TOKENS)]);
+    }
+
+    @Benchmark
+    public String signToken() {
+        return signer.sign(hotFiles[ThreadLocalRandom.current().nextInt(HOT_TOKENS)]);
+    }
+
+    @Benchmark
+    public File lookupSigned() {
+        return shareService.getFileByShareToken(signedTokens[ThreadLocalRandom.current().nextInt(HOT_TOKENS)]);
+    }
+
+    @Benchmark
+    public Object lookupUnknown() {
+        try {
+            return shareService.getFileByShareToken(UUID.randomUUID().toString());
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object lookupMalformed() {
+        try {
+            return shareService.getFileByShareToken("not-a-token");
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.shareline.bench;
+
+import com.shareline.service.FileStorageService;
+import com.shareline.service.StoredFile;
+import com.shareline.storage.ShardedLocalStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Single-pass store (copy, SHA-256, CRC-32) and blob reads through
+ * {@link FileStorageService} on the local backend, for small, medium and large files. Files land
+ * in a temporary directory, so the numbers include the page cache but not a cold disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBenchmark {
+
+    @Param({"4096", "1048576", "16777216"})
+    public int size;
+
+    private Path root;
+    private FileStorageService storage;
+    private byte[] content;
+    private String blobKey;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("shareline-jmh");
+        storage = new FileStorageService(root.toString(), new ShardedLocalStorage(List.of(root)));
+        content = new byte[size];
+        new Random(42).nextBytes(content);
+        blobKey = storage.moveToBlob(storage.storeStream(new ByteArrayInputStream(content)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public StoredFile store() throws IOException {
+        StoredFile stored = storage.storeStream(new ByteArrayInputStream(content));
+        storage.discard(stored);
+        return stored;
+    }
+
+    @Benchmark
+    public long load() throws IOException {
+        try (InputStream in = storage.openRange(blobKey, 0, size)) {
+            return in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+}
@@ -0,0 +1,482 @@
+package com.shareline.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives the file and share endpoints of a running node from a fixed number of concurrent clients,
+ * each looping over requests picked by weight from the configured mix:
+ * <ul>
+ *     <li>{@code upload} / {@code multipart}: POST /api/files/upload/stream and /api/files/upload,
+ *     with sizes picked by weight; every body is unique, so deduplication doesn't short-cut it</li>
+ *     <li>{@code batch}: POST /api/files/upload/batch with {@code batch-size} such files</li>
+ *     <li>{@code download}: GET /api/files/{id} of a seeded file, as its owner</li>
+ *     <li>{@code share}: GET /api/share/{token} of a seeded file, anonymously</li>
+ *     <li>{@code list}: GET /api/files, the first page of a user's listing</li>
+ * </ul>
+ * On top of the mix, a number of extra clients can loop over {@code slow-upload}s: streaming
+ * uploads whose body is paced to a fixed rate, like a client on a poor connection. Run against a
+ * small connection pool, they show whether requests that only need the database are held up
+ * behind uploads that are busy moving bytes.
+ * <p>
+ * Uploaded files are deleted again right away unless told otherwise, one DELETE per file or, with
+ * {@code bulk-delete}, all files of a request in one POST /api/files/bulk/delete; those deletes
+ * are reported on their own line. Latency is recorded per scenario once the warmup has passed.
+ */
+class LoadDriver {
+
+    enum Scenario {
+        UPLOAD, MULTIPART, BATCH, DOWNLOAD, SHARE, LIST, DELETE, BULK_DELETE, SLOW_UPLOAD;
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT).replace('_', '-');
+        }
+    }
+
+    /**
+     * A seeded file the download and share scenarios pick from.
+     */
+    record Target(String user, long fileId, String shareToken) {
+    }
+
+    /**
+     * Extra clients uploading {@code size} bytes at {@code bytesPerSecond} each, in a loop.
+     */
+    record SlowUploads(int clients, long size, long bytesPerSecond) {
+    }
+
+    record ScenarioResult(String scenario, long requests, long errors, double errorRate, double requestsPerSecond,
+                          double filesPerSecond, double megabytesPerSecond, double p50Ms, double p90Ms, double p99Ms,
+                          double maxMs, Map<String, Long> errorKinds) {
+    }
+
+    private static final String MULTIPART_BOUNDARY = "shareline-loadtest-boundary";
+    private static final OutputStream DISCARD = OutputStream.nullOutputStream();
+    private static final long MAX_LATENCY_MICROS = Duration.ofMinutes(10).toNanos() / 1000;
+
+    private final HttpClient client;
+    private final URI baseUri;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicLong uploadCounter = new AtomicLong();
+    private final NavigableMap<Integer, Long> sizesByWeight = new TreeMap<>();
+    private final Map<Long, byte[]> payloads = new TreeMap<>();
+    private final int sizeWeightTotal;
+    private final int batchSize;
+    private final boolean bulkDelete;
+    private final SlowUploads slowUploads;
+    private final byte[] slowPayload;
+
+    LoadDriver(HttpClient client, URI baseUri, Map<Long, Integer> sizeWeights, int batchSize,
+               boolean bulkDelete, SlowUploads slowUploads) {
+        this.client = client;
+        this.baseUri = baseUri;
+        this.batchSize = batchSize;
+        this.bulkDelete = bulkDelete;
+        this.slowUploads = slowUploads;
+        Random random = new Random(42);
+        int total = 0;
+        for (Map.Entry<Long, Integer> entry : sizeWeights.entrySet()) {
+            total += entry.getValue();
+            sizesByWeight.put(total, entry.getKey());
+            // Shared random filler; each upload prepends a unique counter to it
+            byte[] filler = new byte[(int) Math.max(0, entry.getKey() - Long.BYTES)];
+            random.nextBytes(filler);
+            payloads.put(entry.getKey(), filler);
+        }
+        this.sizeWeightTotal = total;
+        this.slowPayload = new byte[(int) Math.max(0, slowUploads.size() - Long.BYTES)];
+        random.nextBytes(slowPayload);
+    }
+
+    /**
+     * Uploads one file of a size picked from the mix as {@code user} and returns its id.
+     */
+    long seedFile(String user) throws IOException, InterruptedException {
+        HttpResponse<InputStream> response = send(uploadRequest(user, false, randomSize()));
+        return createdFileIds(response).get(0);
+    }
+
+    String shareFile(String user, long fileId) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("/api/files/" + fileId + "/share"))
+                .header(StubPrincipalFilter.USER_HEADER, user)
+                .header("Content-Type", "application/json")
+                .POST(BodyPublishers.ofString("{\"expirationDays\":30}"))
+                .build();
+        HttpResponse<InputStream> response = send(request);
+        try (InputStream body = response.body()) {
+            JsonNode json = objectMapper.readTree(body);
+            if (response.statusCode() != 200) {
+                throw new IOException("Sharing file " + fileId + " failed with HTTP " + response.statusCode());
+            }
+            return json.get("shareToken").asText();
+        }
+    }
+
+    /**
+     * Runs {@code concurrency} clients, plus the slow uploaders, for {@code warmup + duration} and
+     * returns the results of the measured part, per scenario.
+     */
+    Map<Scenario, ScenarioResult> run(int concurrency, Duration warmup, Duration duration,
+                                      Map<Scenario, Integer> mix, List<String> users, List<Target> targets,
+                                      boolean deleteUploads) throws InterruptedException {
+        NavigableMap<Integer, Scenario> scenariosByWeight = new TreeMap<>();
+        int mixTotal = 0;
+        for (Map.Entry<Scenario, Integer> entry : mix.entrySet()) {
+            if (entry.getValue() > 0) {
+                mixTotal += entry.getValue();
+                scenariosByWeight.put(mixTotal, entry.getKey());
+            }
+        }
+        if (mixTotal == 0) {
+            throw new IllegalArgumentException("The scenario mix is empty");
+        }
+        long measureFrom = System.nanoTime() + warmup.toNanos();
+        long end = measureFrom + duration.toNanos();
+        int weights = mixTotal;
+
+        List<Worker> workers = new ArrayList<>(concurrency + slowUploads.clients());
+        List<Thread> threads = new ArrayList<>(concurrency + slowUploads.clients());
+        for (int i = 0; i < concurrency; i++) {
+            Worker worker = new Worker(scenariosByWeight, weights, users, targets, deleteUploads, measureFrom, end);
+            workers.add(worker);
+            threads.add(Thread.ofVirtual().name("loadtest-client-" + i).start(worker));
+        }
+        NavigableMap<Integer, Scenario> slowOnly = new TreeMap<>(Map.of(1, Scenario.SLOW_UPLOAD));
+        for (int i = 0; i < slowUploads.clients(); i++) {
+            Worker worker = new Worker(slowOnly, 1, users, targets, deleteUploads, measureFrom, end);
+            workers.add(worker);
+            threads.add(Thread.ofVirtual().name("loadtest-slow-client-" + i).start(worker));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Map<Scenario, ScenarioResult> results = new EnumMap<>(Scenario.class);
+        double seconds = duration.toNanos() / 1e9;
+        for (Scenario scenario : Scenario.values()) {
+            Stats merged = new Stats();
+            workers.forEach(worker -> merged.add(worker.stats.get(scenario)));
+            if (merged.requests > 0) {
+                results.put(scenario, merged.toResult(scenario, seconds));
+            }
+        }
+        return results;
+    }
+
+    private final class Worker implements Runnable {
+        final Map<Scenario, Stats> stats = new EnumMap<>(Scenario.class);
+        private final NavigableMap<Integer, Scenario> scenariosByWeight;
+        private final int weights;
+        private final List<String> users;
+        private final List<Target> targets;
+        private final boolean deleteUploads;
+        private final long measureFrom;
+        private final long end;
+
+        Worker(NavigableMap<Integer, Scenario> scenariosByWeight, int weights, List<String> users,
+               List<Target> targets, boolean deleteUploads, long measureFrom, long end) {
+            this.scenariosByWeight = scenariosByWeight;
+            this.weights = weights;
+            this.users = users;
+            this.targets = targets;
+            this.deleteUploads = deleteUploads;
+            this.measureFrom = measureFrom;
+            this.end = end;
+            for (Scenario scenario : Scenario.values()) {
+                stats.put(scenario, new Stats());
+            }
+        }
+
+        @Override
+        public void run() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (System.nanoTime() < end) {
+                Scenario scenario = scenariosByWeight.higherEntry(random.nextInt(weights)).getValue();
+                String user = users.get(random.nextInt(users.size()));
+                Target target = targets.get(random.nextInt(targets.size()));
+                HttpRequest request = switch (scenario) {
+                    case UPLOAD -> uploadRequest(user, false, randomSize());
+                    case MULTIPART -> uploadRequest(user, true, randomSize());
+                    case BATCH -> batchUploadRequest(user);
+                    case DOWNLOAD -> get("/api/files/" + target.fileId(), target.user());
+                    case SHARE -> get("/api/share/" + target.shareToken(), null);
+                    case LIST -> get("/api/files?limit=50", user);
+                    case SLOW_UPLOAD -> slowUploadRequest(user);
+                    case DELETE, BULK_DELETE -> throw new IllegalStateException("Deletes only follow uploads");
+                };
+                List<Long> createdIds = execute(scenario, request, scenario == Scenario.BATCH ? batchSize : 1);
+                if (deleteUploads && bulkDelete && !createdIds.isEmpty()) {
+                    execute(Scenario.BULK_DELETE, bulkDeleteRequest(user, createdIds), createdIds.size());
+                } else if (deleteUploads) {
+                    for (Long createdId : createdIds) {
+                        execute(Scenario.DELETE, HttpRequest.newBuilder(baseUri.resolve("/api/files/" + createdId))
+                                .header(StubPrincipalFilter.USER_HEADER, user)
+                                .DELETE()
+                                .build(), 1);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Sends one request, reads the whole response and records it; returns the ids of the
+         * files an upload created.
+         */
+        private List<Long> execute(Scenario scenario, HttpRequest request, int files) {
+            long started = System.nanoTime();
+            String error = null;
+            long bytes = request.bodyPublisher().map(BodyPublisher::contentLength).orElse(0L);
+            List<Long> createdIds = List.of();
+            try {
+                HttpResponse<InputStream> response = send(request);
+                if (scenario == Scenario.UPLOAD || scenario == Scenario.MULTIPART || scenario == Scenario.BATCH
+                        || scenario == Scenario.SLOW_UPLOAD) {
+                    createdIds = createdFileIds(response);
+                } else {
+                    try (InputStream body = response.body()) {
+                        bytes += body.transferTo(DISCARD);
+                    }
+                    if (response.statusCode() / 100 != 2) {
+                        error = "HTTP " + response.statusCode();
+                    }
+                }
+            } catch (HttpStatusException e) {
+                error = "HTTP " + e.status;
+            } catch (IOException e) {
+                error = e.getClass().getSimpleName();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return List.of();
+            }
+            if (started >= measureFrom && started < end) {
+                stats.get(scenario).record(System.nanoTime() - started, files, bytes, error);
+            }
+            return createdIds;
+        }
+    }
+
+    private HttpRequest uploadRequest(String user, boolean multipart, long size) {
+        ByteBuffer unique = ByteBuffer.allocate(Long.BYTES).putLong(0, uploadCounter.incrementAndGet());
+        List<byte[]> parts = new ArrayList<>(4);
+        String filename = "loadtest-" + unique.getLong(0) + ".bin";
+        if (multipart) {
+            parts.add(("--" + MULTIPART_BOUNDARY + "\r\n"
+                    + "Content-Disposition: form-data; name=\"file\"; filename=\"" + filename + "\"\r\n"
+                    + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        }
+        parts.add(unique.array());
+        parts.add(payloads.get(size));
+        if (multipart) {
+            parts.add(("\r\n--" + MULTIPART_BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        }
+        long length = parts.stream().mapToLong(part -> part.length).sum();
+        BodyPublisher body = BodyPublishers.fromPublisher(BodyPublishers.ofByteArrays(parts), length);
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .header(StubPrincipalFilter.USER_HEADER, user)
+                .POST(body);
+        if (multipart) {
+            builder.uri(baseUri.resolve("/api/files/upload"))
+                    .header("Content-Type", "multipart/form-data; boundary=" + MULTIPART_BOUNDARY);
+        } else {
+            builder.uri(baseUri.resolve("/api/files/upload/stream?filename=" + filename))
+                    .header("Content-Type", "application/octet-stream");
+        }
+        return builder.build();
+    }
+
+    private HttpRequest batchUploadRequest(String user) {
+        List<byte[]> parts = new ArrayList<>(batchSize * 4 + 1);
+        for (int i = 0; i < batchSize; i++) {
+            ByteBuffer unique = ByteBuffer.allocate(Long.BYTES).putLong(0, uploadCounter.incrementAndGet());
+            parts.add(("--" + MULTIPART_BOUNDARY + "\r\n"
+                    + "Content-Disposition: form-data; name=\"files\"; filename=\"loadtest-" + unique.getLong(0)
+                    + ".bin\"\r\n"
+                    + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            parts.add(unique.array());
+            parts.add(payloads.get(randomSize()));
+            parts.add("\r\n".getBytes(StandardCharsets.US_ASCII));
+        }
+        parts.add(("--" + MULTIPART_BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        long length = parts.stream().mapToLong(part -> part.length).sum();
+        return HttpRequest.newBuilder(baseUri.resolve("/api/files/upload/batch"))
+                .header(StubPrincipalFilter.USER_HEADER, user)
+                .header("Content-Type", "multipart/form-data; boundary=" + MULTIPART_BOUNDARY)
+                .POST(BodyPublishers.fromPublisher(BodyPublishers.ofByteArrays(parts), length))
+                .build();
+    }
+
+    private HttpRequest bulkDeleteRequest(String user, List<Long> ids) {
+        String body = objectMapper.createObjectNode().set("ids", objectMapper.valueToTree(ids)).toString();
+        return HttpRequest.newBuilder(baseUri.resolve("/api/files/bulk/delete"))
+                .header(StubPrincipalFilter.USER_HEADER, user)
+                .header("Content-Type", "application/json")
+                .POST(BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private HttpRequest slowUploadRequest(String user) {
+        long counter = uploadCounter.incrementAndGet();
+        byte[] unique = ByteBuffer.allocate(Long.BYTES).putLong(0, counter).array();
+        long length = unique.length + slowPayload.length;
+        BodyPublisher body = BodyPublishers.fromPublisher(BodyPublishers.ofInputStream(() -> new PacedInputStream(
+                new SequenceInputStream(new ByteArrayInputStream(unique), new ByteArrayInputStream(slowPayload)),
+                slowUploads.bytesPerSecond())), length);
+        return HttpRequest.newBuilder(baseUri.resolve("/api/files/upload/stream?filename=loadtest-slow-" + counter + ".bin"))
+                .header(StubPrincipalFilter.USER_HEADER, user)
+                .header("Content-Type", "application/octet-stream")
+                .POST(body)
+                .build();
+    }
+
+    private HttpRequest get(String path, String user) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(baseUri.resolve(path)).GET();
+        if (user != null) {
+            builder.header(StubPrincipalFilter.USER_HEADER, user);
+        }
+        return builder.build();
+    }
+
+    private long randomSize() {
+        return sizesByWeight.higherEntry(ThreadLocalRandom.current().nextInt(sizeWeightTotal)).getValue();
+    }
+
+    private HttpResponse<InputStream> send(HttpRequest request) throws IOException, InterruptedException {
+        return client.send(request, BodyHandlers.ofInputStream());
+    }
+
+    private List<Long> createdFileIds(HttpResponse<InputStream> response) throws IOException {
+        try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) {
+                body.transferTo(DISCARD);
+                throw new HttpStatusException(response.statusCode());
+            }
+            JsonNode json = objectMapper.readTree(body);
+            List<Long> ids = new ArrayList<>();
+            for (JsonNode file : json.isArray() ? json : List.of(json)) {
+                ids.add(file.get("id").asLong());
+            }
+            return ids;
+        }
+    }
+
+    /**
+     * Hands out at most {@code bytesPerSecond} bytes per second, in small reads.
+     */
+    private static final class PacedInputStream extends FilterInputStream {
+        private static final int MAX_READ = 4096;
+
+        private final long bytesPerSecond;
+        private final long started = System.nanoTime();
+        private long read;
+
+        PacedInputStream(InputStream in, long bytesPerSecond) {
+            super(in);
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long due = started + TimeUnit.SECONDS.toNanos(read) / bytesPerSecond;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            int n = super.read(b, off, Math.min(len, MAX_READ));
+            if (n > 0) {
+                read += n;
+            }
+            return n;
+        }
+    }
+
+    private static final class HttpStatusException extends IOException {
+        final int status;
+
+        HttpStatusException(int status) {
+            super("HTTP " + status);
+            this.status = status;
+        }
+    }
+
+    private static final class Stats {
+        final Histogram latencyMicros = new Histogram(MAX_LATENCY_MICROS, 3);
+        final Map<String, Long> errorKinds = new TreeMap<>();
+        long requests;
+        long files;
+        long errors;
+        long bytes;
+
+        void record(long nanos, int requestFiles, long transferred, String error) {
+            latencyMicros.recordValue(Math.min(nanos / 1000, MAX_LATENCY_MICROS));
+            requests++;
+            bytes += transferred;
+            if (error == null) {
+                files += requestFiles;
+            }
+            if (error != null) {
+                errors++;
+                errorKinds.merge(error, 1L, Long::sum);
+            }
+        }
+
+        void add(Stats other) {
+            latencyMicros.add(other.latencyMicros);
+            requests += other.requests;
+            files += other.files;
+            errors += other.errors;
+            bytes += other.bytes;
+            other.errorKinds.forEach((kind, count) -> errorKinds.merge(kind, count, Long::sum));
+        }
+
+        ScenarioResult toResult(Scenario scenario, double seconds) {
+            return new ScenarioResult(scenario.label(), requests, errors, (double) errors / requests,
+                    requests / seconds, files / seconds, bytes / seconds / (1024 * 1024),
+                    latencyMicros.getValueAtPercentile(50) / 1000.0,
+                    latencyMicros.getValueAtPercentile(90) / 1000.0,
+                    latencyMicros.getValueAtPercentile(99) / 1000.0,
+                    latencyMicros.getMaxValue() / 1000.0, errorKinds);
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package com.shareline.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.shareline.SharelineApplication;
+import com.shareline.entity.User;
+import com.shareline.loadtest.LoadDriver.Scenario;
+import com.shareline.loadtest.LoadDriver.ScenarioResult;
+import com.shareline.loadtest.LoadDriver.SlowUploads;
+import com.shareline.loadtest.LoadDriver.Target;
+import com.shareline.repository.UserRepository;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Boots a complete node on a random port against an embedded PostgreSQL and a scratch upload
+ * directory, seeds users and shared files, then runs {@link LoadDriver} and reports throughput,
+ * latency percentiles and error rates per scenario, on stdout and as JSON.
+ * <p>
+ * Options, all {@code --name=value}:
+ * <ul>
+ *     <li>{@code concurrency}: concurrent clients (default 32)</li>
+ *     <li>{@code duration} / {@code warmup}: measured time and unmeasured lead-in, e.g. {@code 90s}
+ *     or {@code 5m} (defaults 60s / 10s)</li>
+ *     <li>{@code mix}: scenario weights (default {@code upload:2,download:4,share:4,list:1}; see
+ *     {@link LoadDriver} for the scenarios)</li>
+ *     <li>{@code sizes}: upload and seed file sizes with weights (default {@code 16K:60,1M:35,16M:5})</li>
+ *     <li>{@code batch-size}: files per request in the {@code batch} scenario (default 50)</li>
+ *     <li>{@code users} / {@code files-per-user}: seeded accounts and shared files each (defaults 20 / 5)</li>
+ *     <li>{@code slow-uploads}: extra clients doing paced streaming uploads alongside the mix
+ *     (default 0), of {@code slow-upload-size} bytes at {@code slow-upload-rate} per second each
+ *     (defaults 1M / 64K)</li>
+ *     <li>{@code keep-uploads}: don't delete files uploaded during the run</li>
+ *     <li>{@code bulk-delete}: delete the files of each upload request with one bulk call rather
+ *     than one request per file</li>
+ *     <li>{@code report}: where to write the JSON report</li>
+ *     <li>{@code max-latency}: scenarios whose every measured request must finish in time, e.g.
+ *     {@code list:5s}; the run fails otherwise, and if the scenario never ran</li>
+ *     <li>{@code fail-on-server-errors}: fail the run if any request got a 5xx response</li>
+ * </ul>
+ * Anything else, such as {@code --shareline.share-limits.enabled=true} or
+ * {@code --spring.threads.virtual.enabled=true}, is passed on to the application. Share rate
+ * limits and quotas are off unless turned on that way, since every client shares one address.
+ * <p>
+ * For example, {@code --slow-uploads=32 --mix=list:1 --spring.datasource.hikari.maximum-pool-size=4}
+ * checks that listings stay fast while more uploads are in flight than there are connections. The
+ * loadtest profile runs such a check with {@code max-latency} and {@code fail-on-server-errors}
+ * before the load test itself, so a regression fails the build.
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        // Devtools is on the test classpath; its restart would run this method a second time
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        Path uploadDir = Files.createTempDirectory("shareline-loadtest");
+        try (EmbeddedPostgres postgres = EmbeddedPostgres.builder().start()) {
+            // System properties, so they win over application.yml and lose to the command line
+            Map.ofEntries(
+                    Map.entry("spring.datasource.url", postgres.getJdbcUrl("postgres", "postgres")),
+                    Map.entry("spring.datasource.username", "postgres"),
+                    Map.entry("spring.datasource.password", ""),
+                    Map.entry("spring.security.oauth2.client.registration.google.client-id", "loadtest"),
+                    Map.entry("spring.security.oauth2.client.registration.google.client-secret", "loadtest"),
+                    Map.entry("spring.servlet.multipart.max-file-size", "-1"),
+                    Map.entry("spring.servlet.multipart.max-request-size", "-1"),
+                    Map.entry("server.port", "0"),
+                    Map.entry("management.server.port", "0"),
+                    Map.entry("management.tracing.enabled", "false"),
+                    Map.entry("shareline.upload-dir", uploadDir.toString()),
+                    Map.entry("shareline.quota.default-bytes", "0"),
+                    Map.entry("shareline.share-limits.enabled", "false"),
+                    Map.entry("logging.level.com.shareline", "WARN"),
+                    Map.entry("logging.level.io.zonky", "WARN")).forEach(System::setProperty);
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(SharelineApplication.class,
+                    StubLogin.class)
+                    .run(options.applicationArgs().toArray(String[]::new));
+            try {
+                int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+                run(options, context, URI.create("http://localhost:" + port));
+            } finally {
+                context.close();
+            }
+        } finally {
+            FileSystemUtils.deleteRecursively(uploadDir);
+        }
+    }
+
+    private static void run(Options options, ConfigurableApplicationContext context, URI baseUri) throws Exception {
+        UserRepository userRepository = context.getBean(UserRepository.class);
+        List<String> users = new ArrayList<>(options.users());
+        for (int i = 0; i < options.users(); i++) {
+            String googleId = "loadtest-" + i;
+            userRepository.save(new User(null, googleId + "@loadtest.invalid", googleId, googleId, null));
+            users.add(googleId);
+        }
+
+        try (HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build()) {
+            LoadDriver driver = new LoadDriver(client, baseUri, options.sizes(), options.batchSize(),
+                    options.bulkDelete(), options.slowUploads());
+
+            System.out.printf("Seeding %d users with %d shared files each%n", users.size(), options.filesPerUser());
+            List<Target> targets = Collections.synchronizedList(new ArrayList<>());
+            try (ExecutorService seeders = Executors.newVirtualThreadPerTaskExecutor()) {
+                List<Future<?>> seeded = new ArrayList<>();
+                for (String user : users) {
+                    seeded.add(seeders.submit(() -> {
+                        for (int i = 0; i < options.filesPerUser(); i++) {
+                            long fileId = driver.seedFile(user);
+                            targets.add(new Target(user, fileId, driver.shareFile(user, fileId)));
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> future : seeded) {
+                    future.get();
+                }
+            }
+
+            System.out.printf("Running %d clients for %ds after %ds of warmup, mix %s%n", options.concurrency(),
+                    options.duration().toSeconds(), options.warmup().toSeconds(), options.mix());
+            if (options.slowUploads().clients() > 0) {
+                System.out.printf("Plus %d clients uploading %d bytes at %d bytes/s each%n",
+                        options.slowUploads().clients(), options.slowUploads().size(),
+                        options.slowUploads().bytesPerSecond());
+            }
+            Map<Scenario, ScenarioResult> results = driver.run(options.concurrency(), options.warmup(),
+                    options.duration(), options.mix(), users, targets, !options.keepUploads());
+            print(results);
+            writeReport(options, results);
+            check(options, results);
+        }
+    }
+
+    /**
+     * Fails the run if a {@code max-latency} or {@code fail-on-server-errors} check doesn't hold.
+     */
+    private static void check(Options options, Map<Scenario, ScenarioResult> results) {
+        List<String> failures = new ArrayList<>();
+        options.maxLatency().forEach((scenario, limit) -> {
+            ScenarioResult result = results.get(scenario);
+            if (result == null) {
+                failures.add(scenario.label() + ": no requests measured");
+            } else if (result.maxMs() > limit.toMillis()) {
+                failures.add(String.format("%s: slowest request took %.0f ms, more than %d ms", scenario.label(),
+                        result.maxMs(), limit.toMillis()));
+            }
+        });
+        if (options.failOnServerErrors()) {
+            for (ScenarioResult result : results.values()) {
+                result.errorKinds().forEach((kind, count) -> {
+                    if (kind.startsWith("HTTP 5")) {
+                        failures.add(result.scenario() + ": " + count + " x " + kind);
+                    }
+                });
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException("Load test checks failed:\n  " + String.join("\n  ", failures));
+        }
+        if (!options.maxLatency().isEmpty() || options.failOnServerErrors()) {
+            System.out.println("Load test checks passed");
+        }
+    }
+
+    private static void print(Map<Scenario, ScenarioResult> results) {
+        System.out.printf("%n%-11s %9s %7s %7s %9s %9s %8s %9s %9s %9s %9s%n", "scenario", "requests", "errors",
+                "err%", "req/s", "files/s", "MB/s", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        for (ScenarioResult r : results.values()) {
+            System.out.printf("%-11s %9d %7d %6.2f%% %9.1f %9.1f %8.1f %9.2f %9.2f %9.2f %9.2f%n", r.scenario(),
+                    r.requests(), r.errors(), r.errorRate() * 100, r.requestsPerSecond(), r.filesPerSecond(),
+                    r.megabytesPerSecond(), r.p50Ms(), r.p90Ms(), r.p99Ms(), r.maxMs());
+            r.errorKinds().forEach((kind, count) -> System.out.printf("%12s%s: %d%n", "", kind, count));
+        }
+    }
+
+    private static void writeReport(Options options, Map<Scenario, ScenarioResult> results) throws IOException {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("concurrency", options.concurrency());
+        report.put("durationSeconds", options.duration().toSeconds());
+        report.put("warmupSeconds", options.warmup().toSeconds());
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        options.mix().forEach((scenario, weight) -> mix.put(scenario.label(), weight));
+        report.put("mix", mix);
+        report.put("sizes", options.sizes());
+        report.put("batchSize", options.batchSize());
+        report.put("users", options.users());
+        report.put("filesPerUser", options.filesPerUser());
+        report.put("bulkDelete", options.bulkDelete());
+        report.put("slowUploads", options.slowUploads());
+        report.put("applicationArgs", options.applicationArgs());
+        report.put("scenarios", results.values());
+        Files.createDirectories(options.report().toAbsolutePath().getParent());
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(options.report().toFile(), report);
+        System.out.printf("%nReport written to %s%n", options.report().toAbsolutePath());
+    }
+
+    /**
+     * Authenticates requests carrying {@link StubPrincipalFilter#USER_HEADER}, ahead of the
+     * security filter chain.
+     */
+    static class StubLogin {
+
+        @Bean
+        FilterRegistrationBean<StubPrincipalFilter> stubPrincipalFilter() {
+            FilterRegistrationBean<StubPrincipalFilter> registration =
+                    new FilterRegistrationBean<>(new StubPrincipalFilter());
+            registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER - 1);
+            return registration;
+        }
+    }
+
+    record Options(int concurrency, Duration duration, Duration warmup, Map<Scenario, Integer> mix,
+                   Map<Long, Integer> sizes, int batchSize, int users, int filesPerUser, SlowUploads slowUploads,
+                   boolean keepUploads, boolean bulkDelete, Path report, Map<Scenario, Duration> maxLatency,
+                   boolean failOnServerErrors, List<String> applicationArgs) {
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new LinkedHashMap<>(Map.ofEntries(
+                    Map.entry("concurrency", "32"),
+                    Map.entry("duration", "60s"),
+                    Map.entry("warmup", "10s"),
+                    Map.entry("mix", "upload:2,download:4,share:4,list:1"),
+                    Map.entry("sizes", "16K:60,1M:35,16M:5"),
+                    Map.entry("batch-size", "50"),
+                    Map.entry("users", "20"),
+                    Map.entry("files-per-user", "5"),
+                    Map.entry("slow-uploads", "0"),
+                    Map.entry("slow-upload-size", "1M"),
+                    Map.entry("slow-upload-rate", "64K"),
+                    Map.entry("keep-uploads", "false"),
+                    Map.entry("bulk-delete", "false"),
+                    Map.entry("report", "target/loadtest-result.json"),
+                    Map.entry("max-latency", ""),
+                    Map.entry("fail-on-server-errors", "false")));
+            List<String> applicationArgs = new ArrayList<>();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                String name = arg.startsWith("--") ? arg.substring(2, eq > 0 ? eq : arg.length()) : "";
+                if (values.containsKey(name)) {
+                    values.put(name, eq > 0 ? arg.substring(eq + 1) : "true");
+                } else if (!arg.isBlank()) {
+                    applicationArgs.add(arg);
+                }
+            }
+
+            Map<Scenario, Integer> mix = new EnumMap<>(Scenario.class);
+            weights(values.get("mix")).forEach((name, weight) -> {
+                Scenario scenario = scenario(name);
+                if (scenario == Scenario.DELETE || scenario == Scenario.BULK_DELETE) {
+                    throw new IllegalArgumentException("Deletes only run after uploads");
+                }
+                if (scenario == Scenario.SLOW_UPLOAD) {
+                    throw new IllegalArgumentException("Slow uploads run on clients of their own, see slow-uploads");
+                }
+                mix.put(scenario, weight);
+            });
+            Map<Long, Integer> sizes = new LinkedHashMap<>();
+            weights(values.get("sizes")).forEach((size, weight) -> sizes.put(bytes(size), weight));
+            Map<Scenario, Duration> maxLatency = new EnumMap<>(Scenario.class);
+            if (!values.get("max-latency").isBlank()) {
+                for (String item : values.get("max-latency").split(",")) {
+                    String[] parts = item.trim().split(":");
+                    if (parts.length != 2) {
+                        throw new IllegalArgumentException("Expected scenario:duration, got " + item);
+                    }
+                    maxLatency.put(scenario(parts[0].trim()), duration(parts[1].trim()));
+                }
+            }
+            SlowUploads slowUploads = new SlowUploads(Integer.parseInt(values.get("slow-uploads")),
+                    bytes(values.get("slow-upload-size")), bytes(values.get("slow-upload-rate")));
+
+            return new Options(Integer.parseInt(values.get("concurrency")), duration(values.get("duration")),
+                    duration(values.get("warmup")), mix, sizes, Integer.parseInt(values.get("batch-size")),
+                    Integer.parseInt(values.get("users")),
+                    Integer.parseInt(values.get("files-per-user")), slowUploads,
+                    Boolean.parseBoolean(values.get("keep-uploads")),
+                    Boolean.parseBoolean(values.get("bulk-delete")),
+                    Paths.get(values.get("report")), maxLatency,
+                    Boolean.parseBoolean(values.get("fail-on-server-errors")), applicationArgs);
+        }
+
+        private static Scenario scenario(String name) {
+            return Scenario.valueOf(name.toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+
+        private static Map<String, Integer> weights(String spec) {
+            Map<String, Integer> weights = new LinkedHashMap<>();
+            for (String item : spec.split(",")) {
+                String[] parts = item.trim().split(":");
+                if (parts.length != 2) {
+                    throw new IllegalArgumentException("Expected name:weight, got " + item);
+                }
+                weights.put(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+            }
+            return weights;
+        }
+
+        private static long bytes(String size) {
+            String value = size.toUpperCase(Locale.ROOT);
+            long unit = switch (value.charAt(value.length() - 1)) {
+                case 'K' -> 1024L;
+                case 'M' -> 1024L * 1024;
+                case 'G' -> 1024L * 1024 * 1024;
+                default -> 1;
+            };
+            String digits = unit == 1 ? value : value.substring(0, value.length() - 1);
+            return Long.parseLong(digits) * unit;
+        }
+
+        private static Duration duration(String value) {
+            if (value.endsWith("m")) {
+                return Duration.ofMinutes(Long.parseLong(value.substring(0, value.length() - 1)));
+            }
+            return Duration.ofSeconds(Long.parseLong(value.endsWith("s") ? value.substring(0, value.length() - 1) : value));
+        }
+    }
+}
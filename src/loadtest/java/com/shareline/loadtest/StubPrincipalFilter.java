@@ -0,0 +1,42 @@
+package com.shareline.loadtest;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+import org.springframework.security.web.context.RequestAttributeSecurityContextRepository;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stands in for the Google login: a request carrying {@value #USER_HEADER} is authenticated as the
+ * OAuth2 user with that "sub" claim, the same principal shape {@code CustomOAuth2UserService}
+ * produces. The context is handed to Spring Security through the request attribute its context
+ * repository reads first, so no session is created. Only registered by {@link LoadTest}.
+ */
+class StubPrincipalFilter extends OncePerRequestFilter {
+
+    static final String USER_HEADER = "X-Loadtest-User";
+
+    private static final List<SimpleGrantedAuthority> AUTHORITIES = List.of(new SimpleGrantedAuthority("ROLE_USER"));
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String googleId = request.getHeader(USER_HEADER);
+        if (googleId != null) {
+            DefaultOAuth2User principal = new DefaultOAuth2User(AUTHORITIES,
+                    Map.of("sub", googleId, "email", googleId + "@loadtest.invalid", "name", googleId), "sub");
+            request.setAttribute(RequestAttributeSecurityContextRepository.DEFAULT_REQUEST_ATTR_NAME,
+                    new SecurityContextImpl(new OAuth2AuthenticationToken(principal, AUTHORITIES, "google")));
+        }
+        chain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,136 @@
+package com.shareline.config;
+
+import com.shareline.service.FileProcessingService;
+import com.shareline.service.LayoutMigrationService;
+import com.shareline.service.ShareExpirySweeper;
+import com.shareline.service.ShareRateLimiter;
+import com.shareline.service.ShareRevocationList;
+import com.shareline.service.ShareTokenCache;
+import com.shareline.service.StorageUsageReconciler;
+import com.shareline.storage.InstrumentedStorageBackend;
+import com.shareline.storage.StorageBackend;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Publishes the statistics the services already keep for their periodic log lines as Micrometer
+ * meters, read on each scrape rather than updated on the hot path:
+ * <ul>
+ *     <li>{@code shareline.storage.operations}: count and latency per storage backend operation,
+ *     plus {@code shareline.storage.errors}</li>
+ *     <li>{@code shareline.share.cache.*}: share token cache hits, misses, evictions and size</li>
+ *     <li>{@code shareline.share.limit.*}: how often each share rate limit delayed or refused</li>
+ *     <li>{@code shareline.share.revocations}: entries in the signed share link revocation list</li>
+ *     <li>{@code shareline.job.last.*}: outcome of the last run of each background job</li>
+ *     <li>{@code shareline.file.jobs}: post-upload jobs completed, retried and abandoned, plus
+ *     {@code shareline.file.jobs.due}, the queue backlog across nodes (one indexed count per scrape)</li>
+ * </ul>
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder storageMetrics(StorageBackend storageBackend) {
+        return registry -> {
+            if (!(storageBackend instanceof InstrumentedStorageBackend instrumented)) {
+                return;
+            }
+            for (InstrumentedStorageBackend.Operation operation : InstrumentedStorageBackend.Operation.values()) {
+                String tag = operation.name().toLowerCase(Locale.ROOT);
+                FunctionTimer.builder("shareline.storage.operations", instrumented,
+                                b -> b.snapshot().get(operation).count(),
+                                b -> b.snapshot().get(operation).totalNanos(), TimeUnit.NANOSECONDS)
+                        .tag("backend", storageBackend.getName())
+                        .tag("operation", tag)
+                        .register(registry);
+                FunctionCounter.builder("shareline.storage.errors", instrumented,
+                                b -> b.snapshot().get(operation).errors())
+                        .tag("backend", storageBackend.getName())
+                        .tag("operation", tag)
+                        .register(registry);
+            }
+        };
+    }
+
+    @Bean
+    public MeterBinder shareMetrics(ShareTokenCache shareTokenCache, ShareRateLimiter shareRateLimiter,
+                                    ShareRevocationList shareRevocationList) {
+        return registry -> {
+            FunctionCounter.builder("shareline.share.cache.requests", shareTokenCache, c -> c.stats().hitCount())
+                    .tag("result", "hit").register(registry);
+            FunctionCounter.builder("shareline.share.cache.requests", shareTokenCache, c -> c.stats().missCount())
+                    .tag("result", "miss").register(registry);
+            FunctionCounter.builder("shareline.share.cache.evictions", shareTokenCache,
+                    c -> c.stats().evictionCount()).register(registry);
+            Gauge.builder("shareline.share.cache.size", shareTokenCache, ShareTokenCache::size).register(registry);
+            Gauge.builder("shareline.share.revocations", shareRevocationList, ShareRevocationList::size)
+                    .register(registry);
+
+            for (ShareRateLimiter.Scope scope : ShareRateLimiter.Scope.values()) {
+                String tag = scope.name().toLowerCase(Locale.ROOT);
+                FunctionCounter.builder("shareline.share.limit.requests", shareRateLimiter,
+                                l -> l.snapshot().get(scope).requestsDelayed())
+                        .tag("scope", tag).tag("action", "delayed").register(registry);
+                FunctionCounter.builder("shareline.share.limit.requests", shareRateLimiter,
+                                l -> l.snapshot().get(scope).requestsRejected())
+                        .tag("scope", tag).tag("action", "rejected").register(registry);
+                FunctionCounter.builder("shareline.share.limit.writes.delayed", shareRateLimiter,
+                                l -> l.snapshot().get(scope).writesDelayed())
+                        .tag("scope", tag).register(registry);
+                FunctionCounter.builder("shareline.share.limit.wait", shareRateLimiter,
+                                l -> l.snapshot().get(scope).delayNanos() / 1e9)
+                        .tag("scope", tag).baseUnit("seconds").register(registry);
+            }
+        };
+    }
+
+    @Bean
+    public MeterBinder jobMetrics(ShareExpirySweeper shareExpirySweeper, StorageUsageReconciler storageUsageReconciler,
+                                  LayoutMigrationService layoutMigrationService) {
+        return registry -> {
+            lastRun(registry, "share-sweeper", "rows", shareExpirySweeper,
+                    s -> s.getLastResult() == null ? Double.NaN : s.getLastResult().rowsReaped(),
+                    s -> s.getLastResult() == null ? Double.NaN : s.getLastResult().elapsedMs());
+            lastRun(registry, "quota-reconciler", "corrected", storageUsageReconciler,
+                    r -> r.getLastResult() == null ? Double.NaN : r.getLastResult().usersCorrected(),
+                    r -> r.getLastResult() == null ? Double.NaN : r.getLastResult().elapsedMs());
+            lastRun(registry, "layout-migration", "moved", layoutMigrationService,
+                    m -> m.getLastResult() == null ? Double.NaN : m.getLastResult().moved(),
+                    m -> m.getLastResult() == null ? Double.NaN : m.getLastResult().elapsedMs());
+            Gauge.builder("shareline.job.last.items", layoutMigrationService,
+                            m -> m.getLastResult() == null ? Double.NaN : m.getLastResult().failed())
+                    .tag("job", "layout-migration").tag("outcome", "failed").register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder fileJobMetrics(FileProcessingService fileProcessingService) {
+        return registry -> {
+            FunctionCounter.builder("shareline.file.jobs", fileProcessingService, p -> p.snapshot().completed())
+                    .tag("outcome", "completed").register(registry);
+            FunctionCounter.builder("shareline.file.jobs", fileProcessingService, p -> p.snapshot().retried())
+                    .tag("outcome", "retried").register(registry);
+            FunctionCounter.builder("shareline.file.jobs", fileProcessingService, p -> p.snapshot().abandoned())
+                    .tag("outcome", "abandoned").register(registry);
+            Gauge.builder("shareline.file.jobs.due", fileProcessingService, FileProcessingService::backlog)
+                    .register(registry);
+        };
+    }
+
+    private static <T> void lastRun(MeterRegistry registry, String job, String outcome, T source,
+                                    ToDoubleFunction<T> items, ToDoubleFunction<T> elapsedMs) {
+        Gauge.builder("shareline.job.last.items", source, items)
+                .tag("job", job).tag("outcome", outcome).register(registry);
+        Gauge.builder("shareline.job.last.duration", source, s -> elapsedMs.applyAsDouble(s) / 1000)
+                .tag("job", job).baseUnit("seconds").register(registry);
+    }
+}
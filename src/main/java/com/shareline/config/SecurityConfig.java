@@ -52,6 +52,8 @@ public class SecurityConfig {
                 ).permitAll()
                 // Public share endpoints
                 .requestMatchers("/share/**", "/api/share/**").permitAll()
+                // Health checks and Prometheus scrapes, served on the management port
+                .requestMatchers("/actuator/health/**", "/actuator/prometheus").permitAll()
                 // Auth endpoints (including test endpoint)
                 .requestMatchers("/api/auth/**", "/oauth2/**", "/login/**", "/error").permitAll()
                 // Everything else requires authentication
@@ -0,0 +1,73 @@
+package com.shareline.config;
+
+import com.shareline.storage.InstrumentedStorageBackend;
+import com.shareline.storage.S3Storage;
+import com.shareline.storage.ShardedLocalStorage;
+import com.shareline.storage.StorageBackend;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Chooses the storage backend for file content with {@code shareline.storage.type}: {@code local}
+ * (the default) or {@code s3}. Staging files and derived artifacts always stay under the local
+ * upload directory.
+ */
+@Configuration
+public class StorageConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "shareline.storage.type", havingValue = "local", matchIfMissing = true)
+    public StorageBackend localStorageBackend(
+            @Value("${shareline.storage.local.roots:${shareline.upload-dir:./uploads}}") String[] roots) {
+        List<Path> paths = Arrays.stream(roots)
+                .map(String::trim)
+                .filter(root -> !root.isEmpty())
+                .map(Paths::get)
+                .toList();
+        return new InstrumentedStorageBackend(new ShardedLocalStorage(paths));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "shareline.storage.type", havingValue = "s3")
+    public StorageBackend s3StorageBackend(
+            @Value("${shareline.storage.s3.endpoint:}") String endpoint,
+            @Value("${shareline.storage.s3.region:us-east-1}") String region,
+            @Value("${shareline.storage.s3.bucket:shareline}") String bucket,
+            @Value("${shareline.storage.s3.prefix:}") String prefix,
+            @Value("${shareline.storage.s3.access-key:}") String accessKey,
+            @Value("${shareline.storage.s3.secret-key:}") String secretKey,
+            @Value("${shareline.storage.s3.path-style:false}") boolean pathStyle,
+            @Value("${shareline.storage.s3.part-size:16777216}") long partSize,
+            @Value("${shareline.storage.s3.upload-parallelism:8}") int uploadParallelism,
+            @Value("${shareline.storage.s3.max-connections:64}") int maxConnections) {
+        AwsCredentialsProvider credentials = accessKey.isBlank()
+                ? DefaultCredentialsProvider.create()
+                : StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey));
+        S3ClientBuilder builder = S3Client.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentials)
+                .forcePathStyle(pathStyle)
+                .httpClientBuilder(ApacheHttpClient.builder().maxConnections(maxConnections));
+        if (!endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        return new InstrumentedStorageBackend(
+                new S3Storage(builder.build(), bucket, prefix, partSize, uploadParallelism));
+    }
+}
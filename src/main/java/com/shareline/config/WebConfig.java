@@ -1,6 +1,8 @@
 package com.shareline.config;
 
+import com.shareline.controller.UploadQuotaInterceptor;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.ViewControllerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
@@ -8,6 +10,19 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
+    private final UploadQuotaInterceptor uploadQuotaInterceptor;
+
+    public WebConfig(UploadQuotaInterceptor uploadQuotaInterceptor) {
+        this.uploadQuotaInterceptor = uploadQuotaInterceptor;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        // Multipart endpoints only: streaming uploads check their Content-Length as they start
+        registry.addInterceptor(uploadQuotaInterceptor)
+                .addPathPatterns("/api/files/upload", "/api/files/upload/batch");
+    }
+
     @Override
     public void addResourceHandlers(ResourceHandlerRegistry registry) {
         registry.addResourceHandler("/static/**")
@@ -0,0 +1,177 @@
+package com.shareline.controller;
+
+import com.shareline.entity.File;
+import com.shareline.service.CompressibleTypes;
+import com.shareline.service.FileService;
+import com.shareline.service.ZipArchiveWriter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Streams several stored files as one ZIP archive built on the fly by {@link ZipArchiveWriter}.
+ * <ul>
+ *     <li>Entries keep the requested order; duplicate names get a " (n)" suffix</li>
+ *     <li>Text-like types are deflated in archives of up to {@code deflate-max-bytes}; larger
+ *     archives, and every already-compressed type, are stored as is</li>
+ *     <li>The ETag covers every entry, so If-None-Match and If-Range work as for single files</li>
+ *     <li>Archives of stored entries only have a known length and honour a single byte range,
+ *     which is what download managers use to resume. Whether an archive is stored depends only on
+ *     its entries, never on the request, so a resumed download continues the same bytes</li>
+ * </ul>
+ */
+@Component
+public class ArchiveWriter {
+
+    private static final String CONTENT_TYPE = "application/zip";
+    // Bump when the archive layout changes, so clients never resume across two layouts
+    private static final String LAYOUT_VERSION = "2";
+
+    private final FileService fileService;
+    private final long deflateMaxBytes;
+
+    public ArchiveWriter(
+            FileService fileService,
+            @Value("${shareline.archive.deflate-max-bytes:67108864}") long deflateMaxBytes) {
+        this.fileService = fileService;
+        this.deflateMaxBytes = deflateMaxBytes;
+    }
+
+    public void write(List<File> files, String archiveName, HttpServletRequest request,
+                      HttpServletResponse response) throws IOException {
+        // Deflating saves little next to the size of a large archive, and would cost it resumability
+        boolean deflate = files.stream().mapToLong(File::getFileSize).sum() <= deflateMaxBytes;
+        List<ZipArchiveWriter.Entry> entries = toEntries(files, deflate);
+        ZipArchiveWriter archive = new ZipArchiveWriter(entries);
+        String etag = etagFor(files, entries);
+        long lastModified = files.stream().mapToLong(DownloadWriter::lastModifiedFor).max().orElse(0);
+
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+
+        if (DownloadWriter.isNotModified(request, etag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + archiveName + "\"");
+        boolean headOnly = "HEAD".equals(request.getMethod());
+
+        if (!archive.isSeekable()) {
+            // Small archive with deflated entries, whose sizes are only known once written:
+            // no Content-Length, no ranges
+            response.setHeader(HttpHeaders.ACCEPT_RANGES, "none");
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType(CONTENT_TYPE);
+            if (!headOnly) {
+                archive.write(response.getOutputStream());
+            }
+            return;
+        }
+
+        long length = archive.length();
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && DownloadWriter.isRangeApplicable(request, etag, lastModified)) {
+            List<DownloadWriter.ByteRange> ranges = DownloadWriter.parseRanges(rangeHeader, length);
+            if (ranges != null && ranges.isEmpty()) {
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                return;
+            }
+            // Several ranges would mean generating the archive once per part; send it whole instead
+            if (ranges != null && ranges.size() == 1) {
+                DownloadWriter.ByteRange range = ranges.get(0);
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setContentType(CONTENT_TYPE);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, range.contentRange(length));
+                response.setContentLengthLong(range.length());
+                if (!headOnly) {
+                    archive.write(response.getOutputStream(), range.start(), range.end());
+                }
+                return;
+            }
+        }
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(CONTENT_TYPE);
+        response.setContentLengthLong(length);
+        if (!headOnly) {
+            archive.write(response.getOutputStream());
+        }
+    }
+
+    private List<ZipArchiveWriter.Entry> toEntries(List<File> files, boolean deflate) throws IOException {
+        List<ZipArchiveWriter.Entry> entries = new ArrayList<>(files.size());
+        Set<String> usedNames = new HashSet<>();
+        for (File file : files) {
+            entries.add(new ZipArchiveWriter.Entry(
+                    uniqueName(entryName(file.getOriginalFilename()), usedNames),
+                    fileService.getLocalPath(file).orElse(null),
+                    (offset, length) -> fileService.openContent(file, offset, length),
+                    file.getFileSize(),
+                    file.getCrc32(),
+                    deflate && CompressibleTypes.isCompressible(file.getMimeType()),
+                    file.getCreatedAt()));
+        }
+        return entries;
+    }
+
+    /**
+     * Flattens the original filename into a single safe path segment.
+     */
+    static String entryName(String originalFilename) {
+        String name = originalFilename == null ? "" : originalFilename.replaceAll("[\\\\/\\p{Cntrl}]", "_").trim();
+        if (name.isEmpty() || name.equals(".") || name.equals("..")) {
+            return "file";
+        }
+        return name;
+    }
+
+    static String uniqueName(String name, Set<String> usedNames) {
+        // Case-insensitive, so the archive also extracts cleanly on Windows and macOS
+        if (usedNames.add(name.toLowerCase(Locale.ROOT))) {
+            return name;
+        }
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        for (int n = 2; ; n++) {
+            String candidate = base + " (" + n + ")" + extension;
+            if (usedNames.add(candidate.toLowerCase(Locale.ROOT))) {
+                return candidate;
+            }
+        }
+    }
+
+    private static String etagFor(List<File> files, List<ZipArchiveWriter.Entry> entries) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        digest.update(LAYOUT_VERSION.getBytes(StandardCharsets.US_ASCII));
+        for (int i = 0; i < files.size(); i++) {
+            String part = "\n" + DownloadWriter.etagFor(files.get(i)) + "\t" + entries.get(i).getName()
+                    + "\t" + entries.get(i).isDeflated();
+            digest.update(part.getBytes(StandardCharsets.UTF_8));
+        }
+        return "\"zip-" + HexFormat.of().formatHex(digest.digest(), 0, 16) + "\"";
+    }
+}
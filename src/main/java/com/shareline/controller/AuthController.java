@@ -2,6 +2,7 @@ package com.shareline.controller;
 
 import com.shareline.entity.User;
 import com.shareline.repository.UserRepository;
+import com.shareline.service.CurrentUserService;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -20,9 +21,11 @@ import java.util.Optional;
 public class AuthController {
 
     private final UserRepository userRepository;
+    private final CurrentUserService currentUserService;
 
-    public AuthController(UserRepository userRepository) {
+    public AuthController(UserRepository userRepository, CurrentUserService currentUserService) {
         this.userRepository = userRepository;
+        this.currentUserService = currentUserService;
     }
 
     @GetMapping("/test")
@@ -86,6 +89,7 @@ public class AuthController {
                 }
                 if (updated) {
                     user = userRepository.save(user);
+                    currentUserService.update(user);
                 }
             } else {
                 // Create user if not exists (fallback in case CustomOAuth2UserService didn't create it)
@@ -94,6 +98,7 @@ public class AuthController {
                 user.setEmail(email != null ? email : "");
                 user.setName(name != null ? name : (email != null ? email : "User"));
                 user = userRepository.save(user);
+                currentUserService.update(user);
             }
             
             response.put("authenticated", true);
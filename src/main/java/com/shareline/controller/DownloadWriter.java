@@ -0,0 +1,442 @@
+package com.shareline.controller;
+
+import com.shareline.entity.File;
+import com.shareline.service.CompressedVariantService;
+import com.shareline.service.CompressedVariantService.Coding;
+import com.shareline.service.FileService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Writes a stored file to the response with HTTP validators and byte-range support:
+ * <ul>
+ *     <li>ETag / Last-Modified derived from the File entity (stored files never change)</li>
+ *     <li>If-None-Match / If-Modified-Since answered with 304</li>
+ *     <li>Range answered with 206 (multipart/byteranges for several ranges) or 416</li>
+ *     <li>If-Range falls back to the full body when the client's validator is stale</li>
+ * </ul>
+ * Bodies are sent zero-copy when possible: full and single-range responses are handed to Tomcat's
+ * sendfile support, and everything else goes through {@link FileChannel#transferTo}. Setting
+ * {@code shareline.download.zero-copy=false} restores the plain buffered copy. Content in a remote
+ * storage backend is streamed with ranged reads instead, and so are bandwidth-limited responses.
+ * <p>
+ * Text-like content is sent zstd- or gzip-encoded when the client accepts it and no range is
+ * asked for, preferably from a precompressed variant (see {@link CompressedVariantService}).
+ */
+@Component
+public class DownloadWriter {
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    // More ranges than this (after merging) is not a real client; just send the whole file
+    private static final int MAX_RANGES = 16;
+
+    // Request attributes of Tomcat's sendfile support (see org.apache.catalina.Globals)
+    private static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    private final FileService fileService;
+    private final CompressedVariantService compressedVariantService;
+    private final boolean zeroCopy;
+    private final long sendfileMinSize;
+
+    public DownloadWriter(
+            FileService fileService,
+            CompressedVariantService compressedVariantService,
+            @Value("${shareline.download.zero-copy:true}") boolean zeroCopy,
+            @Value("${shareline.download.sendfile-min-size:49152}") long sendfileMinSize) {
+        this.fileService = fileService;
+        this.compressedVariantService = compressedVariantService;
+        this.zeroCopy = zeroCopy;
+        this.sendfileMinSize = sendfileMinSize;
+    }
+
+    public void write(File file, boolean inline, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        String contentType = file.getMimeType() != null ? file.getMimeType() : "application/octet-stream";
+        String disposition = (inline ? "inline" : "attachment") + "; filename=\"" + file.getOriginalFilename() + "\"";
+
+        if (compressedVariantService.isCompressible(file)) {
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            // Ranges always refer to the original bytes
+            Coding coding = request.getHeader(HttpHeaders.RANGE) == null
+                    ? Coding.negotiate(request.getHeader(HttpHeaders.ACCEPT_ENCODING))
+                    : null;
+            if (coding != null) {
+                writeEncoded(file, coding, contentType, disposition, request, response);
+                return;
+            }
+        }
+        write(fileService.getLocalPath(file).orElse(null),
+                (offset, length) -> fileService.openContent(file, offset, length),
+                file.getFileSize(), etagFor(file), lastModifiedFor(file), contentType, disposition, request, response);
+    }
+
+    /**
+     * Writes a JPEG rendition derived from the file. Renditions are as immutable as the content
+     * they come from, so they get the same validators plus the rendition's name.
+     */
+    public void writeRendition(File file, String renditionName, Path path, HttpServletRequest request,
+                               HttpServletResponse response) throws IOException {
+        String etag = "\"" + file.getChecksum() + "-" + renditionName + "\"";
+        write(path, null, Files.size(path), etag, lastModifiedFor(file), "image/jpeg", "inline",
+                request, response);
+    }
+
+    /**
+     * Sends the content with a Content-Encoding: the stored variant if it has been produced,
+     * otherwise compressed on the fly. Both are the same representation to a client, so they
+     * share a weak ETag.
+     */
+    private void writeEncoded(File file, Coding coding, String contentType, String disposition,
+                              HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String etag = "W/\"" + file.getChecksum() + "-" + coding.getToken() + "\"";
+        long lastModified = lastModifiedFor(file);
+
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+
+        if (isNotModified(request, etag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, disposition);
+        response.setHeader(HttpHeaders.CONTENT_ENCODING, coding.getToken());
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(contentType);
+        boolean headOnly = "HEAD".equals(request.getMethod());
+
+        Path variant = compressedVariantService.getVariant(file, coding);
+        if (variant != null) {
+            try (FileChannel channel = FileChannel.open(variant, StandardOpenOption.READ)) {
+                long size = channel.size();
+                response.setContentLengthLong(size);
+                if (!headOnly) {
+                    writeBody(variant, channel, null, 0, size, request, response);
+                }
+            }
+            return;
+        }
+
+        if (!headOnly) {
+            try (InputStream in = fileService.openContent(file, 0, file.getFileSize());
+                 OutputStream out = compressedVariantService.encode(response.getOutputStream(), coding)) {
+                in.transferTo(out);
+            }
+        }
+    }
+
+    /**
+     * Writes content from the local {@code path} or, when that is null, from {@code remote}.
+     */
+    private void write(Path path, RangeSource remote, long size, String etag, long lastModified, String contentType,
+                       String disposition, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, no-cache");
+
+        if (isNotModified(request, etag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, disposition);
+
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        List<ByteRange> ranges = null;
+        if (rangeHeader != null && isRangeApplicable(request, etag, lastModified)) {
+            ranges = parseRanges(rangeHeader, size);
+            if (ranges != null && ranges.isEmpty()) {
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                return;
+            }
+        }
+
+        boolean headOnly = "HEAD".equals(request.getMethod());
+        try (FileChannel channel = path != null ? FileChannel.open(path, StandardOpenOption.READ) : null) {
+            if (ranges == null) {
+                response.setStatus(HttpServletResponse.SC_OK);
+                response.setContentType(contentType);
+                response.setContentLengthLong(size);
+                if (!headOnly) {
+                    writeBody(path, channel, remote, 0, size, request, response);
+                }
+            } else if (ranges.size() == 1) {
+                ByteRange range = ranges.get(0);
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setContentType(contentType);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, range.contentRange(size));
+                response.setContentLengthLong(range.length());
+                if (!headOnly) {
+                    writeBody(path, channel, remote, range.start(), range.length(), request, response);
+                }
+            } else {
+                writeMultipart(channel, remote, ranges, size, contentType, headOnly, response);
+            }
+        }
+    }
+
+    private void writeMultipart(FileChannel channel, RangeSource remote, List<ByteRange> ranges, long size,
+                                String contentType, boolean headOnly, HttpServletResponse response)
+            throws IOException {
+        String boundary = UUID.randomUUID().toString().replace("-", "");
+        List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+        long contentLength = 0;
+        for (ByteRange range : ranges) {
+            byte[] header = ("\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": " + range.contentRange(size) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(header);
+            contentLength += header.length + range.length();
+        }
+        byte[] trailer = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        contentLength += trailer.length;
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+        if (headOnly) {
+            return;
+        }
+
+        OutputStream out = response.getOutputStream();
+        for (int i = 0; i < ranges.size(); i++) {
+            out.write(partHeaders.get(i));
+            if (channel == null) {
+                stream(remote, ranges.get(i).start(), ranges.get(i).length(), out);
+            } else if (zeroCopy) {
+                transfer(channel, ranges.get(i).start(), ranges.get(i).length(), out);
+            } else {
+                copy(channel, ranges.get(i).start(), ranges.get(i).length(), out);
+            }
+        }
+        out.write(trailer);
+    }
+
+    /**
+     * Writes one contiguous region of the file as the whole response body.
+     */
+    private void writeBody(Path path, FileChannel channel, RangeSource remote, long position, long length,
+                           HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (channel == null) {
+            stream(remote, position, length, response.getOutputStream());
+            return;
+        }
+        if (!zeroCopy) {
+            copy(channel, position, length, response.getOutputStream());
+            return;
+        }
+        if (length >= sendfileMinSize && !(response instanceof ThrottledResponse)
+                && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR))) {
+            // Tomcat sends the region straight from the page cache once the servlet returns
+            request.setAttribute(SENDFILE_FILENAME_ATTR, path.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTR, position);
+            request.setAttribute(SENDFILE_END_ATTR, position + length);
+            return;
+        }
+        transfer(channel, position, length, response.getOutputStream());
+    }
+
+    private void transfer(FileChannel channel, long position, long length, OutputStream out) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        long remaining = length;
+        while (remaining > 0) {
+            long sent = channel.transferTo(position, remaining, target);
+            if (sent <= 0) {
+                throw new IOException("Unexpected end of file");
+            }
+            position += sent;
+            remaining -= sent;
+        }
+    }
+
+    private void copy(FileChannel channel, long position, long length, OutputStream out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+        long remaining = length;
+        while (remaining > 0) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), remaining));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+            out.write(buffer.array(), 0, read);
+            position += read;
+            remaining -= read;
+        }
+    }
+
+    private void stream(RangeSource remote, long position, long length, OutputStream out) throws IOException {
+        try (InputStream in = remote.open(position, length)) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            long remaining = length;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new IOException("Unexpected end of file");
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+
+    static String etagFor(File file) {
+        if (file.getChecksum() != null) {
+            return "\"" + file.getChecksum() + "\"";
+        }
+        return "\"" + file.getId() + "-" + file.getFileSize() + "-" + lastModifiedFor(file) + "\"";
+    }
+
+    static long lastModifiedFor(File file) {
+        // HTTP dates have second precision
+        long millis = file.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return millis - millis % 1000;
+    }
+
+    static boolean isNotModified(HttpServletRequest request, String etag, long lastModified) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            // Weak comparison; If-Modified-Since is ignored when If-None-Match is present
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.equals("*") || stripWeak(tag).equals(stripWeak(etag))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long ifModifiedSince = getDateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+        return ifModifiedSince >= 0 && lastModified <= ifModifiedSince;
+    }
+
+    static boolean isRangeApplicable(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // Strong comparison only
+            return ifRange.equals(etag);
+        }
+        long date = getDateHeader(request, HttpHeaders.IF_RANGE);
+        return date >= 0 && date == lastModified;
+    }
+
+    /**
+     * Parses a "bytes=" Range header against the file size.
+     *
+     * @return null if the header should be ignored (malformed, or too many ranges), an empty list
+     * if no range is satisfiable, otherwise the sorted, merged ranges
+     */
+    static List<ByteRange> parseRanges(String header, long size) {
+        if (!header.startsWith("bytes=")) {
+            return null;
+        }
+        List<ByteRange> ranges = new ArrayList<>();
+        for (String spec : header.substring(6).split(",")) {
+            spec = spec.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            try {
+                String first = spec.substring(0, dash).trim();
+                String last = spec.substring(dash + 1).trim();
+                long start;
+                long end;
+                if (first.isEmpty()) {
+                    // Suffix range: the last N bytes
+                    long suffix = Long.parseLong(last);
+                    if (suffix <= 0) {
+                        continue;
+                    }
+                    start = Math.max(0, size - suffix);
+                    end = size - 1;
+                } else {
+                    start = Long.parseLong(first);
+                    end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+                    if (end < start && !last.isEmpty() && Long.parseLong(last) < start) {
+                        return null;
+                    }
+                }
+                if (start < size && start <= end) {
+                    ranges.add(new ByteRange(start, end));
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        if (ranges.isEmpty()) {
+            return ranges;
+        }
+
+        ranges.sort(Comparator.comparingLong(ByteRange::start));
+        List<ByteRange> merged = new ArrayList<>();
+        ByteRange current = ranges.get(0);
+        for (ByteRange next : ranges.subList(1, ranges.size())) {
+            if (next.start() <= current.end() + 1) {
+                current = new ByteRange(current.start(), Math.max(current.end(), next.end()));
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+        return merged.size() > MAX_RANGES ? null : merged;
+    }
+
+    private static String stripWeak(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    private static long getDateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    @FunctionalInterface
+    private interface RangeSource {
+        InputStream open(long offset, long length) throws IOException;
+    }
+
+    record ByteRange(long start, long end) {
+        long length() {
+            return end - start + 1;
+        }
+
+        String contentRange(long size) {
+            return "bytes " + start + "-" + end + "/" + size;
+        }
+    }
+}
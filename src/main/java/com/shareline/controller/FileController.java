@@ -1,12 +1,21 @@
 package com.shareline.controller;
 
-import com.shareline.dto.FileInfo;
+import com.shareline.dto.BulkRequest;
+import com.shareline.dto.BulkResult;
+import com.shareline.dto.FilePage;
+import com.shareline.dto.FileStats;
 import com.shareline.dto.FileUploadResponse;
+import com.shareline.dto.HashUploadRequest;
 import com.shareline.entity.File;
 import com.shareline.entity.User;
-import com.shareline.repository.UserRepository;
+import com.shareline.service.BatchUploadService;
+import com.shareline.service.BulkFileService;
+import com.shareline.service.CurrentUserService;
 import com.shareline.service.FileService;
-import org.springframework.core.io.Resource;
+import com.shareline.service.RenditionService;
+import com.shareline.service.RenditionService.Rendition;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -17,6 +26,7 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 @RestController
@@ -24,11 +34,24 @@ import java.util.Map;
 public class FileController {
 
     private final FileService fileService;
-    private final UserRepository userRepository;
+    private final BatchUploadService batchUploadService;
+    private final BulkFileService bulkFileService;
+    private final CurrentUserService currentUserService;
+    private final DownloadWriter downloadWriter;
+    private final ArchiveWriter archiveWriter;
+    private final RenditionService renditionService;
 
-    public FileController(FileService fileService, UserRepository userRepository) {
+    public FileController(FileService fileService, BatchUploadService batchUploadService,
+                          BulkFileService bulkFileService, CurrentUserService currentUserService,
+                          DownloadWriter downloadWriter, ArchiveWriter archiveWriter,
+                          RenditionService renditionService) {
         this.fileService = fileService;
-        this.userRepository = userRepository;
+        this.batchUploadService = batchUploadService;
+        this.bulkFileService = bulkFileService;
+        this.currentUserService = currentUserService;
+        this.downloadWriter = downloadWriter;
+        this.archiveWriter = archiveWriter;
+        this.renditionService = renditionService;
     }
 
     @PostMapping("/upload")
@@ -41,41 +64,130 @@ public class FileController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Several files in one multipart request, each as a {@code files} part; all of them are saved
+     * or none. The responses are in the order of the parts.
+     */
+    @PostMapping("/upload/batch")
+    public ResponseEntity<List<FileUploadResponse>> uploadFiles(
+            @RequestParam("files") List<MultipartFile> files,
+            @AuthenticationPrincipal OAuth2User principal) throws IOException {
+
+        User user = getCurrentUser(principal);
+        return ResponseEntity.ok(batchUploadService.uploadFiles(files, user));
+    }
+
+    /**
+     * Streaming upload: the raw request body is the file content, so nothing is spooled by the
+     * multipart resolver before it reaches storage.
+     */
+    @PostMapping(value = "/upload/stream", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<FileUploadResponse> uploadFileStream(
+            @RequestParam("filename") String filename,
+            @AuthenticationPrincipal OAuth2User principal,
+            HttpServletRequest request) throws IOException {
+
+        User user = getCurrentUser(principal);
+        FileUploadResponse response = fileService.uploadStream(
+                request.getInputStream(), request.getContentLengthLong(), filename, user);
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Hash-first handshake: returns the created file if the user already has content with the
+     * given digest, or 404 if the client has to upload the bytes.
+     */
+    @PostMapping("/upload/hash")
+    public ResponseEntity<FileUploadResponse> uploadFileByHash(
+            @RequestBody HashUploadRequest request,
+            @AuthenticationPrincipal OAuth2User principal) throws IOException {
+
+        User user = getCurrentUser(principal);
+        return fileService.uploadByHash(request.getSha256(), request.getFileSize(), request.getOriginalFilename(), user)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
     @GetMapping
-    public ResponseEntity<List<FileInfo>> getUserFiles(@AuthenticationPrincipal OAuth2User principal) {
+    public ResponseEntity<FilePage> getUserFiles(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @AuthenticationPrincipal OAuth2User principal) {
         User user = getCurrentUser(principal);
-        List<FileInfo> files = fileService.getUserFiles(user);
+        FilePage files = fileService.getUserFiles(user, cursor, limit);
         return ResponseEntity.ok(files);
     }
 
+    @GetMapping("/stats")
+    public ResponseEntity<FileStats> getUserFileStats(@AuthenticationPrincipal OAuth2User principal) {
+        User user = getCurrentUser(principal);
+        return ResponseEntity.ok(fileService.getUserFileStats(user));
+    }
+
+    /**
+     * Several files as one ZIP streamed on the fly, e.g. {@code /api/files/archive?ids=3,7,12}.
+     */
+    @GetMapping("/archive")
+    public void downloadArchive(
+            @RequestParam("ids") List<Long> ids,
+            @AuthenticationPrincipal OAuth2User principal,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+
+        User user = getCurrentUser(principal);
+        List<File> files = fileService.getFilesByIdsAndUser(ids, user);
+        archiveWriter.write(files, "shareline-files.zip", request, response);
+    }
+
     @GetMapping("/{id}")
-    public ResponseEntity<Resource> downloadFile(
+    public void downloadFile(
             @PathVariable Long id,
-            @AuthenticationPrincipal OAuth2User principal) throws IOException {
+            @AuthenticationPrincipal OAuth2User principal,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
         
         User user = getCurrentUser(principal);
         File file = fileService.getFileByIdAndUser(id, user);
-        Resource resource = fileService.loadFileAsResource(file);
-
-        return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(file.getMimeType() != null ? file.getMimeType() : "application/octet-stream"))
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + file.getOriginalFilename() + "\"")
-                .body(resource);
+        downloadWriter.write(file, false, request, response);
     }
 
     @GetMapping("/{id}/preview")
-    public ResponseEntity<Resource> previewFile(
+    public void previewFile(
             @PathVariable Long id,
-            @AuthenticationPrincipal OAuth2User principal) throws IOException {
+            @AuthenticationPrincipal OAuth2User principal,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
         
         User user = getCurrentUser(principal);
         File file = fileService.getFileByIdAndUser(id, user);
-        Resource resource = fileService.loadFileAsResource(file);
+        downloadWriter.write(file, true, request, response);
+    }
+
+    /**
+     * Downscaled JPEG of an image or of a PDF's first page ({@code size=small|large}). Answers
+     * 202 with Retry-After while the rendition is being generated and 404 if the file has none,
+     * in which case clients fall back to {@code /preview}.
+     */
+    @GetMapping("/{id}/thumbnail")
+    public void thumbnail(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "small") String size,
+            @AuthenticationPrincipal OAuth2User principal,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
 
-        return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(file.getMimeType() != null ? file.getMimeType() : "application/octet-stream"))
-                .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + file.getOriginalFilename() + "\"")
-                .body(resource);
+        User user = getCurrentUser(principal);
+        File file = fileService.getFileByIdAndUser(id, user);
+        Rendition rendition = Rendition.fromParam(size);
+        switch (renditionService.getState(file, rendition)) {
+            case READY -> downloadWriter.writeRendition(file, size.toLowerCase(Locale.ROOT),
+                    renditionService.getPath(file, rendition), request, response);
+            case PENDING -> {
+                response.setStatus(HttpServletResponse.SC_ACCEPTED);
+                response.setHeader(HttpHeaders.RETRY_AFTER, "2");
+            }
+            case UNAVAILABLE -> response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+        }
     }
 
     @DeleteMapping("/{id}")
@@ -88,13 +200,20 @@ public class FileController {
         return ResponseEntity.ok(Map.of("message", "File deleted successfully"));
     }
 
+    /**
+     * Deletes every file in {@code ids} the user owns; the others are reported as not found.
+     */
+    @PostMapping("/bulk/delete")
+    public ResponseEntity<BulkResult> deleteFiles(
+            @RequestBody BulkRequest request,
+            @AuthenticationPrincipal OAuth2User principal) {
+
+        User user = getCurrentUser(principal);
+        return ResponseEntity.ok(bulkFileService.deleteFiles(request.getIds(), user));
+    }
+
     private User getCurrentUser(OAuth2User principal) {
-        if (principal == null) {
-            throw new RuntimeException("User not authenticated");
-        }
-        String googleId = principal.getAttribute("sub");
-        return userRepository.findByGoogleId(googleId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+        return currentUserService.getCurrentUser(principal);
     }
 }
 
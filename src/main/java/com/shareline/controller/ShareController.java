@@ -1,16 +1,22 @@
 package com.shareline.controller;
 
+import com.shareline.dto.BulkItemResult;
+import com.shareline.dto.BulkRequest;
+import com.shareline.dto.BulkResult;
 import com.shareline.dto.ShareRequest;
 import com.shareline.entity.File;
 import com.shareline.entity.User;
-import com.shareline.repository.UserRepository;
-import com.shareline.service.FileService;
+import com.shareline.service.BulkFileService;
+import com.shareline.service.CurrentUserService;
+import com.shareline.service.RateLimitExceededException;
+import com.shareline.service.ShareRateLimiter;
+import com.shareline.service.ShareRateLimiter.Throttle;
 import com.shareline.service.ShareService;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.core.user.OAuth2User;
@@ -18,26 +24,38 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api")
 public class ShareController {
 
     private final ShareService shareService;
-    private final FileService fileService;
-    private final UserRepository userRepository;
+    private final BulkFileService bulkFileService;
+    private final CurrentUserService currentUserService;
+    private final DownloadWriter downloadWriter;
+    private final ArchiveWriter archiveWriter;
+    private final ShareRateLimiter shareRateLimiter;
     private final String baseUrl;
 
     public ShareController(
             ShareService shareService,
-            FileService fileService,
-            UserRepository userRepository,
+            BulkFileService bulkFileService,
+            CurrentUserService currentUserService,
+            DownloadWriter downloadWriter,
+            ArchiveWriter archiveWriter,
+            ShareRateLimiter shareRateLimiter,
             @Value("${shareline.base-url:http://localhost:8080}") String baseUrl) {
         this.shareService = shareService;
-        this.fileService = fileService;
-        this.userRepository = userRepository;
+        this.bulkFileService = bulkFileService;
+        this.currentUserService = currentUserService;
+        this.downloadWriter = downloadWriter;
+        this.archiveWriter = archiveWriter;
+        this.shareRateLimiter = shareRateLimiter;
         this.baseUrl = baseUrl;
     }
 
@@ -68,20 +86,64 @@ public class ShareController {
         return ResponseEntity.ok(Map.of("message", "Share link revoked successfully"));
     }
 
+    /**
+     * Shares every file in {@code ids} the user owns, each with a new link, replacing any it had.
+     */
+    @PostMapping("/files/bulk/share")
+    public ResponseEntity<BulkResult> createShareLinks(
+            @RequestBody BulkRequest request,
+            @AuthenticationPrincipal OAuth2User principal,
+            HttpServletRequest httpRequest) {
+
+        User user = getCurrentUser(principal);
+        BulkResult result = bulkFileService.shareFiles(request.getIds(), user, request.getExpirationDays());
+        String shareBase = resolveBaseUrl(httpRequest) + "/share/";
+        for (BulkItemResult item : result.getResults()) {
+            if (item.getShareToken() != null) {
+                item.setShareUrl(shareBase + item.getShareToken());
+            }
+        }
+        return ResponseEntity.ok(result);
+    }
+
+    @PostMapping("/files/bulk/revoke")
+    public ResponseEntity<BulkResult> revokeShareLinks(
+            @RequestBody BulkRequest request,
+            @AuthenticationPrincipal OAuth2User principal) {
+
+        User user = getCurrentUser(principal);
+        return ResponseEntity.ok(bulkFileService.revokeShares(request.getIds(), user));
+    }
+
+    /**
+     * Several shared files as one ZIP, e.g. {@code /api/share/archive?tokens=<token>,<token>}.
+     * Limited per share token, per client IP and globally, like a download of each of the files.
+     */
+    @GetMapping("/share/archive")
+    public void downloadSharedArchive(
+            @RequestParam("tokens") List<String> tokens,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        List<String> distinctTokens = shareService.archiveTokens(tokens);
+        Admitted<List<File>> files = admit(distinctTokens, () -> shareService.getFilesByShareTokens(distinctTokens),
+                request);
+        archiveWriter.write(files.shares(), "shared-files.zip", request, throttled(response, files.throttle()));
+    }
+
     @GetMapping("/share/{token}")
-    public ResponseEntity<Resource> downloadSharedFile(@PathVariable String token) throws IOException {
-        File file = shareService.getFileByShareToken(token);
-        Resource resource = fileService.loadFileAsResource(file);
-
-        return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(file.getMimeType() != null ? file.getMimeType() : "application/octet-stream"))
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + file.getOriginalFilename() + "\"")
-                .body(resource);
+    public void downloadSharedFile(
+            @PathVariable String token,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        Admitted<File> file = admit(List.of(token), () -> shareService.getFileByShareToken(token), request);
+        downloadWriter.write(file.shares(), false, request, throttled(response, file.throttle()));
     }
 
     @GetMapping("/share/{token}/info")
-    public ResponseEntity<Map<String, Object>> getSharedFileInfo(@PathVariable String token) {
-        File file = shareService.getFileByShareToken(token);
+    public ResponseEntity<Map<String, Object>> getSharedFileInfo(
+            @PathVariable String token,
+            HttpServletRequest request) throws IOException {
+        File file = admit(List.of(token), () -> shareService.getFileByShareToken(token), request).shares();
         
         Map<String, Object> info = new HashMap<>();
         info.put("originalFilename", file.getOriginalFilename());
@@ -93,6 +155,37 @@ public class ShareController {
         return ResponseEntity.ok(info);
     }
 
+    @ExceptionHandler(RateLimitExceededException.class)
+    public ResponseEntity<Map<String, String>> rateLimited(RateLimitExceededException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfterSeconds()))
+                .body(Map.of("message", e.getMessage()));
+    }
+
+    /**
+     * Looks the shares up, then admits the request against their limits. A request with a token
+     * that doesn't resolve is charged to the client and the node only: made-up tokens never get
+     * buckets of their own, so cycling through them can't push out the buckets of real links.
+     */
+    private <T> Admitted<T> admit(List<String> tokens, Supplier<T> lookup, HttpServletRequest request)
+            throws InterruptedIOException {
+        T shares;
+        try {
+            shares = lookup.get();
+        } catch (RuntimeException e) {
+            shareRateLimiter.admit(List.of(), request.getRemoteAddr());
+            throw e;
+        }
+        return new Admitted<>(shares, shareRateLimiter.admit(tokens, request.getRemoteAddr()));
+    }
+
+    private record Admitted<T>(T shares, Throttle throttle) {
+    }
+
+    private static HttpServletResponse throttled(HttpServletResponse response, Throttle throttle) {
+        return throttle.isUnlimited() ? response : new ThrottledResponse(response, throttle);
+    }
+
     private String resolveBaseUrl(HttpServletRequest request) {
         try {
             // Respect forwarded headers when behind a proxy/load balancer
@@ -124,12 +217,7 @@ public class ShareController {
     }
 
     private User getCurrentUser(OAuth2User principal) {
-        if (principal == null) {
-            throw new RuntimeException("User not authenticated");
-        }
-        String googleId = principal.getAttribute("sub");
-        return userRepository.findByGoogleId(googleId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+        return currentUserService.getCurrentUser(principal);
     }
 }
 
@@ -0,0 +1,211 @@
+package com.shareline.controller;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Counts the bytes moved by upload and download requests and how many of each are in flight:
+ * <ul>
+ *     <li>{@code shareline.transfer.bytes}, by direction (in / out) and access (owner / share)</li>
+ *     <li>{@code shareline.transfers.active}, by direction (upload / download)</li>
+ * </ul>
+ * Bodies handed to sendfile never pass through the response stream, so they are counted from the
+ * region requested. Multipart uploads are parsed by the container and counted by their length.
+ */
+@Component
+public class TransferMetricsFilter extends OncePerRequestFilter {
+
+    private static final Pattern UPLOAD_PATH = Pattern.compile("/api/files/(upload(/stream|/batch)?|uploads/[^/]+/chunks/\\d+)");
+    private static final Pattern DOWNLOAD_PATH =
+            Pattern.compile("/api/(files/(\\d+(/preview|/thumbnail)?|archive)|share/[^/]+)");
+
+    private final AtomicInteger activeUploads = new AtomicInteger();
+    private final AtomicInteger activeDownloads = new AtomicInteger();
+    private final Counter ownerBytesIn;
+    private final Counter shareBytesIn;
+    private final Counter ownerBytesOut;
+    private final Counter shareBytesOut;
+
+    public TransferMetricsFilter(MeterRegistry meterRegistry) {
+        Gauge.builder("shareline.transfers.active", activeUploads, AtomicInteger::get)
+                .tag("direction", "upload").register(meterRegistry);
+        Gauge.builder("shareline.transfers.active", activeDownloads, AtomicInteger::get)
+                .tag("direction", "download").register(meterRegistry);
+        this.ownerBytesIn = bytesCounter(meterRegistry, "in", "owner");
+        this.shareBytesIn = bytesCounter(meterRegistry, "in", "share");
+        this.ownerBytesOut = bytesCounter(meterRegistry, "out", "owner");
+        this.shareBytesOut = bytesCounter(meterRegistry, "out", "share");
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith(request.getContextPath() + "/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        String method = request.getMethod();
+        boolean upload = ("POST".equals(method) || "PUT".equals(method)) && UPLOAD_PATH.matcher(path).matches();
+        boolean download = ("GET".equals(method) || "HEAD".equals(method)) && DOWNLOAD_PATH.matcher(path).matches();
+        if (!upload && !download) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        boolean shared = path.startsWith("/api/share/");
+        AtomicInteger active = upload ? activeUploads : activeDownloads;
+        CountingRequest countingRequest = new CountingRequest(request);
+        CountingResponse countingResponse = new CountingResponse(response);
+        active.incrementAndGet();
+        try {
+            chain.doFilter(countingRequest, countingResponse);
+        } finally {
+            active.decrementAndGet();
+            long in = countingRequest.count;
+            String contentType = request.getContentType();
+            if (in == 0 && contentType != null && contentType.startsWith("multipart/")) {
+                in = Math.max(0, request.getContentLengthLong());
+            }
+            long out = countingResponse.count + sendfileLength(request);
+            (shared ? shareBytesIn : ownerBytesIn).increment(in);
+            (shared ? shareBytesOut : ownerBytesOut).increment(out);
+        }
+    }
+
+    private static long sendfileLength(HttpServletRequest request) {
+        if (request.getAttribute(DownloadWriter.SENDFILE_FILENAME_ATTR) == null) {
+            return 0;
+        }
+        Object start = request.getAttribute(DownloadWriter.SENDFILE_START_ATTR);
+        Object end = request.getAttribute(DownloadWriter.SENDFILE_END_ATTR);
+        return start instanceof Long s && end instanceof Long e ? e - s : 0;
+    }
+
+    private static Counter bytesCounter(MeterRegistry meterRegistry, String direction, String access) {
+        return Counter.builder("shareline.transfer.bytes")
+                .baseUnit("bytes")
+                .tag("direction", direction)
+                .tag("access", access)
+                .register(meterRegistry);
+    }
+
+    private static final class CountingRequest extends HttpServletRequestWrapper {
+        long count;
+        private ServletInputStream inputStream;
+
+        CountingRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (inputStream == null) {
+                ServletInputStream in = super.getInputStream();
+                inputStream = new ServletInputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        int b = in.read();
+                        if (b >= 0) {
+                            count++;
+                        }
+                        return b;
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        int n = in.read(b, off, len);
+                        if (n > 0) {
+                            count += n;
+                        }
+                        return n;
+                    }
+
+                    @Override
+                    public boolean isFinished() {
+                        return in.isFinished();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return in.isReady();
+                    }
+
+                    @Override
+                    public void setReadListener(ReadListener readListener) {
+                        in.setReadListener(readListener);
+                    }
+                };
+            }
+            return inputStream;
+        }
+    }
+
+    private static final class CountingResponse extends HttpServletResponseWrapper {
+        long count;
+        private ServletOutputStream outputStream;
+
+        CountingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                ServletOutputStream out = super.getOutputStream();
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        out.write(b);
+                        count++;
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        out.write(b, off, len);
+                        count += len;
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        out.flush();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        out.close();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return out.isReady();
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener writeListener) {
+                        out.setWriteListener(writeListener);
+                    }
+                };
+            }
+            return outputStream;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.shareline.controller;
+
+import com.shareline.service.CurrentUserService;
+import com.shareline.service.QuotaService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.core.user.OAuth2User;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Refuses multipart uploads whose declared length is past the user's remaining quota before the
+ * body is read. Multipart requests are resolved lazily ({@code spring.servlet.multipart.resolve-lazily}),
+ * so the container spools nothing until the controller asks for the parts, which happens after
+ * this check. Bodies of unknown length are checked part by part once parsed, as before.
+ */
+@Component
+public class UploadQuotaInterceptor implements HandlerInterceptor {
+
+    // Part headers and boundaries counted in Content-Length but not in the files' sizes
+    private static final long MULTIPART_OVERHEAD = 64 * 1024;
+
+    private final CurrentUserService currentUserService;
+    private final QuotaService quotaService;
+
+    public UploadQuotaInterceptor(CurrentUserService currentUserService, QuotaService quotaService) {
+        this.currentUserService = currentUserService;
+        this.quotaService = quotaService;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        long contentLength = request.getContentLengthLong();
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (contentLength > MULTIPART_OVERHEAD && authentication != null
+                && authentication.getPrincipal() instanceof OAuth2User principal) {
+            quotaService.checkAvailable(currentUserService.getCurrentUser(principal),
+                    contentLength - MULTIPART_OVERHEAD);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,83 @@
+package com.shareline.controller;
+
+import com.shareline.dto.FileUploadResponse;
+import com.shareline.dto.UploadSessionRequest;
+import com.shareline.dto.UploadSessionResponse;
+import com.shareline.entity.User;
+import com.shareline.service.CurrentUserService;
+import com.shareline.service.UploadSessionService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.oauth2.core.user.OAuth2User;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/files/uploads")
+public class UploadSessionController {
+
+    private final UploadSessionService uploadSessionService;
+    private final CurrentUserService currentUserService;
+
+    public UploadSessionController(UploadSessionService uploadSessionService, CurrentUserService currentUserService) {
+        this.uploadSessionService = uploadSessionService;
+        this.currentUserService = currentUserService;
+    }
+
+    @PostMapping
+    public ResponseEntity<UploadSessionResponse> createSession(
+            @RequestBody UploadSessionRequest request,
+            @AuthenticationPrincipal OAuth2User principal) {
+
+        User user = getCurrentUser(principal);
+        return ResponseEntity.ok(
+                uploadSessionService.createSession(request.getOriginalFilename(), request.getFileSize(), user));
+    }
+
+    @GetMapping("/{uploadId}")
+    public ResponseEntity<UploadSessionResponse> getSession(
+            @PathVariable String uploadId,
+            @AuthenticationPrincipal OAuth2User principal) {
+
+        User user = getCurrentUser(principal);
+        return ResponseEntity.ok(uploadSessionService.getSession(uploadId, user));
+    }
+
+    @PutMapping("/{uploadId}/chunks/{chunkIndex}")
+    public ResponseEntity<UploadSessionResponse> uploadChunk(
+            @PathVariable String uploadId,
+            @PathVariable int chunkIndex,
+            @AuthenticationPrincipal OAuth2User principal,
+            HttpServletRequest request) throws IOException {
+
+        User user = getCurrentUser(principal);
+        return ResponseEntity.ok(
+                uploadSessionService.writeChunk(uploadId, chunkIndex, request.getInputStream(), user));
+    }
+
+    @PostMapping("/{uploadId}/complete")
+    public ResponseEntity<FileUploadResponse> completeSession(
+            @PathVariable String uploadId,
+            @AuthenticationPrincipal OAuth2User principal) throws IOException {
+
+        User user = getCurrentUser(principal);
+        return ResponseEntity.ok(uploadSessionService.completeSession(uploadId, user));
+    }
+
+    @DeleteMapping("/{uploadId}")
+    public ResponseEntity<Map<String, String>> abortSession(
+            @PathVariable String uploadId,
+            @AuthenticationPrincipal OAuth2User principal) throws IOException {
+
+        User user = getCurrentUser(principal);
+        uploadSessionService.abortSession(uploadId, user);
+        return ResponseEntity.ok(Map.of("message", "Upload aborted"));
+    }
+
+    private User getCurrentUser(OAuth2User principal) {
+        return currentUserService.getCurrentUser(principal);
+    }
+}
@@ -0,0 +1,31 @@
+package com.shareline.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkItemResult {
+
+    public enum Status {
+        DELETED,
+        SHARED,
+        REVOKED,
+        // Unknown, or owned by someone else; the two are not told apart
+        NOT_FOUND
+    }
+
+    private Long id;
+    private Status status;
+    private String shareToken;
+    private String shareUrl;
+    private LocalDateTime shareExpiresAt;
+
+    public static BulkItemResult of(Long id, Status status) {
+        return new BulkItemResult(id, status, null, null, null);
+    }
+}
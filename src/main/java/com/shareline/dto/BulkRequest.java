@@ -0,0 +1,15 @@
+package com.shareline.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkRequest {
+    private List<Long> ids;
+    private Integer expirationDays; // Bulk share only: number of days until expiration
+}
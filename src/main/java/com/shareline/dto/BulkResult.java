@@ -0,0 +1,24 @@
+package com.shareline.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Outcome of a bulk operation: one entry per distinct id, in the order requested.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkResult {
+    private int succeeded;
+    private int notFound;
+    private List<BulkItemResult> results;
+
+    public static BulkResult of(List<BulkItemResult> results) {
+        int missing = (int) results.stream().filter(r -> r.getStatus() == BulkItemResult.Status.NOT_FOUND).count();
+        return new BulkResult(results.size() - missing, missing, results);
+    }
+}
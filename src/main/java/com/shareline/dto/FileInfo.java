@@ -19,5 +19,7 @@ public class FileInfo {
     private LocalDateTime shareExpiresAt;
     private LocalDateTime createdAt;
     private boolean shareable;
+    // PROCESSING until post-upload work (content type, previews) is done, then READY or FAILED
+    private String status;
 }
 
@@ -0,0 +1,15 @@
+package com.shareline.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FilePage {
+    private List<FileInfo> items;
+    private String nextCursor; // null on the last page
+}
@@ -0,0 +1,14 @@
+package com.shareline.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileStats {
+    private Long fileCount;
+    private Long totalBytes;
+    private Long sharedCount;
+}
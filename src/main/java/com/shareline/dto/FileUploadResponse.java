@@ -12,6 +12,7 @@ public class FileUploadResponse {
     private String filename;
     private String originalFilename;
     private Long fileSize;
+    private String checksum;
     private String message;
 }
 
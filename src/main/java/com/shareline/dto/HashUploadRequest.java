@@ -0,0 +1,14 @@
+package com.shareline.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HashUploadRequest {
+    private String sha256;
+    private Long fileSize;
+    private String originalFilename;
+}
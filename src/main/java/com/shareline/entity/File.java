@@ -13,8 +13,19 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 public class File {
+
+    public enum ProcessingStatus {
+        // Post-upload jobs outstanding; the content type may still be the generic default
+        PROCESSING,
+        READY,
+        // The content type could not be determined; the file is served as application/octet-stream
+        FAILED
+    }
+
+    // Pooled sequence rather than IDENTITY, so inserts can be batched (see V11)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "files_id_seq")
+    @SequenceGenerator(name = "files_id_seq", sequenceName = "files_id_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "filename", nullable = false)
@@ -32,6 +43,16 @@ public class File {
     @Column(name = "mime_type")
     private String mimeType;
 
+    @Column(name = "checksum", length = 64)
+    private String checksum;
+
+    @Column(name = "crc32")
+    private Long crc32;
+
+    // SHA-256 of the shared blob holding the content; null for files stored before deduplication
+    @Column(name = "blob_hash", length = 64)
+    private String blobHash;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
@@ -42,6 +63,14 @@ public class File {
     @Column(name = "share_expires_at")
     private LocalDateTime shareExpiresAt;
 
+    // Signed share links issued for an older generation are revoked (see V12)
+    @Column(name = "share_generation", nullable = false)
+    private int shareGeneration;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "processing_status", nullable = false, length = 16)
+    private ProcessingStatus processingStatus = ProcessingStatus.READY;
+
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
 
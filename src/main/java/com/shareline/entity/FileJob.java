@@ -0,0 +1,66 @@
+package com.shareline.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * One stage of post-upload processing still to be done for a file.
+ */
+@Entity
+@Table(name = "file_jobs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileJob {
+
+    public enum Stage {
+        // Content type from the stored head bytes; queues the stages below that apply
+        SNIFF,
+        RENDITIONS,
+        COMPRESSION
+    }
+
+    // Pooled sequence rather than IDENTITY, so inserts can be batched (see V11)
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "file_jobs_id_seq")
+    @SequenceGenerator(name = "file_jobs_id_seq", sequenceName = "file_jobs_id_seq", allocationSize = 50)
+    private Long id;
+
+    // Plain id rather than an association: workers never need the row loaded with the job
+    @Column(name = "file_id", nullable = false)
+    private Long fileId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "stage", nullable = false, length = 32)
+    private Stage stage;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Column(name = "run_at", nullable = false)
+    private LocalDateTime runAt;
+
+    @Column(name = "locked_until")
+    private LocalDateTime lockedUntil;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    public FileJob(Long fileId, Stage stage, LocalDateTime runAt) {
+        this.fileId = fileId;
+        this.stage = stage;
+        this.runAt = runAt;
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
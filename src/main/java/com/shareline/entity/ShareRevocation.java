@@ -0,0 +1,26 @@
+package com.shareline.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "share_revocations")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShareRevocation {
+    @Id
+    @Column(name = "file_id")
+    private Long fileId;
+
+    // Signed links for a lower generation are refused; Integer.MAX_VALUE once the file is deleted
+    @Column(name = "min_generation", nullable = false)
+    private Integer minGeneration;
+
+    @Column(name = "revoked_at", nullable = false)
+    private LocalDateTime revokedAt;
+}
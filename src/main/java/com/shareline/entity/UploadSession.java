@@ -0,0 +1,62 @@
+package com.shareline.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "upload_sessions")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSession {
+    @Id
+    @Column(name = "id", length = 36)
+    private String id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    @Column(name = "original_filename", nullable = false)
+    private String originalFilename;
+
+    // Relative staging path (.parts/ab/cd/uuid.ext, or userId/uuid.ext for older sessions) of the upload
+    @Column(name = "stored_filename", nullable = false)
+    private String storedFilename;
+
+    @Column(name = "total_size", nullable = false)
+    private Long totalSize;
+
+    @Column(name = "chunk_size", nullable = false)
+    private Integer chunkSize;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+
+    public int getTotalChunks() {
+        if (totalSize == 0) {
+            return 1;
+        }
+        return (int) ((totalSize + chunkSize - 1) / chunkSize);
+    }
+
+    public long getChunkOffset(int chunkIndex) {
+        return (long) chunkIndex * chunkSize;
+    }
+
+    public long getChunkLength(int chunkIndex) {
+        return Math.min(chunkSize, totalSize - getChunkOffset(chunkIndex));
+    }
+}
@@ -0,0 +1,75 @@
+package com.shareline.repository;
+
+import com.shareline.entity.Blob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface BlobRepository extends JpaRepository<Blob, String> {
+
+    /**
+     * Inserts the blob with one reference, or adds a reference if it already exists (filling in
+     * the CRC-32 of blobs stored before it was recorded). The row stays locked until the
+     * surrounding transaction commits.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO blobs (sha256, storage_path, size, crc32, ref_count, created_at) "
+            + "VALUES (:sha256, :storagePath, :size, :crc32, 1, CURRENT_TIMESTAMP) "
+            + "ON CONFLICT (sha256) DO UPDATE SET ref_count = blobs.ref_count + 1, "
+            + "crc32 = COALESCE(blobs.crc32, EXCLUDED.crc32)", nativeQuery = true)
+    void acquire(@Param("sha256") String sha256, @Param("storagePath") String storagePath,
+                 @Param("size") long size, @Param("crc32") long crc32);
+
+    /**
+     * Adds a reference to an existing blob that one of the user's files already points at;
+     * returns 0 if there is no such blob with that hash and size.
+     */
+    @Modifying
+    @Query(value = "UPDATE blobs SET ref_count = ref_count + 1 WHERE sha256 = :sha256 AND size = :size "
+            + "AND EXISTS (SELECT 1 FROM files WHERE blob_hash = :sha256 AND user_id = :userId)",
+            nativeQuery = true)
+    int acquireExisting(@Param("sha256") String sha256, @Param("size") long size, @Param("userId") Long userId);
+
+    @Modifying(flushAutomatically = true)
+    @Query(value = "UPDATE blobs SET ref_count = ref_count - 1 WHERE sha256 = :sha256", nativeQuery = true)
+    int release(@Param("sha256") String sha256);
+
+    /**
+     * Locks the blob row, inserting an unreferenced placeholder if there is none, so content can
+     * be checked for references and removed without racing an upload of the same hash.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO blobs (sha256, storage_path, size, crc32, ref_count, created_at) "
+            + "VALUES (:sha256, :storagePath, :size, :crc32, 0, CURRENT_TIMESTAMP) "
+            + "ON CONFLICT (sha256) DO UPDATE SET ref_count = blobs.ref_count", nativeQuery = true)
+    void lock(@Param("sha256") String sha256, @Param("storagePath") String storagePath,
+              @Param("size") long size, @Param("crc32") long crc32);
+
+    @Modifying
+    @Query(value = "DELETE FROM blobs WHERE sha256 = :sha256 AND ref_count <= 0", nativeQuery = true)
+    int deleteIfUnreferenced(@Param("sha256") String sha256);
+
+    /**
+     * Locks the blob rows in hash order, the order batch uploads take them in.
+     */
+    @Query(value = "SELECT sha256 FROM blobs WHERE sha256 IN (:hashes) ORDER BY sha256 FOR UPDATE",
+            nativeQuery = true)
+    List<String> lockAll(@Param("hashes") Collection<String> hashes);
+
+    @Modifying
+    @Query(value = "UPDATE blobs SET ref_count = ref_count - :count WHERE sha256 IN (:hashes)", nativeQuery = true)
+    int releaseAll(@Param("hashes") Collection<String> hashes, @Param("count") long count);
+
+    @Query(value = "SELECT sha256 FROM blobs WHERE sha256 IN (:hashes) AND ref_count <= 0", nativeQuery = true)
+    List<String> findUnreferenced(@Param("hashes") Collection<String> hashes);
+
+    @Modifying
+    @Query(value = "DELETE FROM blobs WHERE sha256 IN (:hashes) AND ref_count <= 0", nativeQuery = true)
+    int deleteAllUnreferenced(@Param("hashes") Collection<String> hashes);
+}
@@ -0,0 +1,34 @@
+package com.shareline.repository;
+
+import com.shareline.entity.FileJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface FileJobRepository extends JpaRepository<FileJob, Long> {
+
+    /**
+     * Locks up to {@code limit} jobs that are due and not leased by a live worker, oldest first,
+     * skipping rows another node is claiming at the same moment.
+     */
+    @Query(value = "SELECT * FROM file_jobs WHERE run_at <= :now AND (locked_until IS NULL OR locked_until < :now) "
+            + "ORDER BY run_at LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<FileJob> lockDue(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    boolean existsByFileId(Long fileId);
+
+    @Modifying
+    @Query("DELETE FROM FileJob j WHERE j.id = :id")
+    int deleteJob(@Param("id") Long id);
+
+    // Same predicate as lockDue: jobs a worker holds a live lease on are in progress, not queued
+    @Query(value = "SELECT COUNT(*) FROM file_jobs WHERE run_at <= :now "
+            + "AND (locked_until IS NULL OR locked_until < :now)", nativeQuery = true)
+    long countDue(@Param("now") LocalDateTime now);
+}
@@ -1,17 +1,116 @@
 package com.shareline.repository;
 
+import com.shareline.dto.FileStats;
 import com.shareline.entity.File;
 import com.shareline.entity.User;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface FileRepository extends JpaRepository<File, Long> {
-    List<File> findByUserOrderByCreatedAtDesc(User user);
     Optional<File> findByShareToken(String shareToken);
     boolean existsByUserAndId(User user, Long id);
-}
+    List<File> findByUserAndIdIn(User user, Collection<Long> ids);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT f FROM File f WHERE f.id = :id")
+    Optional<File> findByIdForUpdate(@Param("id") Long id);
+
+    // Files stored before deduplication, in id order, over idx_files_legacy
+    @Query(value = "SELECT id FROM files WHERE blob_hash IS NULL AND id > :afterId ORDER BY id LIMIT :limit",
+            nativeQuery = true)
+    List<Long> findLegacyIdsAfter(@Param("afterId") Long afterId, @Param("limit") int limit);
+
+    // Keyset pagination over idx_files_user_created_id, newest first
+    @Query(value = "SELECT id, filename, original_filename AS \"originalFilename\", file_size AS \"fileSize\", "
+            + "mime_type AS \"mimeType\", share_token AS \"shareToken\", "
+            + "share_expires_at AS \"shareExpiresAt\", created_at AS \"createdAt\", "
+            + "processing_status AS \"processingStatus\" "
+            + "FROM files WHERE user_id = :userId "
+            + "ORDER BY created_at DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<FileSummary> findFirstPage(@Param("userId") Long userId, @Param("limit") int limit);
+
+    @Query(value = "SELECT id, filename, original_filename AS \"originalFilename\", file_size AS \"fileSize\", "
+            + "mime_type AS \"mimeType\", share_token AS \"shareToken\", "
+            + "share_expires_at AS \"shareExpiresAt\", created_at AS \"createdAt\", "
+            + "processing_status AS \"processingStatus\" "
+            + "FROM files WHERE user_id = :userId AND (created_at, id) < (:createdAt, :id) "
+            + "ORDER BY created_at DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<FileSummary> findPageAfter(@Param("userId") Long userId,
+                                    @Param("createdAt") LocalDateTime createdAt,
+                                    @Param("id") Long id,
+                                    @Param("limit") int limit);
+
+    /**
+     * Clears up to {@code batchSize} expired shares, skipping rows locked by another node's sweep.
+     */
+    @Modifying
+    @Query(value = "UPDATE files SET share_token = NULL, share_expires_at = NULL WHERE id IN ("
+            + "SELECT id FROM files WHERE share_token IS NOT NULL AND share_expires_at IS NOT NULL "
+            + "AND share_expires_at < :now ORDER BY share_expires_at LIMIT :batchSize "
+            + "FOR UPDATE SKIP LOCKED)", nativeQuery = true)
+    int clearExpiredShares(@Param("now") LocalDateTime now, @Param("batchSize") int batchSize);
 
+    /**
+     * The user's files among {@code ids}, locked in id order so overlapping bulk operations queue
+     * up instead of deadlocking.
+     */
+    @Query(value = "SELECT id, filename, file_size AS \"fileSize\", blob_hash AS \"blobHash\", "
+            + "share_token AS \"shareToken\", share_generation AS \"shareGeneration\" "
+            + "FROM files WHERE user_id = :userId AND id IN (:ids) "
+            + "ORDER BY id FOR UPDATE", nativeQuery = true)
+    List<OwnedFile> lockOwned(@Param("userId") Long userId, @Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query(value = "DELETE FROM files WHERE id IN (:ids)", nativeQuery = true)
+    int deleteAllByIds(@Param("ids") Collection<Long> ids);
+
+    // What the bulk share updates return, see ShareChange
+    String SHARE_CHANGE_COLUMNS = "RETURNING f.id, prev.share_token AS \"previousToken\", "
+            + "prev.share_generation AS \"previousGeneration\", f.share_token AS \"shareToken\", "
+            + "f.share_expires_at AS \"shareExpiresAt\", f.share_generation AS \"shareGeneration\", f.filename, "
+            + "f.original_filename AS \"originalFilename\", f.file_size AS \"fileSize\", f.mime_type AS \"mimeType\", "
+            + "f.checksum, f.crc32, f.blob_hash AS \"blobHash\", f.processing_status AS \"processingStatus\", "
+            + "f.created_at AS \"createdAt\"";
+
+    /**
+     * Gives each of the user's files among {@code ids} a fresh share token (same form as
+     * {@link java.util.UUID#toString()}) and the expiry, in one statement. The share generation
+     * moves on if signed links are being issued or were before. Bypasses the persistence context,
+     * so callers clear it afterwards.
+     */
+    @Query(value = "UPDATE files f SET share_token = CAST(gen_random_uuid() AS text), share_expires_at = :expiresAt, "
+            + "share_generation = CASE WHEN :signed OR prev.share_generation > 0 THEN prev.share_generation + 1 "
+            + "ELSE 0 END "
+            + "FROM (SELECT id, share_token, share_generation FROM files WHERE user_id = :userId AND id IN (:ids) "
+            + "ORDER BY id FOR UPDATE) prev WHERE f.id = prev.id "
+            + SHARE_CHANGE_COLUMNS, nativeQuery = true)
+    List<ShareChange> shareAll(@Param("userId") Long userId, @Param("ids") Collection<Long> ids,
+                               @Param("expiresAt") LocalDateTime expiresAt, @Param("signed") boolean signed);
+
+    /**
+     * Removes the share links of the user's files among {@code ids}, in one statement.
+     */
+    @Query(value = "UPDATE files f SET share_token = NULL, share_expires_at = NULL, "
+            + "share_generation = CASE WHEN prev.share_generation > 0 THEN prev.share_generation + 1 ELSE 0 END "
+            + "FROM (SELECT id, share_token, share_generation FROM files WHERE user_id = :userId AND id IN (:ids) "
+            + "ORDER BY id FOR UPDATE) prev WHERE f.id = prev.id "
+            + SHARE_CHANGE_COLUMNS, nativeQuery = true)
+    List<ShareChange> revokeAll(@Param("userId") Long userId, @Param("ids") Collection<Long> ids);
+
+    @Query("SELECT new com.shareline.dto.FileStats(COUNT(f), COALESCE(SUM(f.fileSize), 0), "
+            + "COALESCE(SUM(CASE WHEN f.shareToken IS NOT NULL "
+            + "AND (f.shareExpiresAt IS NULL OR f.shareExpiresAt > :now) THEN 1 ELSE 0 END), 0)) "
+            + "FROM File f WHERE f.user.id = :userId")
+    FileStats getStats(@Param("userId") Long userId, @Param("now") LocalDateTime now);
+}
@@ -0,0 +1,19 @@
+package com.shareline.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Listing projection of a file row; read straight from the query result without hydrating a
+ * {@link com.shareline.entity.File} entity.
+ */
+public interface FileSummary {
+    Long getId();
+    String getFilename();
+    String getOriginalFilename();
+    Long getFileSize();
+    String getMimeType();
+    String getShareToken();
+    LocalDateTime getShareExpiresAt();
+    LocalDateTime getCreatedAt();
+    String getProcessingStatus();
+}
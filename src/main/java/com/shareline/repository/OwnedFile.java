@@ -0,0 +1,14 @@
+package com.shareline.repository;
+
+/**
+ * What a bulk delete needs of each file row it removes: its size for the quota, and where its
+ * content lives.
+ */
+public interface OwnedFile {
+    Long getId();
+    String getFilename();
+    Long getFileSize();
+    String getBlobHash();
+    String getShareToken();
+    Integer getShareGeneration();
+}
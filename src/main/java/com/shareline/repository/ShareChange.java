@@ -0,0 +1,25 @@
+package com.shareline.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * A file's share link before and after a bulk share or revoke, as returned by the update itself,
+ * with what a signed link for it needs.
+ */
+public interface ShareChange {
+    Long getId();
+    String getPreviousToken();
+    Integer getPreviousGeneration();
+    String getShareToken();
+    LocalDateTime getShareExpiresAt();
+    Integer getShareGeneration();
+    String getFilename();
+    String getOriginalFilename();
+    Long getFileSize();
+    String getMimeType();
+    String getChecksum();
+    Long getCrc32();
+    String getBlobHash();
+    String getProcessingStatus();
+    LocalDateTime getCreatedAt();
+}
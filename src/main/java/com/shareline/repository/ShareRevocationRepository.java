@@ -0,0 +1,57 @@
+package com.shareline.repository;
+
+import com.shareline.entity.ShareRevocation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ShareRevocationRepository extends JpaRepository<ShareRevocation, Long> {
+
+    /**
+     * Refuses signed links of the file issued for a generation below {@code minGeneration}. The
+     * entry only ever gets stricter, and its revoked_at is taken at statement time, so nodes
+     * polling for recent entries see it.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO share_revocations (file_id, min_generation, revoked_at) "
+            + "VALUES (:fileId, :minGeneration, CAST(clock_timestamp() AS timestamp)) "
+            + "ON CONFLICT (file_id) DO UPDATE SET "
+            + "min_generation = GREATEST(share_revocations.min_generation, EXCLUDED.min_generation), "
+            + "revoked_at = EXCLUDED.revoked_at", nativeQuery = true)
+    int revoke(@Param("fileId") Long fileId, @Param("minGeneration") int minGeneration);
+
+    /**
+     * {@link #revoke} for many files, each up to the share generation its row now has.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO share_revocations (file_id, min_generation, revoked_at) "
+            + "SELECT id, share_generation, CAST(clock_timestamp() AS timestamp) FROM files WHERE id IN (:fileIds) "
+            + "ON CONFLICT (file_id) DO UPDATE SET "
+            + "min_generation = GREATEST(share_revocations.min_generation, EXCLUDED.min_generation), "
+            + "revoked_at = EXCLUDED.revoked_at", nativeQuery = true)
+    int revokeOlderGenerations(@Param("fileIds") Collection<Long> fileIds);
+
+    /**
+     * Refuses every signed link of the given files, for good; run before their rows are deleted.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO share_revocations (file_id, min_generation, revoked_at) "
+            + "SELECT id, 2147483647, CAST(clock_timestamp() AS timestamp) FROM files WHERE id IN (:fileIds) "
+            + "ON CONFLICT (file_id) DO UPDATE SET min_generation = EXCLUDED.min_generation, "
+            + "revoked_at = EXCLUDED.revoked_at", nativeQuery = true)
+    int revokeAllGenerations(@Param("fileIds") Collection<Long> fileIds);
+
+    @Query("SELECT r FROM ShareRevocation r WHERE r.revokedAt > :since")
+    List<ShareRevocation> findRevokedSince(@Param("since") LocalDateTime since);
+
+    @Modifying
+    @Query("DELETE FROM ShareRevocation r WHERE r.revokedAt < :cutoff")
+    int deleteRevokedBefore(@Param("cutoff") LocalDateTime cutoff);
+}
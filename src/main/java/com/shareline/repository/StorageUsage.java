@@ -0,0 +1,10 @@
+package com.shareline.repository;
+
+/**
+ * A user's storage usage and effective quota in bytes, read from the users row. A quota of 0 or
+ * less means unlimited.
+ */
+public interface StorageUsage {
+    long getUsed();
+    long getQuota();
+}
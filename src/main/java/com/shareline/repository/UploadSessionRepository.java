@@ -0,0 +1,28 @@
+package com.shareline.repository;
+
+import com.shareline.entity.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+
+    List<UploadSession> findByExpiresAtBefore(LocalDateTime cutoff);
+
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO upload_chunks (session_id, chunk_index) VALUES (:sessionId, :chunkIndex) "
+            + "ON CONFLICT DO NOTHING", nativeQuery = true)
+    void markChunkReceived(@Param("sessionId") String sessionId, @Param("chunkIndex") int chunkIndex);
+
+    @Query(value = "SELECT chunk_index FROM upload_chunks WHERE session_id = :sessionId ORDER BY chunk_index",
+            nativeQuery = true)
+    List<Integer> findReceivedChunks(@Param("sessionId") String sessionId);
+}
@@ -2,13 +2,59 @@ package com.shareline.repository;
 
 import com.shareline.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByGoogleId(String googleId);
     Optional<User> findByEmail(String email);
-}
 
+    // storage_used / storage_quota are not mapped on User, so a saved entity never overwrites them
+    @Query(value = "SELECT storage_used AS used, COALESCE(storage_quota, :defaultQuota) AS quota "
+            + "FROM users WHERE id = :userId", nativeQuery = true)
+    Optional<StorageUsage> findStorageUsage(@Param("userId") Long userId, @Param("defaultQuota") long defaultQuota);
+
+    /**
+     * Adds {@code bytes} to the user's usage if that keeps it within quota, in one statement.
+     *
+     * @return 1 if the bytes were added, 0 if they would exceed the quota
+     */
+    @Modifying
+    @Query(value = "UPDATE users SET storage_used = storage_used + :bytes WHERE id = :userId "
+            + "AND (COALESCE(storage_quota, :defaultQuota) <= 0 "
+            + "OR storage_used + :bytes <= COALESCE(storage_quota, :defaultQuota))", nativeQuery = true)
+    int reserveStorage(@Param("userId") Long userId, @Param("bytes") long bytes,
+                       @Param("defaultQuota") long defaultQuota);
+
+    @Modifying
+    @Query(value = "UPDATE users SET storage_used = GREATEST(storage_used - :bytes, 0) WHERE id = :userId",
+            nativeQuery = true)
+    int releaseStorage(@Param("userId") Long userId, @Param("bytes") long bytes);
+
+    /**
+     * Locks the next {@code limit} users after {@code afterId}, so uploads and deletes for them
+     * wait until their usage has been recomputed.
+     */
+    @Query(value = "SELECT id FROM users WHERE id > :afterId ORDER BY id LIMIT :limit FOR UPDATE",
+            nativeQuery = true)
+    List<Long> lockIdsAfter(@Param("afterId") Long afterId, @Param("limit") int limit);
+
+    /**
+     * Resets the usage of the given (locked) users to the sum of their files' sizes.
+     *
+     * @return the number of users whose counter had drifted
+     */
+    @Modifying
+    @Query(value = "UPDATE users u SET storage_used = s.total FROM ("
+            + "SELECT u2.id, COALESCE(SUM(f.file_size), 0) AS total FROM users u2 "
+            + "LEFT JOIN files f ON f.user_id = u2.id WHERE u2.id IN (:ids) GROUP BY u2.id) s "
+            + "WHERE u.id = s.id AND u.storage_used <> s.total", nativeQuery = true)
+    int reconcileStorageUsed(@Param("ids") Collection<Long> ids);
+}
@@ -0,0 +1,134 @@
+package com.shareline.service;
+
+import com.shareline.dto.FileUploadResponse;
+import com.shareline.entity.File;
+import com.shareline.entity.User;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Many files in one request, for clients that would otherwise send a queue of small uploads one
+ * POST and one transaction at a time:
+ * <ul>
+ *     <li>Parts are staged, hashed and moved into the blob store in parallel, on a pool shared by
+ *     all batch requests on the node</li>
+ *     <li>All rows are then written in one transaction with batched inserts, see
+ *     {@link FileService#savePendingUploads}</li>
+ * </ul>
+ * A batch is all or nothing: if any part fails, nothing is saved and whatever was staged is removed.
+ */
+@Service
+public class BatchUploadService {
+
+    private final FileService fileService;
+    private final FileStorageService fileStorageService;
+    private final QuotaService quotaService;
+    private final StageObservations stages;
+    private final int maxFiles;
+    private final ExecutorService executor;
+
+    public BatchUploadService(
+            FileService fileService,
+            FileStorageService fileStorageService,
+            QuotaService quotaService,
+            StageObservations stages,
+            @Value("${shareline.upload.batch.max-files:1000}") int maxFiles,
+            @Value("${shareline.upload.batch.workers:8}") int workers) {
+        this.fileService = fileService;
+        this.fileStorageService = fileStorageService;
+        this.quotaService = quotaService;
+        this.stages = stages;
+        this.maxFiles = maxFiles;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, workers), task -> {
+            Thread thread = new Thread(task, "batch-upload-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Not transactional: no connection is held while the parts are stored
+    public List<FileUploadResponse> uploadFiles(List<MultipartFile> parts, User user) throws IOException {
+        if (parts == null || parts.isEmpty()) {
+            throw new IllegalArgumentException("No files selected");
+        }
+        if (parts.size() > maxFiles) {
+            throw new IllegalArgumentException("At most " + maxFiles + " files can be uploaded at once");
+        }
+        long totalSize = 0;
+        for (MultipartFile part : parts) {
+            fileService.requireFilename(part.getOriginalFilename());
+            totalSize += part.getSize();
+        }
+        quotaService.checkAvailable(user, totalSize);
+
+        List<PendingUpload> pending = stages.observe("upload.store", () -> stageAll(parts));
+        List<File> saved = fileService.savePendingUploads(pending, user);
+        return saved.stream().map(fileService::toUploadResponse).toList();
+    }
+
+    private List<PendingUpload> stageAll(List<MultipartFile> parts) throws IOException {
+        List<Future<PendingUpload>> futures = new ArrayList<>(parts.size());
+        for (MultipartFile part : parts) {
+            futures.add(executor.submit(() -> stage(part)));
+        }
+
+        // Every part is waited for, so nothing is still being staged when a failure is cleaned up
+        List<PendingUpload> staged = new ArrayList<>(parts.size());
+        Exception failure = null;
+        for (Future<PendingUpload> future : futures) {
+            try {
+                staged.add(future.get());
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof Exception cause ? cause : new IOException(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                if (failure == null) {
+                    failure = new InterruptedIOException("Interrupted while staging a batch upload");
+                }
+            }
+        }
+        if (failure == null) {
+            return staged;
+        }
+        fileService.discardPending(staged, failure);
+        if (failure instanceof IOException io) {
+            throw io;
+        }
+        throw (RuntimeException) failure;
+    }
+
+    private PendingUpload stage(MultipartFile part) throws IOException {
+        StoredFile stored;
+        try (InputStream in = part.getInputStream()) {
+            stored = fileStorageService.storeStream(in);
+        }
+        try {
+            return fileService.promote(stored, part.getOriginalFilename());
+        } catch (IOException | RuntimeException e) {
+            fileStorageService.discard(stored);
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
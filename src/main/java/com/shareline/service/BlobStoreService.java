@@ -0,0 +1,135 @@
+package com.shareline.service;
+
+import com.shareline.entity.Blob;
+import com.shareline.repository.BlobRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Reference-counted, content-addressed storage. Every upload is keyed by its SHA-256, so
+ * identical content from any user is stored once and shared by all the files that point at it.
+ * <p>
+ * The blob row is locked (by the upsert or the decrement) before its object in storage is created
+ * or removed, so an upload and the deletion of the last reference to the same content serialize.
+ * Uploads {@link #promote} their bytes before that transaction, so no database connection is held
+ * while they are copied; {@link #acquire} then only has to check they are still there.
+ */
+@Service
+public class BlobStoreService {
+
+    private final BlobRepository blobRepository;
+    private final FileStorageService fileStorageService;
+
+    public BlobStoreService(BlobRepository blobRepository, FileStorageService fileStorageService) {
+        this.blobRepository = blobRepository;
+        this.fileStorageService = fileStorageService;
+    }
+
+    /**
+     * Moves freshly stored bytes to their content address ahead of the transaction that references
+     * them. Bytes already there are left for {@link #acquire} to drop.
+     *
+     * @return true if this call created the blob's object, which the caller has to
+     * {@link #discardIfUnreferenced} if its transaction then fails
+     */
+    public boolean promote(StoredFile stored) throws IOException {
+        return fileStorageService.promoteToBlob(stored);
+    }
+
+    /**
+     * Takes a reference on the blob for the stored bytes, moving them into the blob store if this
+     * is the first copy and they weren't promoted already.
+     *
+     * @return the blob's relative path
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public String acquire(StoredFile stored) throws IOException {
+        String blobKey = fileStorageService.blobKey(stored.sha256());
+        blobRepository.acquire(stored.sha256(), blobKey, stored.size(), stored.crc32());
+        return fileStorageService.moveToBlob(stored);
+    }
+
+    /**
+     * Hash-first upload: takes a reference on content the server already holds, without any bytes
+     * being sent. Only content the user already has a file of qualifies: a digest is no proof of
+     * holding the bytes (it is the download ETag, for one), so anyone else's content has to be
+     * uploaded in full, even though it is then still stored once.
+     *
+     * @return true if the blob exists, the user references it and a reference was taken
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public boolean acquireExisting(String sha256, long size, Long userId) throws IOException {
+        if (blobRepository.acquireExisting(sha256, size, userId) == 0) {
+            return false;
+        }
+        if (!fileStorageService.blobExists(sha256)) {
+            blobRepository.release(sha256);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * CRC-32 recorded for the blob, or null if it predates CRC tracking.
+     */
+    public Long crc32(String sha256) {
+        return blobRepository.findById(sha256).map(Blob::getCrc32).orElse(null);
+    }
+
+    /**
+     * Removes an object created by {@link #promote} when the upload that created it failed, unless
+     * another upload has taken a reference to the same content in the meantime.
+     */
+    @Transactional
+    public void discardIfUnreferenced(StoredFile stored) throws IOException {
+        String blobKey = fileStorageService.blobKey(stored.sha256());
+        blobRepository.lock(stored.sha256(), blobKey, stored.size(), stored.crc32());
+        if (blobRepository.deleteIfUnreferenced(stored.sha256()) == 1) {
+            fileStorageService.deleteFile(blobKey);
+        }
+    }
+
+    /**
+     * Drops one reference, deleting the blob, its bytes and anything derived from them when the
+     * last reference goes away.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void release(String sha256) throws IOException {
+        blobRepository.release(sha256);
+        if (blobRepository.deleteIfUnreferenced(sha256) == 1) {
+            fileStorageService.deleteFile(fileStorageService.blobKey(sha256));
+            fileStorageService.deleteDerived(sha256);
+        }
+    }
+
+    /**
+     * {@link #release} for many files at once, after their rows are deleted: locks the blobs in
+     * hash order, drops as many references from each as files pointed at it (one update per
+     * distinct count, so usually one) and deletes the rows of blobs left unreferenced.
+     *
+     * @return hashes of the blobs deleted; the caller removes their bytes and derived files before
+     * the transaction ends, while the deletes still hold the row locks
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<String> releaseAll(Map<String, Long> referencesByHash) {
+        if (referencesByHash.isEmpty()) {
+            return List.of();
+        }
+        blobRepository.lockAll(referencesByHash.keySet());
+        referencesByHash.entrySet().stream()
+                .collect(Collectors.groupingBy(Map.Entry::getValue,
+                        Collectors.mapping(Map.Entry::getKey, Collectors.toList())))
+                .forEach((count, hashes) -> blobRepository.releaseAll(hashes, count));
+        List<String> unreferenced = blobRepository.findUnreferenced(referencesByHash.keySet());
+        if (!unreferenced.isEmpty()) {
+            blobRepository.deleteAllUnreferenced(unreferenced);
+        }
+        return unreferenced;
+    }
+}
@@ -0,0 +1,266 @@
+package com.shareline.service;
+
+import com.shareline.dto.BulkItemResult;
+import com.shareline.dto.BulkItemResult.Status;
+import com.shareline.dto.BulkResult;
+import com.shareline.entity.File;
+import com.shareline.entity.User;
+import com.shareline.repository.FileRepository;
+import com.shareline.repository.OwnedFile;
+import com.shareline.repository.ShareChange;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Delete, share and revoke for many of a user's files in one call, with a constant number of
+ * statements however many ids are given:
+ * <ul>
+ *     <li>Ownership of the whole set is checked by the same statement that locks or updates the
+ *     rows (in id order); ids that are unknown or not the user's are reported, not fatal</li>
+ *     <li>Deletes release the quota with one update and blob references with one update per
+ *     distinct reference count, then remove the bytes of blobs left unreferenced in parallel, before
+ *     commit and under the blob row locks like {@link BlobStoreService#release}</li>
+ * </ul>
+ * Every call answers with a result per distinct id, in the order requested.
+ */
+@Service
+public class BulkFileService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkFileService.class);
+
+    private final FileRepository fileRepository;
+    private final BlobStoreService blobStoreService;
+    private final FileStorageService fileStorageService;
+    private final QuotaService quotaService;
+    private final ShareTokenCache shareTokenCache;
+    private final ShareLinkSigner shareLinkSigner;
+    private final ShareRevocationList shareRevocationList;
+    private final EntityManager entityManager;
+    private final int maxIds;
+    private final ExecutorService executor;
+
+    public BulkFileService(
+            FileRepository fileRepository,
+            BlobStoreService blobStoreService,
+            FileStorageService fileStorageService,
+            QuotaService quotaService,
+            ShareTokenCache shareTokenCache,
+            ShareLinkSigner shareLinkSigner,
+            ShareRevocationList shareRevocationList,
+            EntityManager entityManager,
+            @Value("${shareline.bulk.max-ids:5000}") int maxIds,
+            @Value("${shareline.bulk.storage-workers:8}") int storageWorkers) {
+        this.fileRepository = fileRepository;
+        this.blobStoreService = blobStoreService;
+        this.fileStorageService = fileStorageService;
+        this.quotaService = quotaService;
+        this.shareTokenCache = shareTokenCache;
+        this.shareLinkSigner = shareLinkSigner;
+        this.shareRevocationList = shareRevocationList;
+        this.entityManager = entityManager;
+        this.maxIds = maxIds;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, storageWorkers), task -> {
+            Thread thread = new Thread(task, "bulk-storage-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Transactional
+    public BulkResult deleteFiles(List<Long> ids, User user) {
+        Set<Long> requested = distinctIds(ids);
+        List<OwnedFile> owned = fileRepository.lockOwned(user.getId(), requested);
+        if (owned.isEmpty()) {
+            return results(requested, Map.of(), id -> null);
+        }
+
+        List<Long> ownedIds = owned.stream().map(OwnedFile::getId).toList();
+        Map<String, Long> referencesByHash = owned.stream().map(OwnedFile::getBlobHash).filter(Objects::nonNull)
+                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+        shareRevocationList.revokeDeleted(owned.stream().filter(file -> file.getShareGeneration() > 0)
+                .map(OwnedFile::getId).toList());
+        fileRepository.deleteAllByIds(ownedIds);
+        // Users row before blob rows, the order uploads take them in
+        quotaService.release(user.getId(), owned.stream().mapToLong(OwnedFile::getFileSize).sum());
+        List<String> unreferenced = blobStoreService.releaseAll(referencesByHash);
+        shareTokenCache.invalidateAll(owned.stream().map(OwnedFile::getShareToken).toList());
+
+        List<Callable<Void>> removals = new ArrayList<>();
+        for (String sha256 : unreferenced) {
+            removals.add(() -> {
+                fileStorageService.deleteFile(fileStorageService.blobKey(sha256));
+                fileStorageService.deleteDerived(sha256);
+                return null;
+            });
+        }
+        for (OwnedFile file : owned) {
+            if (file.getBlobHash() == null) {
+                // Stored before deduplication, so not shared with anything
+                removals.add(() -> {
+                    fileStorageService.deleteFile(file.getFilename());
+                    return null;
+                });
+            }
+        }
+        removeInParallel(removals);
+
+        Map<Long, OwnedFile> byId = owned.stream().collect(Collectors.toMap(OwnedFile::getId, Function.identity()));
+        return results(requested, byId, id -> BulkItemResult.of(id, Status.DELETED));
+    }
+
+    /**
+     * Gives every file a new share link, replacing any existing one, like
+     * {@link ShareService#createShareToken} does for one file.
+     */
+    @Transactional
+    public BulkResult shareFiles(List<Long> ids, User user, Integer expirationDays) {
+        Set<Long> requested = distinctIds(ids);
+        LocalDateTime expiresAt = expirationDays != null && expirationDays > 0
+                ? LocalDateTime.now().plusDays(expirationDays)
+                : null;
+        List<ShareChange> changes = bypassingPersistenceContext(() -> fileRepository.shareAll(user.getId(),
+                requested, expiresAt, shareLinkSigner.isEnabled()));
+        return shareResults(requested, changes, Status.SHARED);
+    }
+
+    @Transactional
+    public BulkResult revokeShares(List<Long> ids, User user) {
+        Set<Long> requested = distinctIds(ids);
+        List<ShareChange> changes = bypassingPersistenceContext(() -> fileRepository.revokeAll(user.getId(),
+                requested));
+        return shareResults(requested, changes, Status.REVOKED);
+    }
+
+    /**
+     * Runs a bulk {@code UPDATE ... RETURNING}, which can't be {@code @Modifying} as it returns rows:
+     * pending changes are flushed first and the persistence context is cleared after, so later reads
+     * in the transaction don't see the files as they were.
+     */
+    private List<ShareChange> bypassingPersistenceContext(Supplier<List<ShareChange>> update) {
+        entityManager.flush();
+        List<ShareChange> changes = update.get();
+        entityManager.clear();
+        return changes;
+    }
+
+    private BulkResult shareResults(Set<Long> requested, List<ShareChange> changes, Status status) {
+        List<String> stale = new ArrayList<>(changes.size() * 2);
+        for (ShareChange change : changes) {
+            stale.add(change.getPreviousToken());
+            stale.add(change.getShareToken());
+        }
+        shareTokenCache.invalidateAll(stale);
+        // Files that had signed links: those issued for an older generation stop working
+        shareRevocationList.revokeSuperseded(changes.stream().filter(change -> change.getPreviousGeneration() > 0)
+                .collect(Collectors.toMap(ShareChange::getId, ShareChange::getShareGeneration)));
+
+        Map<Long, ShareChange> byId = changes.stream().collect(Collectors.toMap(ShareChange::getId, Function.identity()));
+        return results(requested, byId, id -> {
+            ShareChange change = byId.get(id);
+            File file = toFile(change);
+            if (status == Status.SHARED && shareLinkSigner.canSign(file)) {
+                return new BulkItemResult(id, status, shareLinkSigner.sign(file), null,
+                        shareLinkSigner.expiryFor(change.getShareExpiresAt()));
+            }
+            return new BulkItemResult(id, status, change.getShareToken(), null, change.getShareExpiresAt());
+        });
+    }
+
+    private static File toFile(ShareChange change) {
+        File file = new File();
+        file.setId(change.getId());
+        file.setFilename(change.getFilename());
+        file.setOriginalFilename(change.getOriginalFilename());
+        file.setFileSize(change.getFileSize());
+        file.setMimeType(change.getMimeType());
+        file.setChecksum(change.getChecksum());
+        file.setCrc32(change.getCrc32());
+        file.setBlobHash(change.getBlobHash());
+        file.setShareExpiresAt(change.getShareExpiresAt());
+        file.setShareGeneration(change.getShareGeneration());
+        file.setProcessingStatus(File.ProcessingStatus.valueOf(change.getProcessingStatus()));
+        file.setCreatedAt(change.getCreatedAt());
+        return file;
+    }
+
+    private Set<Long> distinctIds(List<Long> ids) {
+        Set<Long> distinct = ids == null ? Set.of() : ids.stream().filter(Objects::nonNull)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        if (distinct.isEmpty()) {
+            throw new IllegalArgumentException("No files selected");
+        }
+        if (distinct.size() > maxIds) {
+            throw new IllegalArgumentException("At most " + maxIds + " files can be changed at once");
+        }
+        return distinct;
+    }
+
+    private static BulkResult results(Set<Long> requested, Map<Long, ?> found, Function<Long, BulkItemResult> result) {
+        List<BulkItemResult> results = new ArrayList<>(requested.size());
+        for (Long id : requested) {
+            results.add(found.containsKey(id) ? result.apply(id) : BulkItemResult.of(id, Status.NOT_FOUND));
+        }
+        return BulkResult.of(results);
+    }
+
+    /**
+     * Runs the removals on the storage pool and waits for all of them. A failure only leaves
+     * unreferenced bytes behind, so it is logged rather than undoing the delete.
+     */
+    private void removeInParallel(List<Callable<Void>> removals) {
+        if (removals.isEmpty()) {
+            return;
+        }
+        List<Future<Void>> futures;
+        try {
+            futures = executor.invokeAll(removals);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while removing deleted files from storage", e);
+        }
+        int failed = 0;
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (failed++ == 0) {
+                    logger.warn("Could not remove deleted content from storage: {}", e.getCause().toString());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while removing deleted files from storage", e);
+            }
+        }
+        if (failed > 1) {
+            logger.warn("{} of {} storage removals failed", failed, removals.size());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
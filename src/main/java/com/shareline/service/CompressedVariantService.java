@@ -0,0 +1,311 @@
+package com.shareline.service;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import com.shareline.entity.File;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compressed variants of text-like content for {@code Content-Encoding} negotiation. Each variant
+ * is produced once, at the strongest practical level, by a background worker and kept with the
+ * other derived artifacts (derived/ab/cd/&lt;sha256&gt;/content.zst, content.gz), so later
+ * downloads send the stored bytes with no compression work at all. Until then responses are
+ * compressed on the fly at a fast level.
+ * <p>
+ * Content whose type is already compressed ({@link CompressibleTypes}) is never touched, and
+ * content that doesn't shrink by at least {@code MIN_SAVING} is marked so it is served as is.
+ */
+@Service
+public class CompressedVariantService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompressedVariantService.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Below this a compressed response saves less than the headers cost
+    private static final long MIN_SIZE = 1024;
+    // A variant has to be at least 10% smaller than the original to be worth serving
+    private static final double MIN_SAVING = 0.10;
+    private static final String NO_GAIN_MARKER = "content.identity";
+    private static final int ON_THE_FLY_ZSTD_LEVEL = 3;
+    // Level 19 keeps the window at 8MB, the most browsers accept for zstd
+    private static final int MAX_ZSTD_LEVEL = 19;
+
+    public enum Coding {
+        // Preferred first when the client weighs them equally
+        ZSTD("zstd", "content.zst"),
+        GZIP("gzip", "content.gz");
+
+        private final String token;
+        private final String fileName;
+
+        Coding(String token, String fileName) {
+            this.token = token;
+            this.fileName = fileName;
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        // Left in place of a variant that wasn't worth keeping, so it isn't produced again
+        private String skipMarker() {
+            return fileName + ".skip";
+        }
+
+        /**
+         * Picks the coding with the highest q-value in an Accept-Encoding header, or null if the
+         * client accepts none of them.
+         */
+        public static Coding negotiate(String acceptEncoding) {
+            if (acceptEncoding == null || acceptEncoding.isBlank()) {
+                return null;
+            }
+            Coding best = null;
+            double bestQuality = 0;
+            double wildcardQuality = -1;
+            double[] qualities = new double[values().length];
+            Arrays.fill(qualities, -1);
+            for (String part : acceptEncoding.split(",")) {
+                String[] params = part.trim().split(";");
+                String name = params[0].trim().toLowerCase(Locale.ROOT);
+                double quality = 1;
+                for (int i = 1; i < params.length; i++) {
+                    String param = params[i].trim();
+                    if (param.startsWith("q=")) {
+                        try {
+                            quality = Double.parseDouble(param.substring(2));
+                        } catch (NumberFormatException e) {
+                            quality = 0;
+                        }
+                    }
+                }
+                if (name.equals("*")) {
+                    wildcardQuality = quality;
+                }
+                for (Coding coding : values()) {
+                    if (coding.token.equals(name) || (coding == GZIP && name.equals("x-gzip"))) {
+                        qualities[coding.ordinal()] = quality;
+                    }
+                }
+            }
+            for (Coding coding : values()) {
+                double quality = qualities[coding.ordinal()] >= 0 ? qualities[coding.ordinal()] : wildcardQuality;
+                if (quality > bestQuality) {
+                    best = coding;
+                    bestQuality = quality;
+                }
+            }
+            return best;
+        }
+    }
+
+    private final FileStorageService fileStorageService;
+    private final long maxVariantSourceSize;
+    private final int gzipLevel;
+    private final int zstdLevel;
+    private final ThreadPoolExecutor executor;
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    public CompressedVariantService(
+            FileStorageService fileStorageService,
+            @Value("${shareline.compression.workers:1}") int workers,
+            @Value("${shareline.compression.queue-capacity:64}") int queueCapacity,
+            @Value("${shareline.compression.max-variant-source-size:67108864}") long maxVariantSourceSize,
+            @Value("${shareline.compression.gzip-level:9}") int gzipLevel,
+            @Value("${shareline.compression.zstd-level:19}") int zstdLevel) {
+        this.fileStorageService = fileStorageService;
+        this.maxVariantSourceSize = maxVariantSourceSize;
+        this.gzipLevel = gzipLevel;
+        this.zstdLevel = Math.min(zstdLevel, MAX_ZSTD_LEVEL);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                task -> {
+                    Thread thread = new Thread(task, "compress-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                });
+    }
+
+    /**
+     * True if responses for this file should be negotiated at all.
+     */
+    public boolean isCompressible(File file) {
+        return file.getChecksum() != null
+                && file.getFileSize() >= MIN_SIZE
+                && CompressibleTypes.isCompressible(file.getMimeType())
+                && !Files.exists(derivedPath(file.getChecksum(), NO_GAIN_MARKER));
+    }
+
+    /**
+     * The stored variant for the coding, or null if it hasn't been produced yet, in which case
+     * production is queued.
+     */
+    public Path getVariant(File file, Coding coding) {
+        Path variant = derivedPath(file.getChecksum(), coding.fileName);
+        if (Files.exists(variant)) {
+            return variant;
+        }
+        if (!Files.exists(derivedPath(file.getChecksum(), coding.skipMarker()))) {
+            submit(file);
+        }
+        return null;
+    }
+
+    /**
+     * Produces the variants of a file on the calling thread, for the post-upload job queue.
+     * Failures are thrown so the job can be retried.
+     */
+    public void produceNow(File file) throws IOException {
+        if (!isCompressible(file) || file.getFileSize() > maxVariantSourceSize) {
+            return;
+        }
+        writeAllVariants(file.getChecksum(), file.getFilename(), file.getFileSize());
+    }
+
+    /**
+     * Wraps a response stream for on-the-fly compression at a fast level. Closing the returned
+     * stream finishes the encoding and closes {@code out}.
+     */
+    public OutputStream encode(OutputStream out, Coding coding) throws IOException {
+        return switch (coding) {
+            case ZSTD -> new ZstdOutputStream(out, ON_THE_FLY_ZSTD_LEVEL);
+            case GZIP -> new GZIPOutputStream(out, BUFFER_SIZE);
+        };
+    }
+
+    private void submit(File file) {
+        if (file.getFileSize() > maxVariantSourceSize) {
+            return;
+        }
+        String sha256 = file.getChecksum();
+        String sourceKey = file.getFilename();
+        long size = file.getFileSize();
+        if (!inFlight.add(sha256)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    produceVariants(sha256, sourceKey, size);
+                } finally {
+                    inFlight.remove(sha256);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(sha256);
+            logger.debug("Compression queue full, deferring {}", sha256);
+        }
+    }
+
+    private void produceVariants(String sha256, String sourceKey, long size) {
+        try {
+            writeAllVariants(sha256, sourceKey, size);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not compress {}: {}", sha256, e.toString());
+        }
+    }
+
+    private void writeAllVariants(String sha256, String sourceKey, long size) throws IOException {
+        long started = System.nanoTime();
+        boolean anyWorthwhile = fileStorageService.withLocalCopy(sourceKey,
+                source -> writeVariants(sha256, source, size));
+        if (!anyWorthwhile) {
+            Path marker = derivedPath(sha256, NO_GAIN_MARKER);
+            Files.write(marker, new byte[0]);
+        }
+        logger.debug("Compressed variants of {} in {} ms", sha256, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /**
+     * Writes every missing variant, dropping those that don't save enough.
+     *
+     * @return true if at least one variant is worth serving
+     */
+    private boolean writeVariants(String sha256, Path source, long size) throws IOException {
+        long maxWorthwhileSize = (long) (size * (1 - MIN_SAVING));
+        boolean anyWorthwhile = false;
+        for (Coding coding : Coding.values()) {
+            Path target = derivedPath(sha256, coding.fileName);
+            Path skipMarker = derivedPath(sha256, coding.skipMarker());
+            if (Files.exists(target)) {
+                anyWorthwhile = true;
+                continue;
+            }
+            if (Files.exists(skipMarker)) {
+                continue;
+            }
+            long compressedSize = writeVariant(source, target, coding);
+            if (compressedSize > maxWorthwhileSize) {
+                Files.write(skipMarker, new byte[0]);
+                Files.deleteIfExists(target);
+            } else {
+                anyWorthwhile = true;
+            }
+        }
+        return anyWorthwhile;
+    }
+
+    /**
+     * Writes to a temporary file first, so readers only ever see complete variants.
+     *
+     * @return the compressed size
+     */
+    private long writeVariant(Path source, Path target, Coding coding) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            try (InputStream in = Files.newInputStream(source);
+                 OutputStream out = strongEncoder(Files.newOutputStream(temp), coding)) {
+                in.transferTo(out);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        return Files.size(target);
+    }
+
+    private OutputStream strongEncoder(OutputStream out, Coding coding) throws IOException {
+        return switch (coding) {
+            case ZSTD -> new ZstdOutputStream(out, zstdLevel);
+            case GZIP -> new GZIPOutputStream(out, BUFFER_SIZE) {
+                {
+                    def.setLevel(gzipLevel);
+                }
+            };
+        };
+    }
+
+    private Path derivedPath(String sha256, String name) {
+        return fileStorageService.derivedPath(sha256, name);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
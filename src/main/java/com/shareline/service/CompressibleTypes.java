@@ -0,0 +1,38 @@
+package com.shareline.service;
+
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Decides whether content is worth compressing, from its sniffed MIME type: text, JSON, XML
+ * (including SVG) and JavaScript. Anything else is either already compressed or too varied to be
+ * worth the CPU, so it is left as is.
+ */
+public final class CompressibleTypes {
+
+    private static final Set<String> COMPRESSIBLE = Set.of(
+            "application/json",
+            "application/xml",
+            "application/javascript",
+            "application/x-javascript",
+            "application/ecmascript"
+    );
+
+    private CompressibleTypes() {
+    }
+
+    public static boolean isCompressible(String mimeType) {
+        if (mimeType == null) {
+            return false;
+        }
+        String type = mimeType.toLowerCase(Locale.ROOT);
+        int semicolon = type.indexOf(';');
+        if (semicolon >= 0) {
+            type = type.substring(0, semicolon).trim();
+        }
+        return type.startsWith("text/")
+                || type.endsWith("+json")
+                || type.endsWith("+xml")
+                || COMPRESSIBLE.contains(type);
+    }
+}
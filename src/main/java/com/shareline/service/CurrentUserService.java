@@ -0,0 +1,93 @@
+package com.shareline.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.shareline.entity.User;
+import com.shareline.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.oauth2.core.user.OAuth2User;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Resolves the authenticated principal to its {@link User} row. Results are kept in a small
+ * concurrent cache keyed by the Google "sub" claim, so steady-state requests don't query the
+ * users table; {@link CustomOAuth2UserService} refreshes the entry on every login.
+ */
+@Service
+public class CurrentUserService {
+
+    private final UserRepository userRepository;
+    // Loads run here rather than on the calling thread, see ShareTokenCache#get
+    private static final Executor LOADER = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("user-cache-load-", 0).factory());
+
+    private final AsyncCache<String, User> usersByGoogleId;
+
+    public CurrentUserService(
+            UserRepository userRepository,
+            @Value("${shareline.user-cache.max-size:10000}") long maxSize,
+            @Value("${shareline.user-cache.ttl-minutes:30}") long ttlMinutes) {
+        this.userRepository = userRepository;
+        this.usersByGoogleId = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .executor(LOADER)
+                .buildAsync();
+    }
+
+    /**
+     * Returns a detached copy of the principal's user; only use it for reads and as an
+     * association reference.
+     */
+    public User getCurrentUser(OAuth2User principal) {
+        if (principal == null) {
+            throw new RuntimeException("User not authenticated");
+        }
+        String googleId = principal.getAttribute("sub");
+        if (googleId == null) {
+            throw new RuntimeException("User not found");
+        }
+        CompletableFuture<User> pending = usersByGoogleId.get(googleId, (id, executor) ->
+                CompletableFuture.supplyAsync(() -> userRepository.findByGoogleId(id)
+                        .map(CurrentUserService::detachedCopy)
+                        .orElseThrow(() -> new RuntimeException("User not found")), executor));
+        try {
+            return pending.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Records the latest state of a user that was just created or updated. Inside a transaction
+     * the entry is only written once the change has committed.
+     */
+    public void update(User user) {
+        User copy = detachedCopy(user);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    usersByGoogleId.synchronous().put(copy.getGoogleId(), copy);
+                }
+            });
+        } else {
+            usersByGoogleId.synchronous().put(copy.getGoogleId(), copy);
+        }
+    }
+
+    private static User detachedCopy(User user) {
+        return new User(user.getId(), user.getEmail(), user.getName(), user.getGoogleId(), user.getCreatedAt());
+    }
+}
@@ -21,9 +21,11 @@ public class CustomOAuth2UserService extends DefaultOAuth2UserService {
 
     private static final Logger logger = LoggerFactory.getLogger(CustomOAuth2UserService.class);
     private final UserRepository userRepository;
+    private final CurrentUserService currentUserService;
 
-    public CustomOAuth2UserService(UserRepository userRepository) {
+    public CustomOAuth2UserService(UserRepository userRepository, CurrentUserService currentUserService) {
         this.userRepository = userRepository;
+        this.currentUserService = currentUserService;
     }
 
     @Override
@@ -64,6 +66,7 @@ public class CustomOAuth2UserService extends DefaultOAuth2UserService {
             logger.info("Updating user info for googleId: {}", googleId);
             userRepository.save(user);
         }
+        currentUserService.update(user);
 
         return new DefaultOAuth2User(
                 Collections.singleton(new SimpleGrantedAuthority("ROLE_USER")),
@@ -0,0 +1,367 @@
+package com.shareline.service;
+
+import com.shareline.entity.File;
+import com.shareline.entity.File.ProcessingStatus;
+import com.shareline.entity.FileJob;
+import com.shareline.entity.FileJob.Stage;
+import com.shareline.repository.FileJobRepository;
+import com.shareline.repository.FileRepository;
+import jakarta.annotation.PreDestroy;
+import org.apache.tika.Tika;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Post-upload work that doesn't have to hold up the upload response, run from a durable queue
+ * in the {@code file_jobs} table:
+ * <ul>
+ *     <li>{@link Stage#SNIFF}: content type from the stored head bytes, which then queues
+ *     renditions and compressed variants if the type has them</li>
+ *     <li>{@link Stage#RENDITIONS} and {@link Stage#COMPRESSION}: previews and precompressed
+ *     variants, produced once per blob</li>
+ * </ul>
+ * Jobs are inserted in the upload's own transaction, so a committed file always has its work
+ * queued. A dispatcher claims due jobs with SKIP LOCKED and leases them for {@code lease-seconds},
+ * so any number of nodes can work the queue and a job whose node died is picked up again once
+ * its lease runs out. Stages are idempotent. A failed job is retried with exponential backoff
+ * and dropped after {@code max-attempts}. The file is READY once none of its jobs are left.
+ * <p>
+ * Workers are woken as soon as an upload on this node commits; other nodes find the job on their
+ * next poll.
+ */
+@Service
+public class FileProcessingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileProcessingService.class);
+
+    static final String DEFAULT_MIME_TYPE = "application/octet-stream";
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    /**
+     * Job outcomes since startup.
+     */
+    public record QueueStats(long completed, long retried, long abandoned) {
+    }
+
+    private final FileJobRepository fileJobRepository;
+    private final FileRepository fileRepository;
+    private final FileStorageService fileStorageService;
+    private final RenditionService renditionService;
+    private final CompressedVariantService compressedVariantService;
+    private final ShareTokenCache shareTokenCache;
+    private final StageObservations stages;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int workers;
+    private final long pollIntervalMs;
+    private final Duration lease;
+    private final int maxAttempts;
+    private final long backoffBaseMs;
+    private final long backoffMaxMs;
+    private final Tika tika = new Tika();
+
+    private final ExecutorService executor;
+    private final Semaphore freeWorkers;
+    private final Semaphore wakeups = new Semaphore(0);
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+    private volatile Thread dispatcher;
+
+    public FileProcessingService(
+            FileJobRepository fileJobRepository,
+            FileRepository fileRepository,
+            FileStorageService fileStorageService,
+            RenditionService renditionService,
+            CompressedVariantService compressedVariantService,
+            ShareTokenCache shareTokenCache,
+            StageObservations stages,
+            TransactionTemplate transactionTemplate,
+            @Value("${shareline.jobs.enabled:true}") boolean enabled,
+            @Value("${shareline.jobs.workers:4}") int workers,
+            @Value("${shareline.jobs.poll-interval-ms:2000}") long pollIntervalMs,
+            @Value("${shareline.jobs.lease-seconds:600}") long leaseSeconds,
+            @Value("${shareline.jobs.max-attempts:8}") int maxAttempts,
+            @Value("${shareline.jobs.backoff-base-ms:5000}") long backoffBaseMs,
+            @Value("${shareline.jobs.backoff-max-ms:3600000}") long backoffMaxMs) {
+        this.fileJobRepository = fileJobRepository;
+        this.fileRepository = fileRepository;
+        this.fileStorageService = fileStorageService;
+        this.renditionService = renditionService;
+        this.compressedVariantService = compressedVariantService;
+        this.shareTokenCache = shareTokenCache;
+        this.stages = stages;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.workers = workers;
+        this.pollIntervalMs = pollIntervalMs;
+        this.lease = Duration.ofSeconds(leaseSeconds);
+        this.maxAttempts = maxAttempts;
+        this.backoffBaseMs = backoffBaseMs;
+        this.backoffMaxMs = backoffMaxMs;
+        this.freeWorkers = new Semaphore(workers);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, workers), task -> {
+            Thread thread = new Thread(task, "file-job-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues processing of a file that is being created, in the caller's transaction. The file
+     * is saved as PROCESSING with the generic content type until its jobs have run.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueue(File file) {
+        enqueueAll(List.of(file));
+    }
+
+    /**
+     * {@link #enqueue} for several files, with their jobs saved in one batch.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueueAll(List<File> files) {
+        LocalDateTime now = LocalDateTime.now();
+        fileJobRepository.saveAll(files.stream().map(file -> new FileJob(file.getId(), Stage.SNIFF, now)).toList());
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                wakeups.release();
+            }
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled || workers <= 0) {
+            logger.info("Post-upload job queue is disabled on this node");
+            return;
+        }
+        Thread thread = new Thread(this::dispatch, "file-job-dispatcher");
+        thread.setDaemon(true);
+        dispatcher = thread;
+        thread.start();
+    }
+
+    private void dispatch() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                // Only claim what can start right away, so other nodes get the rest
+                freeWorkers.acquire();
+                int free = 1 + freeWorkers.drainPermits();
+                List<FileJob> jobs;
+                try {
+                    jobs = claim(free);
+                } catch (RuntimeException e) {
+                    freeWorkers.release(free);
+                    logger.warn("Could not claim post-upload jobs: {}", e.toString());
+                    Thread.sleep(pollIntervalMs);
+                    continue;
+                }
+                freeWorkers.release(free - jobs.size());
+                if (jobs.isEmpty()) {
+                    wakeups.tryAcquire(pollIntervalMs, TimeUnit.MILLISECONDS);
+                    wakeups.drainPermits();
+                    continue;
+                }
+                for (FileJob job : jobs) {
+                    try {
+                        executor.execute(() -> {
+                            try {
+                                run(job);
+                            } finally {
+                                freeWorkers.release();
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        // Shutting down; the claimed jobs are picked up again once their leases run out
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private List<FileJob> claim(int limit) {
+        return transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<FileJob> jobs = fileJobRepository.lockDue(now, limit);
+            for (FileJob job : jobs) {
+                job.setAttempts(job.getAttempts() + 1);
+                job.setLockedUntil(now.plus(lease));
+            }
+            return jobs;
+        });
+    }
+
+    private void run(FileJob job) {
+        try {
+            File file = fileRepository.findById(job.getFileId()).orElse(null);
+            if (file == null) {
+                // Deleted meanwhile; its jobs went with it
+                return;
+            }
+            switch (job.getStage()) {
+                case SNIFF -> {
+                    String mimeType = stages.observe("process.sniff", () -> sniff(file));
+                    transactionTemplate.executeWithoutResult(status -> completeSniff(job, mimeType));
+                }
+                case RENDITIONS -> {
+                    stages.observe("process.renditions", () -> {
+                        renditionService.renderNow(file);
+                        return null;
+                    });
+                    transactionTemplate.executeWithoutResult(status -> complete(job, null));
+                }
+                case COMPRESSION -> {
+                    stages.observe("process.compression", () -> {
+                        compressedVariantService.produceNow(file);
+                        return null;
+                    });
+                    transactionTemplate.executeWithoutResult(status -> complete(job, null));
+                }
+            }
+            completed.increment();
+        } catch (Exception e) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> fail(job, e));
+            } catch (RuntimeException failed) {
+                // The lease runs out and the job is claimed again
+                logger.warn("Could not record failure of job {}: {}", job.getId(), failed.toString());
+            }
+        }
+    }
+
+    private String sniff(File file) throws IOException {
+        String detected = tika.detect(fileStorageService.readHead(file.getFilename()));
+        return detected != null && !detected.isBlank() ? detected : DEFAULT_MIME_TYPE;
+    }
+
+    private void completeSniff(FileJob job, String mimeType) {
+        complete(job, file -> {
+            file.setMimeType(mimeType);
+            LocalDateTime now = LocalDateTime.now();
+            if (renditionService.isSupported(file)) {
+                fileJobRepository.save(new FileJob(file.getId(), Stage.RENDITIONS, now));
+            }
+            if (compressedVariantService.isCompressible(file)) {
+                fileJobRepository.save(new FileJob(file.getId(), Stage.COMPRESSION, now));
+            }
+        });
+    }
+
+    /**
+     * Removes a finished job and marks the file READY if it was the last one. The file row is
+     * locked first, so two jobs of one file finishing together can't both miss that.
+     */
+    private void complete(FileJob job, Consumer<File> update) {
+        File file = fileRepository.findByIdForUpdate(job.getFileId()).orElse(null);
+        if (file == null) {
+            return;
+        }
+        fileJobRepository.deleteJob(job.getId());
+        if (update != null) {
+            update.accept(file);
+        }
+        if (!fileJobRepository.existsByFileId(file.getId()) && file.getProcessingStatus() == ProcessingStatus.PROCESSING) {
+            file.setProcessingStatus(ProcessingStatus.READY);
+        }
+        shareTokenCache.invalidate(file.getShareToken());
+    }
+
+    private void fail(FileJob job, Exception error) {
+        if (!fileRepository.existsById(job.getFileId())) {
+            // Deleted while the job ran, taking its content and its jobs with it
+            return;
+        }
+        if (job.getAttempts() >= maxAttempts) {
+            abandoned.increment();
+            logger.warn("Giving up on {} of file {} after {} attempts: {}",
+                    job.getStage(), job.getFileId(), job.getAttempts(), error.toString());
+            complete(job, file -> {
+                if (job.getStage() == Stage.SNIFF) {
+                    file.setProcessingStatus(ProcessingStatus.FAILED);
+                }
+            });
+            return;
+        }
+        retried.increment();
+        long delayMs = backoffMs(job.getAttempts());
+        logger.info("{} of file {} failed (attempt {}), retrying in {} ms: {}",
+                job.getStage(), job.getFileId(), job.getAttempts(), delayMs, error.toString());
+        fileJobRepository.findById(job.getId()).ifPresent(current -> {
+            current.setRunAt(LocalDateTime.now().plus(Duration.ofMillis(delayMs)));
+            current.setLockedUntil(null);
+            String message = error.toString();
+            current.setLastError(message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message);
+        });
+    }
+
+    /**
+     * Doubles per attempt up to the cap, with +-20% jitter so jobs that failed together (e.g.
+     * while storage was down) don't all come back at the same moment.
+     */
+    private long backoffMs(int attempts) {
+        long delay = backoffBaseMs << Math.min(attempts - 1, 20);
+        delay = Math.min(delay, backoffMaxMs);
+        return (long) (delay * (0.8 + 0.4 * ThreadLocalRandom.current().nextDouble()));
+    }
+
+    public QueueStats snapshot() {
+        return new QueueStats(completed.sum(), retried.sum(), abandoned.sum());
+    }
+
+    /**
+     * Jobs that are due now and not leased by a worker, queued on any node; a steadily growing
+     * count means more workers are needed.
+     */
+    public long backlog() {
+        return fileJobRepository.countDue(LocalDateTime.now());
+    }
+
+    @Scheduled(fixedDelayString = "${shareline.jobs.stats-interval-ms:300000}")
+    public void logStats() {
+        QueueStats stats = snapshot();
+        if (stats.completed() + stats.retried() + stats.abandoned() > 0) {
+            logger.info("Post-upload jobs: completed={}, retried={}, abandoned={}",
+                    stats.completed(), stats.retried(), stats.abandoned());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        Thread thread = dispatcher;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        executor.shutdownNow();
+    }
+}
@@ -1,68 +1,296 @@
 package com.shareline.service;
 
 import com.shareline.dto.FileInfo;
+import com.shareline.dto.FilePage;
+import com.shareline.dto.FileStats;
 import com.shareline.dto.FileUploadResponse;
 import com.shareline.entity.File;
 import com.shareline.entity.User;
 import com.shareline.repository.FileRepository;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import com.shareline.repository.FileSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.net.MalformedURLException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-import org.apache.tika.Tika;
-
 @Service
 public class FileService {
 
+    private static final Logger logger = LoggerFactory.getLogger(FileService.class);
+    private static final Pattern SHA256_PATTERN = Pattern.compile("[0-9a-fA-F]{64}");
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+
     private final FileRepository fileRepository;
     private final FileStorageService fileStorageService;
-    private final Tika tika = new Tika();
+    private final BlobStoreService blobStoreService;
+    private final ShareTokenCache shareTokenCache;
+    private final ShareRevocationList shareRevocationList;
+    private final FileProcessingService fileProcessingService;
+    private final QuotaService quotaService;
+    private final StageObservations stages;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxArchiveEntries;
 
-    public FileService(FileRepository fileRepository, FileStorageService fileStorageService) {
+    public FileService(FileRepository fileRepository, FileStorageService fileStorageService,
+                       BlobStoreService blobStoreService, ShareTokenCache shareTokenCache,
+                       ShareRevocationList shareRevocationList, FileProcessingService fileProcessingService,
+                       QuotaService quotaService, StageObservations stages, TransactionTemplate transactionTemplate,
+                       @Value("${shareline.archive.max-entries:1000}") int maxArchiveEntries) {
         this.fileRepository = fileRepository;
         this.fileStorageService = fileStorageService;
+        this.blobStoreService = blobStoreService;
+        this.shareTokenCache = shareTokenCache;
+        this.shareRevocationList = shareRevocationList;
+        this.fileProcessingService = fileProcessingService;
+        this.quotaService = quotaService;
+        this.stages = stages;
+        this.transactionTemplate = transactionTemplate;
+        this.maxArchiveEntries = maxArchiveEntries;
     }
 
-    @Transactional
+    // Not transactional: no connection is held while the body is stored, see saveStoredFile
     public FileUploadResponse uploadFile(MultipartFile multipartFile, User user) throws IOException {
-        String storedFilePath = fileStorageService.storeFile(multipartFile, user.getId());
-        Path filePath = fileStorageService.loadFile(storedFilePath);
+        requireFilename(multipartFile.getOriginalFilename());
+        quotaService.checkAvailable(user, multipartFile.getSize());
+        StoredFile stored;
+        try (InputStream in = multipartFile.getInputStream()) {
+            stored = stages.observe("upload.store", () -> fileStorageService.storeStream(in));
+        }
+        return toUploadResponse(saveStoredFile(stored, multipartFile.getOriginalFilename(), user));
+    }
+
+    /**
+     * Streaming upload: the request body is read exactly once and written to storage, with size
+     * and checksums computed along the way. A body larger than the user's remaining quota is
+     * refused up front if {@code contentLength} is known (-1 if not), and otherwise as soon as it
+     * grows past it. Not transactional, like {@link #uploadFile}.
+     */
+    public FileUploadResponse uploadStream(InputStream in, long contentLength, String originalFilename, User user)
+            throws IOException {
+        requireFilename(originalFilename);
+        InputStream limited = quotaService.limit(in, user, contentLength);
+        StoredFile stored = stages.observe("upload.store", () -> fileStorageService.storeStream(limited));
+        return toUploadResponse(saveStoredFile(stored, originalFilename, user));
+    }
+
+    /**
+     * Hash-first upload: if the user already has a file with this SHA-256 and size, the new file
+     * is created from the same content and the client does not need to send any bytes.
+     *
+     * @return empty if the content is unknown and has to be uploaded
+     */
+    @Transactional
+    public Optional<FileUploadResponse> uploadByHash(String sha256, Long fileSize, String originalFilename, User user)
+            throws IOException {
+        requireFilename(originalFilename);
+        if (sha256 == null || !SHA256_PATTERN.matcher(sha256).matches() || fileSize == null) {
+            throw new IllegalArgumentException("A hex SHA-256 digest and file size are required");
+        }
+        String hash = sha256.toLowerCase(Locale.ROOT);
+        // Before the blob row, so user and blob locks are always taken in that order
+        quotaService.reserve(user, fileSize);
+        if (!blobStoreService.acquireExisting(hash, fileSize, user.getId())) {
+            quotaService.release(user.getId(), fileSize);
+            return Optional.empty();
+        }
+
+        String blobKey = fileStorageService.blobKey(hash);
+        Long crc32 = blobStoreService.crc32(hash);
+        File savedFile = stages.observe("upload.persist",
+                () -> saveFileRecord(blobKey, originalFilename, fileSize, hash, crc32, user));
+        return Optional.of(toUploadResponse(savedFile));
+    }
+
+    /**
+     * Moves freshly stored bytes into the blob store (or drops them if the content is already
+     * there) and persists the file's metadata, counting it against the user's quota. The bytes are
+     * moved before the transaction, which only takes the quota, the blob reference and the row, so
+     * a slow backend never holds a database connection. Content type detection and derived
+     * artifacts are queued for {@link FileProcessingService}.
+     */
+    public File saveStoredFile(StoredFile stored, String originalFilename, User user) throws IOException {
+        PendingUpload pending;
+        try {
+            // Refused before anything moves; reserve() below still has the final word
+            quotaService.checkAvailable(user, stored.size());
+            pending = stages.observe("upload.blob", () -> promote(stored, originalFilename));
+        } catch (IOException | RuntimeException e) {
+            fileStorageService.discard(stored);
+            throw e;
+        }
+        return savePendingUploads(List.of(pending), user).get(0);
+    }
+
+    /**
+     * First half of {@link #saveStoredFile}, for callers that stage several files in parallel:
+     * moves the bytes to their content address outside of any transaction.
+     */
+    public PendingUpload promote(StoredFile stored, String originalFilename) throws IOException {
+        return new PendingUpload(stored, originalFilename, blobStoreService.promote(stored));
+    }
 
-        String mimeType = determineMimeType(multipartFile, filePath);
+    /**
+     * Second half of {@link #saveStoredFile}: persists any number of promoted uploads in one short
+     * transaction, with the quota for all of them reserved at once, blob references taken in hash
+     * order (so batches sharing content can't deadlock) and the file and job rows sent as batched
+     * inserts. If it fails, the staged bytes and any blob objects nothing references are removed.
+     *
+     * @return the saved files, in the order given
+     */
+    public List<File> savePendingUploads(List<PendingUpload> uploads, User user) throws IOException {
+        try {
+            return inTransaction(() -> {
+                // Before the blob rows, so user and blob locks are always taken in that order
+                quotaService.reserve(user, uploads.stream().mapToLong(u -> u.stored().size()).sum());
+                List<PendingUpload> byHash = uploads.stream()
+                        .sorted(Comparator.comparing(u -> u.stored().sha256()))
+                        .toList();
+                for (PendingUpload upload : byHash) {
+                    blobStoreService.acquire(upload.stored());
+                }
+                return stages.observe("upload.persist", () -> {
+                    List<File> files = fileRepository.saveAll(uploads.stream()
+                            .map(u -> newFileRecord(fileStorageService.blobKey(u.stored().sha256()),
+                                    u.originalFilename(), u.stored().size(), u.stored().sha256(),
+                                    u.stored().crc32(), user))
+                            .toList());
+                    fileProcessingService.enqueueAll(files);
+                    return files;
+                });
+            });
+        } catch (IOException | RuntimeException e) {
+            discardPending(uploads, e);
+            throw e;
+        }
+    }
 
+    /**
+     * Removes what promoted uploads left behind when they won't be persisted. Cleanup failures
+     * are attached to {@code failure}.
+     */
+    public void discardPending(List<PendingUpload> uploads, Exception failure) {
+        for (PendingUpload upload : uploads) {
+            try {
+                fileStorageService.discard(upload.stored());
+                if (upload.promoted()) {
+                    blobStoreService.discardIfUnreferenced(upload.stored());
+                }
+            } catch (IOException | RuntimeException cleanup) {
+                failure.addSuppressed(cleanup);
+            }
+        }
+    }
+
+    private <T> T inTransaction(StorageWork<T> work) throws IOException {
+        try {
+            return transactionTemplate.execute(status -> {
+                try {
+                    return work.run();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @FunctionalInterface
+    private interface StorageWork<T> {
+        T run() throws IOException;
+    }
+
+    private File saveFileRecord(String storedFilePath, String originalFilename, long fileSize,
+                                String sha256, Long crc32, User user) {
+        File savedFile = fileRepository.save(newFileRecord(storedFilePath, originalFilename, fileSize, sha256,
+                crc32, user));
+        fileProcessingService.enqueue(savedFile);
+        return savedFile;
+    }
+
+    private File newFileRecord(String storedFilePath, String originalFilename, long fileSize,
+                               String sha256, Long crc32, User user) {
         File file = new File();
-        file.setFilename(storedFilePath); // Now stores: userId/filename
-        file.setOriginalFilename(multipartFile.getOriginalFilename());
-        file.setFilePath(filePath.toString());
-        file.setFileSize(multipartFile.getSize());
-        file.setMimeType(mimeType);
+        file.setFilename(storedFilePath); // Now stores: blobs/ab/cd/sha256
+        file.setOriginalFilename(originalFilename);
+        file.setFilePath(fileStorageService.describe(storedFilePath));
+        file.setFileSize(fileSize);
+        file.setMimeType(FileProcessingService.DEFAULT_MIME_TYPE);
+        file.setProcessingStatus(File.ProcessingStatus.PROCESSING);
+        file.setChecksum(sha256);
+        file.setCrc32(crc32);
+        file.setBlobHash(sha256);
         file.setUser(user);
+        return file;
+    }
 
-        File savedFile = fileRepository.save(file);
+    void requireFilename(String originalFilename) {
+        if (originalFilename == null || originalFilename.isEmpty()) {
+            throw new IllegalArgumentException("Filename cannot be empty");
+        }
+    }
 
+    public FileUploadResponse toUploadResponse(File savedFile) {
         return new FileUploadResponse(
                 savedFile.getId(),
                 savedFile.getFilename(),
                 savedFile.getOriginalFilename(),
                 savedFile.getFileSize(),
+                savedFile.getChecksum(),
                 "File uploaded successfully"
         );
     }
 
-    public List<FileInfo> getUserFiles(User user) {
-        return fileRepository.findByUserOrderByCreatedAtDesc(user)
-                .stream()
+    /**
+     * One page of the user's files, newest first. The cursor is opaque to clients and encodes the
+     * (created_at, id) of the last row of the previous page.
+     */
+    public FilePage getUserFiles(User user, String cursor, Integer limit) {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+
+        List<FileSummary> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = fileRepository.findFirstPage(user.getId(), pageSize);
+        } else {
+            PageCursor after = PageCursor.decode(cursor);
+            rows = fileRepository.findPageAfter(user.getId(), after.createdAt(), after.id(), pageSize);
+        }
+
+        List<FileInfo> items = rows.stream()
                 .map(this::toFileInfo)
                 .collect(Collectors.toList());
+        String nextCursor = null;
+        if (rows.size() == pageSize) {
+            FileSummary last = rows.get(rows.size() - 1);
+            nextCursor = new PageCursor(last.getCreatedAt(), last.getId()).encode();
+        }
+        return new FilePage(items, nextCursor);
+    }
+
+    public FileStats getUserFileStats(User user) {
+        return fileRepository.getStats(user.getId(), LocalDateTime.now());
     }
 
     public File getFileById(Long id) {
@@ -78,24 +306,118 @@ public class FileService {
         return file;
     }
 
+    /**
+     * The user's files with the given ids, in the order requested, for a multi-file download.
+     * Ownership of the whole set is checked with a single query.
+     */
+    public List<File> getFilesByIdsAndUser(List<Long> ids, User user) {
+        List<Long> distinctIds = ids.stream().filter(Objects::nonNull).distinct().toList();
+        if (distinctIds.isEmpty()) {
+            throw new IllegalArgumentException("No files selected");
+        }
+        if (distinctIds.size() > maxArchiveEntries) {
+            throw new IllegalArgumentException("At most " + maxArchiveEntries + " files can be downloaded at once");
+        }
+
+        Map<Long, File> found = fileRepository.findByUserAndIdIn(user, distinctIds).stream()
+                .collect(Collectors.toMap(File::getId, Function.identity()));
+        if (found.size() != distinctIds.size()) {
+            throw new RuntimeException("File not found or access denied");
+        }
+        return distinctIds.stream().map(found::get).toList();
+    }
+
     @Transactional
     public void deleteFile(Long id, User user) throws IOException {
-        File file = getFileByIdAndUser(id, user);
-        fileStorageService.deleteFile(file.getFilename());
+        // Locked, so a concurrent layout migration of the same file either finishes first or waits
+        File file = fileRepository.findByIdForUpdate(id)
+                .orElseThrow(() -> new RuntimeException("File not found"));
+        if (!file.getUser().getId().equals(user.getId())) {
+            throw new RuntimeException("File not found or access denied");
+        }
+        shareTokenCache.invalidate(file.getShareToken());
+        if (file.getShareGeneration() > 0) {
+            shareRevocationList.revokeDeleted(List.of(id));
+        }
         fileRepository.delete(file);
+        quotaService.release(file.getUser().getId(), file.getFileSize());
+        if (file.getBlobHash() != null) {
+            // Shared content: the blob goes away with its last reference
+            blobStoreService.release(file.getBlobHash());
+        } else {
+            fileStorageService.deleteFile(file.getFilename());
+        }
     }
 
-    public Resource loadFileAsResource(File file) throws MalformedURLException {
-        Path filePath = fileStorageService.loadFile(file.getFilename());
-        Resource resource = new UrlResource(filePath.toUri());
-        if (resource.exists() && resource.isReadable()) {
-            return resource;
-        } else {
+    /**
+     * The file's content on local disk, for zero-copy serving, or empty if the storage backend
+     * is remote and the content has to be read with {@link #openContent}.
+     */
+    public Optional<Path> getLocalPath(File file) throws IOException {
+        Optional<Path> filePath = fileStorageService.localPath(contentKey(file));
+        if (filePath.isPresent() && !(Files.isRegularFile(filePath.get()) && Files.isReadable(filePath.get()))) {
             throw new RuntimeException("File not found or not readable");
         }
+        return filePath;
     }
 
-    private FileInfo toFileInfo(File file) {
+    /**
+     * Opens {@code length} bytes of the file's content starting at {@code offset}.
+     */
+    public InputStream openContent(File file, long offset, long length) throws IOException {
+        return fileStorageService.openRange(contentKey(file), offset, length);
+    }
+
+    /**
+     * Points a file stored before deduplication at the blob holding the same content, staged by
+     * the layout migration. The row is locked and checked again first, so a file deleted or
+     * migrated in the meantime is left alone. The old copy is removed once the change commits.
+     *
+     * @return true if the file now uses the blob
+     */
+    @Transactional
+    public boolean adoptLegacyFile(Long id, String legacyKey, StoredFile staged) throws IOException {
+        Optional<File> locked = fileRepository.findByIdForUpdate(id);
+        if (locked.isEmpty() || locked.get().getBlobHash() != null || !legacyKey.equals(locked.get().getFilename())) {
+            return false;
+        }
+        File file = locked.get();
+        String blobKey = blobStoreService.acquire(staged);
+        file.setFilename(blobKey);
+        file.setFilePath(fileStorageService.describe(blobKey));
+        file.setChecksum(staged.sha256());
+        file.setCrc32(staged.crc32());
+        file.setBlobHash(staged.sha256());
+        shareTokenCache.invalidate(file.getShareToken());
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    fileStorageService.deleteFile(legacyKey);
+                } catch (IOException e) {
+                    logger.warn("Could not remove migrated file {}: {}", legacyKey, e.getMessage());
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Storage key of the file's content. A file moved by the layout migration after this row was
+     * read is looked up again, so downloads keep working while the migration runs.
+     */
+    private String contentKey(File file) throws IOException {
+        String key = file.getFilename();
+        if (fileStorageService.isBlobKey(key) || file.getId() == null || fileStorageService.exists(key)) {
+            return key;
+        }
+        return fileRepository.findById(file.getId()).map(File::getFilename).orElse(key);
+    }
+
+    private FileInfo toFileInfo(FileSummary file) {
+        boolean shareable = file.getShareToken() != null
+                && (file.getShareExpiresAt() == null || !file.getShareExpiresAt().isBefore(LocalDateTime.now()));
         return new FileInfo(
                 file.getId(),
                 file.getFilename(),
@@ -105,29 +427,8 @@ public class FileService {
                 file.getShareToken(),
                 file.getShareExpiresAt(),
                 file.getCreatedAt(),
-                file.isShareable()
+                shareable,
+                file.getProcessingStatus()
         );
     }
-
-    /**
-     * Try multiple strategies to determine MIME type:
-     * 1) Client-provided content type (if present)
-     * 2) Probe using the stored file path (based on file contents / extension)
-     * 3) Guess from original filename
-     * Falls back to application/octet-stream.
-     */
-    private String determineMimeType(MultipartFile multipartFile, Path filePath) {
-        // Content-based detection only; avoid filename hints.
-        try (var is = Files.newInputStream(filePath)) {
-            String detected = tika.detect(is);
-            if (detected != null && !detected.isBlank() && !detected.equals("application/octet-stream")) {
-                return detected;
-            }
-        } catch (IOException ignored) {
-            // fall through
-        }
-
-        return "application/octet-stream";
-    }
 }
-
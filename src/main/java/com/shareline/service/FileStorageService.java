@@ -1,23 +1,50 @@
 package com.shareline.service;
 
+import com.shareline.storage.StorageBackend;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
 
+/**
+ * File content on top of the configured {@link StorageBackend}, addressed by relative keys.
+ * Uploads are staged under the local upload directory (.tmp/, *.part) until their digest is known,
+ * and artifacts derived from stored content (derived/) are kept there too, as a node-local cache.
+ */
 @Service
 public class FileStorageService {
 
+    private static final String PARTIAL_SUFFIX = ".part";
+    private static final String TEMP_DIR = ".tmp";
+    private static final String PARTS_DIR = ".parts";
+    private static final String BLOB_DIR = "blobs";
+    private static final String DERIVED_DIR = "derived";
+    private static final int CHUNK_BUFFER_SIZE = 64 * 1024;
+    // Tika's magic-byte detection never looks past the first 64KB
+    private static final int SNIFF_BUFFER_SIZE = 64 * 1024;
+
     private final Path uploadDir;
+    private final StorageBackend storage;
 
-    public FileStorageService(@Value("${shareline.upload-dir:./uploads}") String uploadDir) {
+    public FileStorageService(@Value("${shareline.upload-dir:./uploads}") String uploadDir, StorageBackend storage) {
         this.uploadDir = Paths.get(uploadDir).toAbsolutePath().normalize();
+        this.storage = storage;
         try {
             Files.createDirectories(this.uploadDir);
         } catch (IOException e) {
@@ -25,55 +52,292 @@ public class FileStorageService {
         }
     }
 
-    public String storeFile(MultipartFile file, Long userId) throws IOException {
-        String originalFilename = file.getOriginalFilename();
+    /**
+     * Single-pass store: copies the stream to a temporary file while computing the size, SHA-256
+     * digest and CRC-32, so the stored file never has to be read back. The result is moved into
+     * the blob store with {@link #promoteToBlob} or {@link #moveToBlob}.
+     */
+    public StoredFile storeStream(InputStream in) throws IOException {
+        String tempFilename = TEMP_DIR + "/" + UUID.randomUUID();
+        Path targetLocation = stagingPath(tempFilename);
+        Files.createDirectories(targetLocation.getParent());
+
+        try (OutputStream out = Files.newOutputStream(targetLocation)) {
+            return copyAndDigest(in, out, tempFilename);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(targetLocation);
+            throw e;
+        }
+    }
+
+    /**
+     * Relative location of the blob with the given SHA-256, fanned out over two directory levels
+     * (blobs/ab/cd/abcd...) to keep directories small.
+     */
+    public String blobKey(String sha256) {
+        return BLOB_DIR + "/" + sha256.substring(0, 2) + "/" + sha256.substring(2, 4) + "/" + sha256;
+    }
+
+    /**
+     * Relative location of an artifact derived from the content with the given SHA-256
+     * (derived/ab/cd/abcd.../name), fanned out the same way as the blobs.
+     */
+    public String derivedKey(String sha256, String name) {
+        return DERIVED_DIR + "/" + sha256.substring(0, 2) + "/" + sha256.substring(2, 4) + "/" + sha256 + "/" + name;
+    }
+
+    /**
+     * Removes every artifact derived from the given content.
+     */
+    public void deleteDerived(String sha256) throws IOException {
+        Path directory = derivedPath(sha256, "");
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (Stream<Path> artifacts = Files.list(directory)) {
+            for (Path artifact : (Iterable<Path>) artifacts::iterator) {
+                Files.deleteIfExists(artifact);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    /**
+     * Local path of an artifact derived from the given content.
+     */
+    public Path derivedPath(String sha256, String name) {
+        return uploadDir.resolve(derivedKey(sha256, name)).normalize();
+    }
+
+    public boolean blobExists(String sha256) throws IOException {
+        return storage.exists(blobKey(sha256));
+    }
+
+    /**
+     * Moves freshly stored bytes to their content address in the storage backend if nothing is
+     * there yet, leaving them in staging otherwise.
+     *
+     * @return true if the bytes were moved
+     */
+    public boolean promoteToBlob(StoredFile stored) throws IOException {
+        String blobKey = blobKey(stored.sha256());
+        if (storage.exists(blobKey)) {
+            return false;
+        }
+        storage.storeFile(blobKey, stagingPath(stored.storedFilename()));
+        return true;
+    }
+
+    /**
+     * Moves freshly stored bytes to their content address in the storage backend. If the blob
+     * already exists the new copy is simply dropped, since identical hashes mean identical content.
+     *
+     * @return the blob's key
+     */
+    public String moveToBlob(StoredFile stored) throws IOException {
+        String blobKey = blobKey(stored.sha256());
+        Path source = stagingPath(stored.storedFilename());
+
+        if (storage.exists(blobKey)) {
+            Files.deleteIfExists(source);
+        } else {
+            storage.storeFile(blobKey, source);
+        }
+        return blobKey;
+    }
+
+    /**
+     * True for keys in the content-addressed layout, as opposed to files stored before
+     * deduplication (userId/uuid.ext).
+     */
+    public boolean isBlobKey(String key) {
+        return key.startsWith(BLOB_DIR + "/");
+    }
+
+    /**
+     * Allocates a unique relative path (.parts/ab/cd/uuid.ext) for a new resumable upload without
+     * writing anything, fanned out by the random name so no directory grows large.
+     */
+    public String newStoredFilename(String originalFilename) {
         if (originalFilename == null || originalFilename.isEmpty()) {
             throw new IllegalArgumentException("Filename cannot be empty");
         }
 
-        // Create user-specific directory
-        Path userDir = uploadDir.resolve(String.valueOf(userId));
-        Files.createDirectories(userDir);
-
         String extension = "";
         int lastDot = originalFilename.lastIndexOf('.');
         if (lastDot > 0) {
             extension = originalFilename.substring(lastDot);
         }
 
-        String uniqueFilename = UUID.randomUUID().toString() + extension;
-        Path targetLocation = userDir.resolve(uniqueFilename);
-        
-        Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
-        
-        // Return relative path: userId/filename
-        return userId + "/" + uniqueFilename;
-    }
-
-    public Path loadFile(String filePath) {
-        // filePath format: userId/filename
-        return uploadDir.resolve(filePath).normalize();
-    }
-
-    public void deleteFile(String filePath) throws IOException {
-        Path path = loadFile(filePath);
-        if (Files.exists(path)) {
-            Files.delete(path);
-            
-            // Try to remove user directory if empty
-            Path userDir = path.getParent();
-            if (userDir != null && Files.exists(userDir)) {
-                try {
-                    Files.delete(userDir); // Only succeeds if directory is empty
-                } catch (IOException e) {
-                    // Directory not empty, ignore
+        String name = UUID.randomUUID().toString();
+        return PARTS_DIR + "/" + name.substring(0, 2) + "/" + name.substring(2, 4) + "/" + name + extension;
+    }
+
+    /**
+     * Writes one chunk of a resumable upload straight into the partial file at the given offset.
+     * The data is flushed to disk before returning so the chunk can be recorded as received.
+     *
+     * @return number of bytes written
+     */
+    public long writeChunk(String storedFilename, long offset, long length, InputStream in) throws IOException {
+        Path partial = partialPath(storedFilename);
+        Files.createDirectories(partial.getParent());
+
+        long written = 0;
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            byte[] buffer = new byte[CHUNK_BUFFER_SIZE];
+            int read;
+            while (written < length
+                    && (read = in.read(buffer, 0, (int) Math.min(buffer.length, length - written))) != -1) {
+                ByteBuffer src = ByteBuffer.wrap(buffer, 0, read);
+                while (src.hasRemaining()) {
+                    written += channel.write(src, offset + written);
                 }
             }
+            if (in.read() != -1) {
+                throw new IllegalArgumentException("Chunk is larger than expected " + length + " bytes");
+            }
+            channel.force(false);
         }
+
+        if (written != length) {
+            throw new IllegalArgumentException("Chunk is incomplete: expected " + length + " bytes, got " + written);
+        }
+        return written;
     }
 
-    public boolean fileExists(String filePath) {
-        return Files.exists(loadFile(filePath));
+    /**
+     * Atomically moves a fully received partial upload into its final location and reads it once
+     * to compute its digest.
+     */
+    public StoredFile completePartial(String storedFilename, long expectedSize) throws IOException {
+        Path partial = partialPath(storedFilename);
+        if (!Files.exists(partial)) {
+            if (expectedSize != 0) {
+                throw new IllegalStateException("No data received for upload");
+            }
+            Files.createDirectories(partial.getParent());
+            Files.createFile(partial);
+        }
+        if (Files.size(partial) != expectedSize) {
+            throw new IllegalStateException("Upload size mismatch: expected " + expectedSize
+                    + " bytes, found " + Files.size(partial));
+        }
+
+        Path target = stagingPath(storedFilename);
+        Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        try (InputStream in = Files.newInputStream(target)) {
+            return copyAndDigest(in, OutputStream.nullOutputStream(), storedFilename);
+        }
     }
-}
 
+    public void deletePartial(String storedFilename) throws IOException {
+        Files.deleteIfExists(partialPath(storedFilename));
+    }
+
+    /**
+     * Drops staged bytes that were not moved into the blob store.
+     */
+    public void discard(StoredFile stored) throws IOException {
+        Files.deleteIfExists(stagingPath(stored.storedFilename()));
+    }
+
+    public InputStream open(String key) throws IOException {
+        return storage.open(key);
+    }
+
+    public InputStream openRange(String key, long offset, long length) throws IOException {
+        return storage.openRange(key, offset, length);
+    }
+
+    /**
+     * The leading bytes of stored content, enough for content sniffing.
+     */
+    public byte[] readHead(String key) throws IOException {
+        try (InputStream in = storage.openRange(key, 0, SNIFF_BUFFER_SIZE)) {
+            return in.readNBytes(SNIFF_BUFFER_SIZE);
+        }
+    }
+
+    /**
+     * Where the content is on local disk, if the backend is local.
+     */
+    public Optional<Path> localPath(String key) {
+        return storage.localPath(key);
+    }
+
+    /**
+     * Location of the content as recorded in files.file_path.
+     */
+    public String describe(String key) {
+        return storage.describe(key);
+    }
+
+    public boolean exists(String key) throws IOException {
+        return storage.exists(key);
+    }
+
+    public void deleteFile(String key) throws IOException {
+        storage.delete(key);
+    }
+
+    /**
+     * Runs {@code action} on the content as a local file: the stored file itself with a local
+     * backend, otherwise a temporary copy that is removed afterwards.
+     */
+    public <T> T withLocalCopy(String key, LocalFileAction<T> action) throws IOException {
+        Optional<Path> local = storage.localPath(key);
+        if (local.isPresent()) {
+            return action.apply(local.get());
+        }
+        Path temp = stagingPath(TEMP_DIR + "/" + UUID.randomUUID());
+        Files.createDirectories(temp.getParent());
+        try {
+            try (InputStream in = storage.open(key)) {
+                Files.copy(in, temp);
+            }
+            return action.apply(temp);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @FunctionalInterface
+    public interface LocalFileAction<T> {
+        T apply(Path path) throws IOException;
+    }
+
+    private static StoredFile copyAndDigest(InputStream in, OutputStream out, String storedFilename)
+            throws IOException {
+        MessageDigest digest = newSha256();
+        CRC32 crc = new CRC32();
+        long size = 0;
+
+        byte[] buffer = new byte[CHUNK_BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+            crc.update(buffer, 0, read);
+            out.write(buffer, 0, read);
+            size += read;
+        }
+
+        return new StoredFile(storedFilename, size, HexFormat.of().formatHex(digest.digest()), crc.getValue());
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private Path stagingPath(String filename) {
+        return uploadDir.resolve(filename).normalize();
+    }
+
+    private Path partialPath(String storedFilename) {
+        return stagingPath(storedFilename + PARTIAL_SUFFIX);
+    }
+}
@@ -0,0 +1,172 @@
+package com.shareline.service;
+
+import com.shareline.entity.File;
+import com.shareline.repository.FileRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Moves files stored before deduplication, which sit in one directory per user
+ * (userId/uuid.ext), into the content-addressed blobs/ab/cd/&lt;sha256&gt; fan-out, without
+ * downtime:
+ * <ul>
+ *     <li>Each file is copied to staging and hashed without holding a database connection, then
+ *     adopted by its row in a short transaction; the old copy is removed after commit</li>
+ *     <li>Downloads keep working throughout, since a row read before the switch is looked up
+ *     again when its old location is gone</li>
+ *     <li>Progress lives in the rows themselves (blob_hash IS NULL), so an interrupted run just
+ *     resumes with the next one</li>
+ *     <li>Files are processed by a pool of workers; row locks make it safe for several nodes to
+ *     run at once</li>
+ * </ul>
+ * Identical legacy files end up sharing one blob, like any other upload.
+ */
+@Component
+public class LayoutMigrationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LayoutMigrationService.class);
+
+    private enum Outcome {
+        MOVED, SKIPPED, MISSING, FAILED
+    }
+
+    private final FileRepository fileRepository;
+    private final FileService fileService;
+    private final FileStorageService fileStorageService;
+    private final boolean enabled;
+    private final int batchSize;
+    private final ExecutorService executor;
+
+    private volatile MigrationResult lastResult;
+
+    public LayoutMigrationService(
+            FileRepository fileRepository,
+            FileService fileService,
+            FileStorageService fileStorageService,
+            @Value("${shareline.layout-migration.enabled:false}") boolean enabled,
+            @Value("${shareline.layout-migration.workers:4}") int workers,
+            @Value("${shareline.layout-migration.batch-size:200}") int batchSize) {
+        this.fileRepository = fileRepository;
+        this.fileService = fileService;
+        this.fileStorageService = fileStorageService;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(workers, task -> {
+            Thread thread = new Thread(task, "layout-migration-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${shareline.layout-migration.interval-ms:600000}",
+            initialDelayString = "${shareline.layout-migration.initial-delay-ms:60000}")
+    public void migrate() {
+        if (!enabled) {
+            return;
+        }
+        long started = System.nanoTime();
+        LocalDateTime now = LocalDateTime.now();
+        int[] counts = new int[Outcome.values().length];
+        long afterId = 0;
+
+        try {
+            List<Long> ids;
+            while (!(ids = fileRepository.findLegacyIdsAfter(afterId, batchSize)).isEmpty()) {
+                List<Future<Outcome>> results = new ArrayList<>(ids.size());
+                for (Long id : ids) {
+                    results.add(executor.submit(() -> migrateFile(id)));
+                }
+                for (Future<Outcome> result : results) {
+                    counts[result.get().ordinal()]++;
+                }
+                afterId = ids.get(ids.size() - 1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.warn("Layout migration stopped: {}", e.getCause().toString());
+        }
+
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+        lastResult = new MigrationResult(now, counts[Outcome.MOVED.ordinal()], counts[Outcome.SKIPPED.ordinal()],
+                counts[Outcome.MISSING.ordinal()], counts[Outcome.FAILED.ordinal()], elapsedMs);
+        if (lastResult.moved() + lastResult.missing() + lastResult.failed() > 0) {
+            logger.info("Layout migration moved {} files ({} skipped, {} missing, {} failed), took {} ms",
+                    lastResult.moved(), lastResult.skipped(), lastResult.missing(), lastResult.failed(), elapsedMs);
+        } else {
+            logger.debug("Layout migration found nothing to move, took {} ms", elapsedMs);
+        }
+    }
+
+    private Outcome migrateFile(Long id) {
+        File file = fileRepository.findById(id).orElse(null);
+        if (file == null || file.getBlobHash() != null) {
+            return Outcome.SKIPPED;
+        }
+        String legacyKey = file.getFilename();
+
+        StoredFile staged;
+        try (InputStream in = fileStorageService.open(legacyKey)) {
+            staged = fileStorageService.storeStream(in);
+        } catch (NoSuchFileException e) {
+            logger.warn("Content of file {} is missing at {}", id, legacyKey);
+            return Outcome.MISSING;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not stage file {} from {}: {}", id, legacyKey, e.toString());
+            return Outcome.FAILED;
+        }
+
+        try {
+            if (staged.size() != file.getFileSize()) {
+                logger.warn("File {} at {} is {} bytes, expected {}; left in place",
+                        id, legacyKey, staged.size(), file.getFileSize());
+                fileStorageService.discard(staged);
+                return Outcome.FAILED;
+            }
+            if (fileService.adoptLegacyFile(id, legacyKey, staged)) {
+                return Outcome.MOVED;
+            }
+            fileStorageService.discard(staged);
+            return Outcome.SKIPPED;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not migrate file {} from {}: {}", id, legacyKey, e.toString());
+            try {
+                fileStorageService.discard(staged);
+            } catch (IOException ignored) {
+                // Only leaves an unreferenced file in staging
+            }
+            return Outcome.FAILED;
+        }
+    }
+
+    public MigrationResult getLastResult() {
+        return lastResult;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public record MigrationResult(LocalDateTime startedAt, int moved, int skipped, int missing, int failed,
+                                  long elapsedMs) {
+    }
+}
@@ -0,0 +1,9 @@
+package com.shareline.service;
+
+/**
+ * An upload whose bytes have been moved into the blob store but whose row isn't written yet.
+ * {@code promoted} is true if moving them created the blob's object, which then has to be removed
+ * again should the upload not be persisted.
+ */
+public record PendingUpload(StoredFile stored, String originalFilename, boolean promoted) {
+}
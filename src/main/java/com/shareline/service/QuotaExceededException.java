@@ -0,0 +1,18 @@
+package com.shareline.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * An upload would take the user past their storage quota.
+ */
+@ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+public class QuotaExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public QuotaExceededException(long requested, long remaining) {
+        super("Storage quota exceeded: " + requested + " bytes requested, " + Math.max(remaining, 0)
+                + " bytes available");
+    }
+}
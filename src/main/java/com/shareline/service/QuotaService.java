@@ -0,0 +1,119 @@
+package com.shareline.service;
+
+import com.shareline.entity.User;
+import com.shareline.repository.StorageUsage;
+import com.shareline.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Per-user storage quotas, enforced against a usage counter on the users row.
+ * <ul>
+ *     <li>Before any bytes are read, the declared size is checked against the counter, so
+ *     over-quota uploads are refused without spending bandwidth or disk</li>
+ *     <li>When the file row is inserted, the counter is raised by a single conditional UPDATE in the
+ *     same transaction, which is what actually enforces the quota under concurrent uploads</li>
+ *     <li>Deletes lower it in the delete's transaction; {@link StorageUsageReconciler} corrects
+ *     any drift</li>
+ * </ul>
+ */
+@Service
+public class QuotaService {
+
+    private final UserRepository userRepository;
+    private final long defaultQuota;
+
+    public QuotaService(UserRepository userRepository,
+                        @Value("${shareline.quota.default-bytes:10737418240}") long defaultQuota) {
+        this.userRepository = userRepository;
+        this.defaultQuota = defaultQuota;
+    }
+
+    /**
+     * Bytes the user can still upload, or {@link Long#MAX_VALUE} if they have no quota.
+     */
+    public long remaining(User user) {
+        StorageUsage usage = userRepository.findStorageUsage(user.getId(), defaultQuota)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+        return usage.getQuota() <= 0 ? Long.MAX_VALUE : usage.getQuota() - usage.getUsed();
+    }
+
+    /**
+     * Early check of a declared upload size; {@link #reserve} still has the final word.
+     */
+    public void checkAvailable(User user, long bytes) {
+        long remaining = remaining(user);
+        if (bytes > remaining) {
+            throw new QuotaExceededException(bytes, remaining);
+        }
+    }
+
+    /**
+     * Wraps an upload body so it is refused as soon as it outgrows the user's remaining quota. A
+     * declared length (-1 if unknown) that is already too large is refused before reading anything.
+     */
+    public InputStream limit(InputStream in, User user, long declaredLength) {
+        long remaining = remaining(user);
+        if (declaredLength > remaining) {
+            throw new QuotaExceededException(declaredLength, remaining);
+        }
+        return remaining == Long.MAX_VALUE ? in : new QuotaLimitedInputStream(in, remaining);
+    }
+
+    /**
+     * Adds the bytes to the user's usage, failing if that would exceed the quota. The user's row
+     * stays locked until the surrounding transaction ends, so call this just before the insert.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void reserve(User user, long bytes) {
+        if (userRepository.reserveStorage(user.getId(), bytes, defaultQuota) == 0) {
+            throw new QuotaExceededException(bytes, remaining(user));
+        }
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void release(Long userId, long bytes) {
+        userRepository.releaseStorage(userId, bytes);
+    }
+
+    private static final class QuotaLimitedInputStream extends FilterInputStream {
+        private final long limit;
+        private long read;
+
+        QuotaLimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        private void count(long n) {
+            read += n;
+            if (read > limit) {
+                throw new QuotaExceededException(read, limit);
+            }
+        }
+    }
+}
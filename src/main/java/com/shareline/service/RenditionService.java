@@ -0,0 +1,313 @@
+package com.shareline.service;
+
+import com.shareline.entity.File;
+import jakarta.annotation.PreDestroy;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders small JPEG previews of uploads in the background: downscaled images, and the first page
+ * of PDFs. Renditions depend only on the content, so they are keyed by its SHA-256 and kept once
+ * per blob under derived/ab/cd/&lt;sha256&gt;/.
+ * <p>
+ * New uploads are rendered by the post-upload job queue ({@link FileProcessingService}). A
+ * rendition found missing later is produced on a fixed pool of workers fed by a bounded queue;
+ * a full queue sheds the job instead of growing without limit, and it is queued again the next
+ * time the rendition is asked for.
+ */
+@Service
+public class RenditionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RenditionService.class);
+
+    private static final String PDF_MIME_TYPE = "application/pdf";
+    private static final String FAILED_MARKER = "failed";
+    private static final float JPEG_QUALITY = 0.82f;
+
+    public enum Rendition {
+        SMALL(320),
+        LARGE(1280);
+
+        private final int maxDimension;
+
+        Rendition(int maxDimension) {
+            this.maxDimension = maxDimension;
+        }
+
+        String fileName() {
+            return name().toLowerCase(Locale.ROOT) + ".jpg";
+        }
+
+        public static Rendition fromParam(String value) {
+            try {
+                return valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown rendition size: " + value);
+            }
+        }
+    }
+
+    public enum State {
+        READY,
+        PENDING,
+        UNAVAILABLE
+    }
+
+    private final FileStorageService fileStorageService;
+    private final long maxSourceSize;
+    private final ThreadPoolExecutor executor;
+    // Content currently queued or rendering, so repeated requests don't queue duplicates
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    public RenditionService(
+            FileStorageService fileStorageService,
+            @Value("${shareline.renditions.workers:2}") int workers,
+            @Value("${shareline.renditions.queue-capacity:64}") int queueCapacity,
+            @Value("${shareline.renditions.max-source-size:209715200}") long maxSourceSize) {
+        this.fileStorageService = fileStorageService;
+        this.maxSourceSize = maxSourceSize;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                task -> {
+                    Thread thread = new Thread(task, "rendition-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                });
+    }
+
+    public boolean isSupported(File file) {
+        if (file.getChecksum() == null || file.getMimeType() == null || file.getFileSize() > maxSourceSize) {
+            return false;
+        }
+        return PDF_MIME_TYPE.equals(file.getMimeType())
+                || ImageIO.getImageReadersByMIMEType(file.getMimeType()).hasNext();
+    }
+
+    /**
+     * Renders the previews of a file on the calling thread, for the post-upload job queue.
+     */
+    public void renderNow(File file) {
+        if (isSupported(file)) {
+            render(file.getChecksum(), file.getFilename(), file.getMimeType());
+        }
+    }
+
+    /**
+     * Whether the rendition can be served now. A missing rendition is queued (again) as a side
+     * effect, so callers only need to retry.
+     */
+    public State getState(File file, Rendition rendition) {
+        if (!isSupported(file)) {
+            return State.UNAVAILABLE;
+        }
+        String sha256 = file.getChecksum();
+        if (Files.exists(renditionPath(sha256, rendition))) {
+            return State.READY;
+        }
+        if (Files.exists(derivedPath(sha256, FAILED_MARKER))) {
+            return State.UNAVAILABLE;
+        }
+        submit(sha256, file.getFilename(), file.getMimeType());
+        return State.PENDING;
+    }
+
+    public Path getPath(File file, Rendition rendition) {
+        return renditionPath(file.getChecksum(), rendition);
+    }
+
+    private void submit(String sha256, String sourceKey, String mimeType) {
+        if (!inFlight.add(sha256)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    render(sha256, sourceKey, mimeType);
+                } finally {
+                    inFlight.remove(sha256);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(sha256);
+            logger.debug("Rendition queue full, deferring {}", sha256);
+        }
+    }
+
+    private void render(String sha256, String sourceKey, String mimeType) {
+        if (allRenditionsExist(sha256)) {
+            return;
+        }
+        long started = System.nanoTime();
+        try {
+            BufferedImage image = fileStorageService.withLocalCopy(sourceKey, source -> PDF_MIME_TYPE.equals(mimeType)
+                    ? renderFirstPage(source, Rendition.LARGE.maxDimension)
+                    : readImage(source, Rendition.LARGE.maxDimension));
+            // The small rendition is scaled from the large one rather than the source
+            BufferedImage large = scale(image, Rendition.LARGE.maxDimension);
+            writeJpeg(large, renditionPath(sha256, Rendition.LARGE));
+            writeJpeg(scale(large, Rendition.SMALL.maxDimension), renditionPath(sha256, Rendition.SMALL));
+            logger.debug("Rendered previews of {} in {} ms", sha256, (System.nanoTime() - started) / 1_000_000);
+        } catch (Exception e) {
+            logger.warn("Could not render preview of {}: {}", sha256, e.toString());
+            markFailed(sha256);
+        }
+    }
+
+    private boolean allRenditionsExist(String sha256) {
+        for (Rendition rendition : Rendition.values()) {
+            if (!Files.exists(renditionPath(sha256, rendition))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes an image, letting the reader skip pixels when the source is much larger than
+     * needed so a huge photo never has to be held in memory at full resolution.
+     */
+    private static BufferedImage readImage(Path source, int targetDimension) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(source.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IOException("No image reader for content");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int longestSide = Math.max(reader.getWidth(0), reader.getHeight(0));
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(1, longestSide / (targetDimension * 2));
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage renderFirstPage(Path source, int targetDimension) throws IOException {
+        // Temp-file stream cache keeps large documents out of the heap
+        try (PDDocument document = Loader.loadPDF(source.toFile(), IOUtils.createTempFileOnlyStreamCache())) {
+            if (document.getNumberOfPages() == 0) {
+                throw new IOException("PDF has no pages");
+            }
+            PDRectangle box = document.getPage(0).getCropBox();
+            float longestSide = Math.max(box.getWidth(), box.getHeight());
+            float scale = longestSide > 0 ? targetDimension / longestSide : 1f;
+            return new PDFRenderer(document).renderImage(0, scale, ImageType.RGB);
+        }
+    }
+
+    /**
+     * Downscales to fit within {@code maxDimension}, halving repeatedly before the last step so
+     * bilinear filtering doesn't alias. Never upscales. The result is opaque RGB (transparency
+     * becomes white), as JPEG needs.
+     */
+    private static BufferedImage scale(BufferedImage source, int maxDimension) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        double ratio = Math.min(1.0, (double) maxDimension / Math.max(width, height));
+        int targetWidth = Math.max(1, (int) Math.round(width * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(height * ratio));
+
+        BufferedImage current = source;
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage next = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, width, height, Color.WHITE, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    /**
+     * Writes to a temporary file first, so readers only ever see complete renditions.
+     */
+    private void writeJpeg(BufferedImage image, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(temp.toFile())) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        } finally {
+            writer.dispose();
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void markFailed(String sha256) {
+        try {
+            Path marker = derivedPath(sha256, FAILED_MARKER);
+            Files.createDirectories(marker.getParent());
+            Files.write(marker, new byte[0]);
+        } catch (IOException e) {
+            logger.warn("Could not record failed rendition of {}: {}", sha256, e.getMessage());
+        }
+    }
+
+    private Path renditionPath(String sha256, Rendition rendition) {
+        return derivedPath(sha256, rendition.fileName());
+    }
+
+    private Path derivedPath(String sha256, String name) {
+        return fileStorageService.derivedPath(sha256, name);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
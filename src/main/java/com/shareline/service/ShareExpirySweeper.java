@@ -0,0 +1,74 @@
+package com.shareline.service;
+
+import com.shareline.repository.FileRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+
+/**
+ * Periodically clears share tokens whose expiry has passed, so stale tokens don't linger in the
+ * unique index. Work is done in bounded batches, each in its own short transaction, and rows are
+ * claimed with SKIP LOCKED so several nodes can sweep at once without blocking each other.
+ * Reads still check {@code File.isShareExpired}, which covers the time between sweeps.
+ */
+@Component
+public class ShareExpirySweeper {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShareExpirySweeper.class);
+
+    private final FileRepository fileRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int maxBatchesPerRun;
+
+    private volatile SweepResult lastResult;
+
+    public ShareExpirySweeper(
+            FileRepository fileRepository,
+            TransactionTemplate transactionTemplate,
+            @Value("${shareline.share-sweeper.batch-size:500}") int batchSize,
+            @Value("${shareline.share-sweeper.max-batches-per-run:100}") int maxBatchesPerRun) {
+        this.fileRepository = fileRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+    }
+
+    @Scheduled(fixedDelayString = "${shareline.share-sweeper.interval-ms:300000}",
+            initialDelayString = "${shareline.share-sweeper.initial-delay-ms:60000}")
+    public void sweep() {
+        long started = System.nanoTime();
+        LocalDateTime now = LocalDateTime.now();
+        int reaped = 0;
+        int batches = 0;
+
+        while (batches < maxBatchesPerRun) {
+            Integer cleared = transactionTemplate.execute(status -> fileRepository.clearExpiredShares(now, batchSize));
+            batches++;
+            reaped += cleared != null ? cleared : 0;
+            if (cleared == null || cleared < batchSize) {
+                break;
+            }
+        }
+
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+        lastResult = new SweepResult(now, reaped, batches, elapsedMs);
+        if (reaped > 0) {
+            logger.info("Expired-share sweep reaped {} rows in {} batches, took {} ms", reaped, batches, elapsedMs);
+        } else {
+            logger.debug("Expired-share sweep found nothing to reap, took {} ms", elapsedMs);
+        }
+    }
+
+    public SweepResult getLastResult() {
+        return lastResult;
+    }
+
+    public record SweepResult(LocalDateTime startedAt, int rowsReaped, int batches, long elapsedMs) {
+    }
+}
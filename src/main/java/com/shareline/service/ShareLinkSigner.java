@@ -0,0 +1,243 @@
+package com.shareline.service;
+
+import com.shareline.entity.File;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Stateless share links: the token carries what a download needs (file id, content hash, size,
+ * type, name, expiry and share generation), signed with HMAC-SHA256, so it is checked in memory
+ * instead of looked up. Revocation is left to {@link ShareRevocationList}.
+ * <p>
+ * Only files whose metadata can no longer change get one (see {@link #canSign}): post-upload
+ * processing has settled the content type, and the content lives at its hash address, which the
+ * storage key is derived from when the link is served.
+ * <p>
+ * Keys are configured as {@code version:base64-secret} pairs. Links are signed with the active
+ * key and verified with whichever key their version names, so keys can be rotated by adding the
+ * new one everywhere, then making it active, then removing the old one after {@code max-days}.
+ */
+@Component
+public class ShareLinkSigner {
+
+    private static final byte FORMAT = 1;
+    private static final String ALGORITHM = "HmacSHA256";
+    // Half of the HMAC-SHA256 output, as RFC 2104 allows; keeps links short
+    private static final int MAC_LENGTH = 16;
+    private static final int MIN_KEY_LENGTH = 32;
+    private static final int HASH_LENGTH = 32;
+    private static final int HAS_CRC32 = 1;
+    private static final int HAS_MIME_TYPE = 2;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final FileStorageService fileStorageService;
+    private final boolean enabled;
+    private final Map<Integer, SecretKeySpec> keys;
+    private final int activeKey;
+    private final int maxDays;
+
+    public ShareLinkSigner(
+            FileStorageService fileStorageService,
+            @Value("${shareline.share-signing.enabled:false}") boolean enabled,
+            @Value("${shareline.share-signing.keys:}") String keys,
+            @Value("${shareline.share-signing.active-key:1}") int activeKey,
+            @Value("${shareline.share-signing.max-days:30}") int maxDays) {
+        this.fileStorageService = fileStorageService;
+        this.enabled = enabled;
+        this.keys = parseKeys(keys);
+        this.activeKey = activeKey;
+        this.maxDays = maxDays;
+        if (enabled && !this.keys.containsKey(activeKey)) {
+            throw new IllegalStateException("shareline.share-signing.keys has no key for active-key " + activeKey);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Signed tokens are told apart from share_token values (UUIDs) by the separator before the MAC.
+     */
+    public static boolean isSignedToken(String token) {
+        return token != null && token.indexOf('.') > 0;
+    }
+
+    /**
+     * True if signing is on and the file is READY and stored in the content-addressed layout;
+     * other files are shared with their random token.
+     */
+    public boolean canSign(File file) {
+        return enabled
+                && file.getProcessingStatus() == File.ProcessingStatus.READY
+                && file.getBlobHash() != null
+                && file.getFilename().equals(fileStorageService.blobKey(file.getBlobHash()));
+    }
+
+    /**
+     * A link for the file as it is now, valid until its share expires or for {@code max-days},
+     * whichever comes first.
+     */
+    public String sign(File file) {
+        if (!canSign(file)) {
+            throw new IllegalArgumentException("Only ready, content-addressed files get signed share links");
+        }
+        byte[] payload = encode(file, expiryFor(file.getShareExpiresAt()));
+        return ENCODER.encodeToString(payload) + "." + ENCODER.encodeToString(mac(keys.get(activeKey), payload));
+    }
+
+    /**
+     * When a link signed now for a share expiring at {@code shareExpiresAt} (null for never) expires.
+     */
+    public LocalDateTime expiryFor(LocalDateTime shareExpiresAt) {
+        LocalDateTime latest = LocalDateTime.now().plusDays(maxDays);
+        return shareExpiresAt != null && shareExpiresAt.isBefore(latest) ? shareExpiresAt : latest;
+    }
+
+    /**
+     * The file a token was signed for, as a detached, read-only copy whose share expiry is the
+     * link's own; empty if the token is malformed, names an unknown key or doesn't verify.
+     * Expiry and revocation are left to the caller.
+     */
+    public Optional<File> verify(String token) {
+        int dot = token.indexOf('.');
+        if (dot <= 0) {
+            return Optional.empty();
+        }
+        byte[] payload;
+        byte[] signature;
+        try {
+            payload = DECODER.decode(token.substring(0, dot));
+            signature = DECODER.decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        if (payload.length < 3 || payload[0] != FORMAT) {
+            return Optional.empty();
+        }
+        SecretKeySpec key = keys.get(((payload[1] & 0xff) << 8) | (payload[2] & 0xff));
+        if (key == null || !MessageDigest.isEqual(mac(key, payload), signature)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(decode(payload));
+        } catch (IOException e) {
+            // Signed by us, so only a format change could get here
+            return Optional.empty();
+        }
+    }
+
+    private byte[] encode(File file, LocalDateTime expiresAt) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT);
+            out.writeShort(activeKey);
+            out.writeLong(file.getId());
+            out.writeInt(file.getShareGeneration());
+            out.writeLong(toEpochMilli(expiresAt));
+            out.writeLong(file.getFileSize());
+            out.writeLong(toEpochMilli(file.getCreatedAt()));
+            out.writeByte((file.getCrc32() != null ? HAS_CRC32 : 0) | (file.getMimeType() != null ? HAS_MIME_TYPE : 0));
+            // Storage key and checksum are derived from the hash, so only its bytes are sent
+            out.write(HexFormat.of().parseHex(file.getBlobHash()));
+            if (file.getCrc32() != null) {
+                out.writeInt(file.getCrc32().intValue());
+            }
+            if (file.getMimeType() != null) {
+                out.writeUTF(file.getMimeType());
+            }
+            out.writeUTF(file.getOriginalFilename());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private File decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        in.readByte();
+        in.readShort();
+        File file = new File();
+        file.setId(in.readLong());
+        file.setShareGeneration(in.readInt());
+        file.setShareExpiresAt(fromEpochMilli(in.readLong()));
+        file.setFileSize(in.readLong());
+        file.setCreatedAt(fromEpochMilli(in.readLong()));
+        int flags = in.readUnsignedByte();
+        byte[] hash = new byte[HASH_LENGTH];
+        in.readFully(hash);
+        file.setBlobHash(HexFormat.of().formatHex(hash));
+        file.setChecksum(file.getBlobHash());
+        file.setFilename(fileStorageService.blobKey(file.getBlobHash()));
+        file.setProcessingStatus(File.ProcessingStatus.READY);
+        if ((flags & HAS_CRC32) != 0) {
+            file.setCrc32(Integer.toUnsignedLong(in.readInt()));
+        }
+        if ((flags & HAS_MIME_TYPE) != 0) {
+            file.setMimeType(in.readUTF());
+        }
+        file.setOriginalFilename(in.readUTF());
+        return file;
+    }
+
+    private static byte[] mac(SecretKeySpec key, byte[] payload) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return Arrays.copyOf(mac.doFinal(payload), MAC_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 unavailable", e);
+        }
+    }
+
+    private static Map<Integer, SecretKeySpec> parseKeys(String spec) {
+        Map<Integer, SecretKeySpec> keys = new HashMap<>();
+        for (String item : spec.split(",")) {
+            if (item.isBlank()) {
+                continue;
+            }
+            String[] parts = item.trim().split(":", 2);
+            if (parts.length != 2) {
+                throw new IllegalStateException("Expected version:base64-secret in shareline.share-signing.keys");
+            }
+            int version = Integer.parseInt(parts[0].trim());
+            byte[] secret = Base64.getDecoder().decode(parts[1].trim());
+            if (version < 0 || version > 0xffff || secret.length < MIN_KEY_LENGTH) {
+                throw new IllegalStateException("Share signing key " + version
+                        + " needs a version from 0 to 65535 and at least " + MIN_KEY_LENGTH + " bytes");
+            }
+            keys.put(version, new SecretKeySpec(secret, ALGORITHM));
+        }
+        return keys;
+    }
+
+    private static long toEpochMilli(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static LocalDateTime fromEpochMilli(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+}
@@ -0,0 +1,252 @@
+package com.shareline.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process token-bucket limits for the public share endpoints, per share token, per client IP
+ * and for the whole node:
+ * <ul>
+ *     <li>Requests: a request over the limit waits for a token, and is refused with 429 only if
+ *     that wait would exceed {@code max-wait-ms}</li>
+ *     <li>Bytes: downloads are never refused for bandwidth; their writes are paced by a
+ *     {@link Throttle}, so a hot link or a scraper gets slower instead of saturating the uplink</li>
+ * </ul>
+ * Buckets for idle tokens and addresses are evicted, so memory stays bounded. Limits are per node.
+ */
+@Component
+public class ShareRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShareRateLimiter.class);
+
+    public enum Scope {
+        TOKEN, IP, GLOBAL
+    }
+
+    /**
+     * How often each scope's limits kicked in since startup.
+     */
+    public record LimitStats(long requestsDelayed, long requestsRejected, long writesDelayed, long delayNanos) {
+
+        public double delayMillis() {
+            return delayNanos / 1e6;
+        }
+    }
+
+    private final boolean enabled;
+    private final long maxWaitNanos;
+    private final Map<Scope, ScopeLimits> scopes = new EnumMap<>(Scope.class);
+
+    public ShareRateLimiter(
+            @Value("${shareline.share-limits.enabled:true}") boolean enabled,
+            @Value("${shareline.share-limits.max-wait-ms:2000}") long maxWaitMs,
+            @Value("${shareline.share-limits.max-tracked-keys:100000}") long maxTrackedKeys,
+            @Value("${shareline.share-limits.idle-seconds:600}") long idleSeconds,
+            @Value("${shareline.share-limits.token.requests-per-second:20}") double tokenRequests,
+            @Value("${shareline.share-limits.token.request-burst:40}") double tokenRequestBurst,
+            @Value("${shareline.share-limits.token.bytes-per-second:10485760}") double tokenBytes,
+            @Value("${shareline.share-limits.ip.requests-per-second:10}") double ipRequests,
+            @Value("${shareline.share-limits.ip.request-burst:30}") double ipRequestBurst,
+            @Value("${shareline.share-limits.ip.bytes-per-second:5242880}") double ipBytes,
+            @Value("${shareline.share-limits.global.requests-per-second:500}") double globalRequests,
+            @Value("${shareline.share-limits.global.request-burst:1000}") double globalRequestBurst,
+            @Value("${shareline.share-limits.global.bytes-per-second:104857600}") double globalBytes) {
+        this.enabled = enabled;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        Duration idle = Duration.ofSeconds(idleSeconds);
+        scopes.put(Scope.TOKEN, new ScopeLimits(tokenRequests, tokenRequestBurst, tokenBytes, maxTrackedKeys, idle));
+        scopes.put(Scope.IP, new ScopeLimits(ipRequests, ipRequestBurst, ipBytes, maxTrackedKeys, idle));
+        scopes.put(Scope.GLOBAL, new ScopeLimits(globalRequests, globalRequestBurst, globalBytes, 1, idle));
+    }
+
+    /**
+     * Admits one request, waiting for request tokens if needed. Share tokens get a bucket each, so
+     * only pass tokens that resolved to a share.
+     *
+     * @param shareToken the token the request is for, or null if it isn't about a single share
+     * @return the byte throttle for the response body
+     * @throws RateLimitExceededException if admission would take longer than the allowed wait
+     */
+    public Throttle admit(String shareToken, String clientIp) throws InterruptedIOException {
+        return admit(shareToken != null ? List.of(shareToken) : List.of(), clientIp);
+    }
+
+    /**
+     * {@link #admit(String, String)} for a request that serves several shares at once, such as an
+     * archive: it counts as a request against every token's limit, and its body is paced by all
+     * of their byte buckets, so wrapping a hot link in an archive doesn't get around its limits.
+     */
+    public Throttle admit(Collection<String> shareTokens, String clientIp) throws InterruptedIOException {
+        if (!enabled) {
+            return Throttle.NONE;
+        }
+        List<Scope> applicable = new ArrayList<>(shareTokens.size() + 2);
+        List<Buckets> buckets = new ArrayList<>(shareTokens.size() + 2);
+        for (String shareToken : shareTokens) {
+            applicable.add(Scope.TOKEN);
+            buckets.add(scopes.get(Scope.TOKEN).bucketsFor(shareToken));
+        }
+        applicable.add(Scope.IP);
+        buckets.add(scopes.get(Scope.IP).bucketsFor(clientIp));
+        applicable.add(Scope.GLOBAL);
+        buckets.add(scopes.get(Scope.GLOBAL).bucketsFor(""));
+
+        long wait = 0;
+        Scope limiting = null;
+        for (int i = 0; i < buckets.size(); i++) {
+            TokenBucket requests = buckets.get(i).requests();
+            long scopeWait = requests != null ? requests.reserve(1) : 0;
+            if (scopeWait > wait) {
+                wait = scopeWait;
+                limiting = applicable.get(i);
+            }
+        }
+
+        if (limiting != null) {
+            ScopeLimits limits = scopes.get(limiting);
+            if (wait > maxWaitNanos) {
+                buckets.forEach(b -> {
+                    if (b.requests() != null) {
+                        b.requests().refund(1);
+                    }
+                });
+                limits.requestsRejected.increment();
+                throw new RateLimitExceededException(TimeUnit.NANOSECONDS.toSeconds(wait) + 1);
+            }
+            limits.requestsDelayed.increment();
+            limits.delayNanos.add(wait);
+            pause(wait);
+        }
+
+        List<ByteLimit> byteLimits = new ArrayList<>(buckets.size());
+        for (int i = 0; i < buckets.size(); i++) {
+            if (buckets.get(i).bytes() != null) {
+                byteLimits.add(new ByteLimit(buckets.get(i).bytes(), scopes.get(applicable.get(i))));
+            }
+        }
+        return byteLimits.isEmpty() ? Throttle.NONE : new Throttle(byteLimits);
+    }
+
+    public Map<Scope, LimitStats> snapshot() {
+        Map<Scope, LimitStats> snapshot = new EnumMap<>(Scope.class);
+        scopes.forEach((scope, limits) -> snapshot.put(scope, new LimitStats(limits.requestsDelayed.sum(),
+                limits.requestsRejected.sum(), limits.writesDelayed.sum(), limits.delayNanos.sum())));
+        return snapshot;
+    }
+
+    @Scheduled(fixedDelayString = "${shareline.share-limits.stats-interval-ms:300000}")
+    public void logStats() {
+        StringBuilder line = new StringBuilder();
+        snapshot().forEach((scope, stats) -> {
+            if (stats.requestsDelayed() + stats.requestsRejected() + stats.writesDelayed() > 0) {
+                line.append(String.format(" %s[delayed=%d, rejected=%d, writes-delayed=%d, waited=%.0fms]",
+                        scope.name().toLowerCase(Locale.ROOT), stats.requestsDelayed(), stats.requestsRejected(),
+                        stats.writesDelayed(), stats.delayMillis()));
+            }
+        });
+        if (!line.isEmpty()) {
+            logger.info("Share rate limits:{}", line);
+        }
+    }
+
+    private static void pause(long nanos) throws InterruptedIOException {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while rate limited");
+        }
+    }
+
+    /**
+     * Paces the bytes of one response against the byte buckets of every scope the request falls
+     * under. Writes reserve from all of them and sleep for the longest wait.
+     */
+    public static final class Throttle {
+
+        public static final Throttle NONE = new Throttle(List.of());
+
+        private final List<ByteLimit> limits;
+
+        private Throttle(List<ByteLimit> limits) {
+            this.limits = limits;
+        }
+
+        public boolean isUnlimited() {
+            return limits.isEmpty();
+        }
+
+        /**
+         * Blocks until {@code bytes} more bytes may be sent.
+         */
+        public void acquire(int bytes) throws InterruptedIOException {
+            long wait = 0;
+            ByteLimit limiting = null;
+            for (ByteLimit limit : limits) {
+                long scopeWait = limit.bucket().reserve(bytes);
+                if (scopeWait > wait) {
+                    wait = scopeWait;
+                    limiting = limit;
+                }
+            }
+            if (limiting != null) {
+                limiting.scope().writesDelayed.increment();
+                limiting.scope().delayNanos.add(wait);
+                pause(wait);
+            }
+        }
+    }
+
+    private record Buckets(TokenBucket requests, TokenBucket bytes) {
+    }
+
+    private record ByteLimit(TokenBucket bucket, ScopeLimits scope) {
+    }
+
+    private static final class ScopeLimits {
+        final LongAdder requestsDelayed = new LongAdder();
+        final LongAdder requestsRejected = new LongAdder();
+        final LongAdder writesDelayed = new LongAdder();
+        final LongAdder delayNanos = new LongAdder();
+
+        private final double requestsPerSecond;
+        private final double requestBurst;
+        private final double bytesPerSecond;
+        private final Cache<String, Buckets> buckets;
+
+        ScopeLimits(double requestsPerSecond, double requestBurst, double bytesPerSecond, long maxKeys,
+                    Duration idle) {
+            this.requestsPerSecond = requestsPerSecond;
+            this.requestBurst = Math.max(1, requestBurst);
+            this.bytesPerSecond = bytesPerSecond;
+            this.buckets = Caffeine.newBuilder()
+                    .maximumSize(maxKeys)
+                    .expireAfterAccess(idle)
+                    .build();
+        }
+
+        Buckets bucketsFor(String key) {
+            // The mapping only allocates, so it's fine to run inside Cache.get
+            return buckets.get(key, k -> new Buckets(
+                    requestsPerSecond > 0 ? new TokenBucket(requestsPerSecond, requestBurst) : null,
+                    // One second's worth of burst, so a paused download can't then go at full speed
+                    bytesPerSecond > 0 ? new TokenBucket(bytesPerSecond, bytesPerSecond) : null));
+        }
+    }
+}
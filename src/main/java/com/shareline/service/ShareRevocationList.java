@@ -0,0 +1,163 @@
+package com.shareline.service;
+
+import com.shareline.entity.ShareRevocation;
+import com.shareline.repository.ShareRevocationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory copy of the {@code share_revocations} table, so signed share links are checked
+ * against revocations without a query:
+ * <ul>
+ *     <li>One entry per file whose signed links were re-issued, revoked or deleted: the lowest
+ *     share generation still honoured</li>
+ *     <li>Changes made on this node apply once they commit; other nodes pick them up on their next
+ *     refresh, so {@code refresh-ms} bounds how long another node may keep serving a revoked link</li>
+ *     <li>Entries are dropped once every link they could refuse has expired ({@code max-days})</li>
+ * </ul>
+ */
+@Component
+public class ShareRevocationList {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShareRevocationList.class);
+    // Rows are stamped when written but only visible once committed, so each refresh looks back this
+    // far; a full reload every FULL_RELOAD_INTERVAL catches anything slower than that
+    private static final Duration REFRESH_OVERLAP = Duration.ofMinutes(1);
+    private static final Duration FULL_RELOAD_INTERVAL = Duration.ofMinutes(10);
+
+    private final ShareRevocationRepository shareRevocationRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Duration retention;
+
+    private volatile Map<Long, Integer> minGenerations = new ConcurrentHashMap<>();
+    private volatile LocalDateTime newestSeen;
+    private volatile long lastFullReload;
+    private volatile boolean loaded;
+
+    public ShareRevocationList(
+            ShareRevocationRepository shareRevocationRepository,
+            TransactionTemplate transactionTemplate,
+            @Value("${shareline.share-signing.enabled:false}") boolean enabled,
+            @Value("${shareline.share-signing.max-days:30}") int maxDays) {
+        this.shareRevocationRepository = shareRevocationRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        // A day of slack for clocks that disagree
+        this.retention = Duration.ofDays(maxDays + 1L);
+    }
+
+    /**
+     * True if signed links of the file issued for {@code generation} have been revoked.
+     */
+    public boolean isRevoked(long fileId, int generation) {
+        if (!loaded) {
+            refresh();
+        }
+        Integer minGeneration = minGenerations.get(fileId);
+        return minGeneration != null && generation < minGeneration;
+    }
+
+    /**
+     * Refuses links of the file issued for a generation below {@code minGeneration}.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void revoke(Long fileId, int minGeneration) {
+        shareRevocationRepository.revoke(fileId, minGeneration);
+        afterCommit(Map.of(fileId, minGeneration));
+    }
+
+    /**
+     * {@link #revoke} for many files, each to the generation its row has been moved on to.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void revokeSuperseded(Map<Long, Integer> currentGenerations) {
+        if (currentGenerations.isEmpty()) {
+            return;
+        }
+        shareRevocationRepository.revokeOlderGenerations(currentGenerations.keySet());
+        afterCommit(Map.copyOf(currentGenerations));
+    }
+
+    /**
+     * Refuses every signed link of files about to be deleted.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void revokeDeleted(Collection<Long> fileIds) {
+        if (fileIds.isEmpty()) {
+            return;
+        }
+        shareRevocationRepository.revokeAllGenerations(fileIds);
+        Map<Long, Integer> revoked = new HashMap<>();
+        fileIds.forEach(id -> revoked.put(id, Integer.MAX_VALUE));
+        afterCommit(revoked);
+    }
+
+    public int size() {
+        return minGenerations.size();
+    }
+
+    @Scheduled(fixedDelayString = "${shareline.share-signing.revocation-refresh-ms:5000}")
+    public synchronized void refresh() {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (!loaded || now - lastFullReload > FULL_RELOAD_INTERVAL.toNanos()) {
+            transactionTemplate.executeWithoutResult(status ->
+                    shareRevocationRepository.deleteRevokedBefore(LocalDateTime.now().minus(retention)));
+            List<ShareRevocation> all = shareRevocationRepository.findAll();
+            Map<Long, Integer> reloaded = new ConcurrentHashMap<>(Math.max(16, all.size() * 2));
+            all.forEach(revocation -> reloaded.put(revocation.getFileId(), revocation.getMinGeneration()));
+            minGenerations = reloaded;
+            newestSeen = newest(all, null);
+            lastFullReload = now;
+            if (!loaded) {
+                logger.info("Loaded {} share link revocations", all.size());
+            }
+            loaded = true;
+            return;
+        }
+        LocalDateTime since = newestSeen == null ? LocalDateTime.now().minus(retention)
+                : newestSeen.minus(REFRESH_OVERLAP);
+        List<ShareRevocation> recent = shareRevocationRepository.findRevokedSince(since);
+        recent.forEach(revocation -> minGenerations.merge(revocation.getFileId(), revocation.getMinGeneration(),
+                Math::max));
+        newestSeen = newest(recent, newestSeen);
+    }
+
+    private void afterCommit(Map<Long, Integer> revoked) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                revoked.forEach((fileId, minGeneration) -> minGenerations.merge(fileId, minGeneration, Math::max));
+            }
+        });
+    }
+
+    private static LocalDateTime newest(List<ShareRevocation> revocations, LocalDateTime newestSoFar) {
+        LocalDateTime newest = newestSoFar;
+        for (ShareRevocation revocation : revocations) {
+            if (newest == null || revocation.getRevokedAt().isAfter(newest)) {
+                newest = revocation.getRevokedAt();
+            }
+        }
+        return newest;
+    }
+}
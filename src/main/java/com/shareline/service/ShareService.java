@@ -3,19 +3,56 @@ package com.shareline.service;
 import com.shareline.entity.File;
 import com.shareline.entity.User;
 import com.shareline.repository.FileRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.UUID;
 
+/**
+ * Share links in one of two forms:
+ * <ul>
+ *     <li>A random token stored on the file row and looked up through {@link ShareTokenCache}</li>
+ *     <li>With {@code shareline.share-signing.enabled}, a signed token from {@link ShareLinkSigner}
+ *     that resolves without a query, for files it {@linkplain ShareLinkSigner#canSign can sign};
+ *     the file row still gets a random token, so listings and the expiry sweeper work as before,
+ *     and both forms are revoked together</li>
+ * </ul>
+ */
 @Service
 public class ShareService {
 
     private final FileRepository fileRepository;
+    private final ShareTokenCache shareTokenCache;
+    private final ShareLinkSigner shareLinkSigner;
+    private final ShareRevocationList shareRevocationList;
+    private final int maxArchiveEntries;
+    private final Counter lookupsFound;
+    private final Counter lookupsExpired;
+    private final Counter lookupsUnknown;
+    private final Counter lookupsRevoked;
+    private final Counter lookupsMalformed;
 
-    public ShareService(FileRepository fileRepository) {
+    public ShareService(FileRepository fileRepository, ShareTokenCache shareTokenCache,
+                        ShareLinkSigner shareLinkSigner, ShareRevocationList shareRevocationList,
+                        MeterRegistry meterRegistry,
+                        @Value("${shareline.archive.max-entries:1000}") int maxArchiveEntries) {
         this.fileRepository = fileRepository;
+        this.shareTokenCache = shareTokenCache;
+        this.shareLinkSigner = shareLinkSigner;
+        this.shareRevocationList = shareRevocationList;
+        this.maxArchiveEntries = maxArchiveEntries;
+        this.lookupsFound = lookupCounter(meterRegistry, "found");
+        this.lookupsExpired = lookupCounter(meterRegistry, "expired");
+        this.lookupsUnknown = lookupCounter(meterRegistry, "unknown");
+        this.lookupsRevoked = lookupCounter(meterRegistry, "revoked");
+        this.lookupsMalformed = lookupCounter(meterRegistry, "malformed");
     }
 
     @Transactional
@@ -28,6 +65,8 @@ public class ShareService {
         }
 
         String shareToken = UUID.randomUUID().toString();
+        shareTokenCache.invalidate(file.getShareToken());
+        shareTokenCache.invalidate(shareToken);
         file.setShareToken(shareToken);
 
         if (expirationDays != null && expirationDays > 0) {
@@ -36,8 +75,12 @@ public class ShareService {
             file.setShareExpiresAt(null);
         }
 
+        // A new link replaces the old one in either form
+        if (shareLinkSigner.isEnabled() || file.getShareGeneration() > 0) {
+            supersedeSignedLinks(file);
+        }
         fileRepository.save(file);
-        return shareToken;
+        return shareLinkSigner.canSign(file) ? shareLinkSigner.sign(file) : shareToken;
     }
 
     @Transactional
@@ -49,15 +92,107 @@ public class ShareService {
             throw new RuntimeException("File not found or access denied");
         }
 
+        shareTokenCache.invalidate(file.getShareToken());
         file.setShareToken(null);
         file.setShareExpiresAt(null);
+        if (file.getShareGeneration() > 0) {
+            supersedeSignedLinks(file);
+        }
         fileRepository.save(file);
     }
 
+    /**
+     * Moves the file on to a new share generation; signed links issued before are refused from
+     * then on. Files that never had one need no revocation entry.
+     */
+    private void supersedeSignedLinks(File file) {
+        int previous = file.getShareGeneration();
+        file.setShareGeneration(previous + 1);
+        if (previous > 0) {
+            shareRevocationList.revoke(file.getId(), previous + 1);
+        }
+    }
+
+    /**
+     * Resolves a share token through {@link ShareTokenCache}. The returned file is a detached,
+     * read-only copy.
+     */
     public File getFileByShareToken(String shareToken) {
-        return fileRepository.findByShareToken(shareToken)
-                .filter(file -> !file.isShareExpired())
-                .orElseThrow(() -> new RuntimeException("Share link not found or expired"));
+        if (ShareLinkSigner.isSignedToken(shareToken)) {
+            return getFileBySignedToken(shareToken);
+        }
+        if (!isWellFormedToken(shareToken)) {
+            // Not something we ever issued; don't spend a lookup or a cache slot on it
+            lookupsMalformed.increment();
+            throw new RuntimeException("Share link not found or expired");
+        }
+        Optional<File> file = shareTokenCache.get(shareToken, fileRepository::findByShareToken);
+        if (file.isEmpty()) {
+            lookupsUnknown.increment();
+        } else if (file.get().isShareExpired()) {
+            lookupsExpired.increment();
+        } else {
+            lookupsFound.increment();
+            return file.get();
+        }
+        throw new RuntimeException("Share link not found or expired");
+    }
+
+    /**
+     * Resolves a signed token in memory: signature, expiry and the revocation list, no query.
+     */
+    private File getFileBySignedToken(String shareToken) {
+        Optional<File> file = shareLinkSigner.isEnabled() ? shareLinkSigner.verify(shareToken) : Optional.empty();
+        if (file.isEmpty()) {
+            lookupsMalformed.increment();
+        } else if (file.get().isShareExpired()) {
+            lookupsExpired.increment();
+        } else if (shareRevocationList.isRevoked(file.get().getId(), file.get().getShareGeneration())) {
+            lookupsRevoked.increment();
+        } else {
+            lookupsFound.increment();
+            return file.get();
+        }
+        throw new RuntimeException("Share link not found or expired");
+    }
+
+    /**
+     * Resolves several share tokens for a multi-file download, in the order given. Fails if any
+     * of them is unknown or expired.
+     */
+    public List<File> getFilesByShareTokens(List<String> shareTokens) {
+        return archiveTokens(shareTokens).stream().map(this::getFileByShareToken).toList();
+    }
+
+    /**
+     * The distinct tokens of a multi-file download, checked against {@code max-entries} before
+     * anything is looked up or rate limited.
+     */
+    public List<String> archiveTokens(List<String> shareTokens) {
+        List<String> distinctTokens = shareTokens.stream().filter(Objects::nonNull).distinct().toList();
+        if (distinctTokens.isEmpty()) {
+            throw new IllegalArgumentException("No share links given");
+        }
+        if (distinctTokens.size() > maxArchiveEntries) {
+            throw new IllegalArgumentException("At most " + maxArchiveEntries + " files can be downloaded at once");
+        }
+        return distinctTokens;
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("shareline.share.lookups")
+                .description("Public share token lookups by outcome")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private boolean isWellFormedToken(String shareToken) {
+        try {
+            UUID.fromString(shareToken);
+            return shareToken.length() == 36;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
     }
 }
 
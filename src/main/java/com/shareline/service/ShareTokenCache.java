@@ -0,0 +1,189 @@
+package com.shareline.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.shareline.entity.File;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Bounded, TTL-based cache of share token to file metadata, so hot public links and bots probing
+ * random tokens don't cost a database round trip each.
+ * <p>
+ * Unknown tokens are cached as negative entries with a shorter TTL. Positive entries never outlive
+ * the share's own expiry. Invalidation is local to this node, so the TTLs bound how long another
+ * node may keep serving a revoked link.
+ */
+@Component
+public class ShareTokenCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShareTokenCache.class);
+
+    // Loads run here rather than on the calling thread, see get()
+    private static final Executor LOADER = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("share-cache-load-", 0).factory());
+
+    private final AsyncCache<String, Optional<File>> cache;
+
+    public ShareTokenCache(
+            @Value("${shareline.share-cache.max-size:10000}") long maxSize,
+            @Value("${shareline.share-cache.ttl-seconds:60}") long ttlSeconds,
+            @Value("${shareline.share-cache.negative-ttl-seconds:10}") long negativeTtlSeconds) {
+        Duration ttl = Duration.ofSeconds(ttlSeconds);
+        Duration negativeTtl = Duration.ofSeconds(negativeTtlSeconds);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new ShareExpiry(ttl, negativeTtl))
+                .executor(LOADER)
+                .recordStats()
+                .buildAsync();
+    }
+
+    /**
+     * Returns the file for a token, loading it with {@code loader} on a miss. The cached copy is
+     * detached from any persistence context and must be treated as read-only.
+     */
+    public Optional<File> get(String shareToken, Function<String, Optional<File>> loader) {
+        // The pending load is in the cache before the loader runs, so concurrent misses share one
+        // query and an invalidation that lands mid-load drops it instead of being overwritten by it.
+        // The loader itself runs off the map bin lock, which would otherwise pin a virtual thread
+        // for the whole database round trip.
+        CompletableFuture<Optional<File>> pending = cache.get(shareToken, (token, executor) ->
+                CompletableFuture.supplyAsync(() -> loader.apply(token).map(ShareTokenCache::detachedCopy), executor));
+        try {
+            return pending.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Drops the token now and, inside a transaction, once more after commit, so a concurrent read
+     * cannot re-cache the row as it was before the change.
+     */
+    public void invalidate(String shareToken) {
+        if (shareToken == null) {
+            return;
+        }
+        cache.synchronous().invalidate(shareToken);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.synchronous().invalidate(shareToken);
+                }
+            });
+        }
+    }
+
+    /**
+     * {@link #invalidate} for many tokens, with a single after-commit callback.
+     */
+    public void invalidateAll(Collection<String> shareTokens) {
+        List<String> tokens = shareTokens.stream().filter(Objects::nonNull).toList();
+        if (tokens.isEmpty()) {
+            return;
+        }
+        cache.synchronous().invalidateAll(tokens);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.synchronous().invalidateAll(tokens);
+                }
+            });
+        }
+    }
+
+    public CacheStats stats() {
+        return cache.synchronous().stats();
+    }
+
+    public long size() {
+        return cache.synchronous().estimatedSize();
+    }
+
+    @Scheduled(fixedDelayString = "${shareline.share-cache.stats-interval-ms:300000}")
+    public void logStats() {
+        CacheStats stats = stats();
+        if (stats.requestCount() > 0) {
+            logger.info("Share token cache: size={}, hits={}, misses={}, hitRate={}, evictions={}",
+                    size(), stats.hitCount(), stats.missCount(),
+                    String.format("%.3f", stats.hitRate()), stats.evictionCount());
+        }
+    }
+
+    private static File detachedCopy(File file) {
+        File copy = new File();
+        copy.setId(file.getId());
+        copy.setFilename(file.getFilename());
+        copy.setOriginalFilename(file.getOriginalFilename());
+        copy.setFilePath(file.getFilePath());
+        copy.setFileSize(file.getFileSize());
+        copy.setMimeType(file.getMimeType());
+        copy.setChecksum(file.getChecksum());
+        copy.setBlobHash(file.getBlobHash());
+        copy.setCrc32(file.getCrc32());
+        copy.setShareToken(file.getShareToken());
+        copy.setShareExpiresAt(file.getShareExpiresAt());
+        copy.setShareGeneration(file.getShareGeneration());
+        copy.setProcessingStatus(file.getProcessingStatus());
+        copy.setCreatedAt(file.getCreatedAt());
+        return copy;
+    }
+
+    private static final class ShareExpiry implements Expiry<String, Optional<File>> {
+        private final long ttlNanos;
+        private final long negativeTtlNanos;
+
+        ShareExpiry(Duration ttl, Duration negativeTtl) {
+            this.ttlNanos = ttl.toNanos();
+            this.negativeTtlNanos = negativeTtl.toNanos();
+        }
+
+        @Override
+        public long expireAfterCreate(String key, Optional<File> value, long currentTime) {
+            if (value.isEmpty()) {
+                return negativeTtlNanos;
+            }
+            LocalDateTime shareExpiresAt = value.get().getShareExpiresAt();
+            if (shareExpiresAt == null) {
+                return ttlNanos;
+            }
+            long untilExpiry = Duration.between(LocalDateTime.now(), shareExpiresAt).toNanos();
+            return Math.max(0, Math.min(ttlNanos, untilExpiry));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Optional<File> value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Optional<File> value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
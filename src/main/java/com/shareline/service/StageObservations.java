@@ -0,0 +1,30 @@
+package com.shareline.service;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * Times one stage of handling a request (storing the body, sniffing its type, committing the
+ * row, ...). Every stage is recorded in the {@code shareline.stage} histogram under its
+ * {@code stage} tag and, when the request is sampled for tracing, as a child span named after
+ * the stage, so the time of a single slow upload can be broken down.
+ */
+@Component
+public class StageObservations {
+
+    private static final String METRIC_NAME = "shareline.stage";
+
+    private final ObservationRegistry registry;
+
+    public StageObservations(ObservationRegistry registry) {
+        this.registry = registry;
+    }
+
+    public <T, E extends Throwable> T observe(String stage, Observation.CheckedCallable<T, E> work) throws E {
+        return Observation.createNotStarted(METRIC_NAME, registry)
+                .contextualName(stage)
+                .lowCardinalityKeyValue("stage", stage)
+                .observeChecked(work);
+    }
+}
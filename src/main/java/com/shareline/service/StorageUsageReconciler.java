@@ -0,0 +1,87 @@
+package com.shareline.service;
+
+import com.shareline.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Periodically recomputes every user's storage usage from the files table and fixes counters that
+ * have drifted, e.g. after rows were changed by hand. Users are handled in batches, each in its own
+ * short transaction; the batch's user rows are locked before their files are summed, so an upload
+ * or delete for one of them either commits first and is counted, or waits and applies on top.
+ */
+@Component
+public class StorageUsageReconciler {
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageUsageReconciler.class);
+
+    private final UserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+
+    private volatile ReconcileResult lastResult;
+
+    public StorageUsageReconciler(
+            UserRepository userRepository,
+            TransactionTemplate transactionTemplate,
+            @Value("${shareline.quota.reconcile-batch-size:500}") int batchSize) {
+        this.userRepository = userRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${shareline.quota.reconcile-interval-ms:3600000}",
+            initialDelayString = "${shareline.quota.reconcile-initial-delay-ms:120000}")
+    public void reconcile() {
+        long started = System.nanoTime();
+        LocalDateTime now = LocalDateTime.now();
+        int users = 0;
+        int corrected = 0;
+        long afterId = 0;
+
+        while (true) {
+            long from = afterId;
+            BatchResult batch = transactionTemplate.execute(status -> {
+                List<Long> ids = userRepository.lockIdsAfter(from, batchSize);
+                if (ids.isEmpty()) {
+                    return new BatchResult(0, 0, from);
+                }
+                return new BatchResult(ids.size(), userRepository.reconcileStorageUsed(ids), ids.get(ids.size() - 1));
+            });
+            if (batch == null || batch.users() == 0) {
+                break;
+            }
+            users += batch.users();
+            corrected += batch.corrected();
+            afterId = batch.lastId();
+            if (batch.users() < batchSize) {
+                break;
+            }
+        }
+
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+        lastResult = new ReconcileResult(now, users, corrected, elapsedMs);
+        if (corrected > 0) {
+            logger.warn("Storage usage reconciliation corrected {} of {} users, took {} ms", corrected, users, elapsedMs);
+        } else {
+            logger.debug("Storage usage of {} users is consistent, took {} ms", users, elapsedMs);
+        }
+    }
+
+    public ReconcileResult getLastResult() {
+        return lastResult;
+    }
+
+    public record ReconcileResult(LocalDateTime startedAt, int usersChecked, int usersCorrected, long elapsedMs) {
+    }
+
+    private record BatchResult(int users, int corrected, long lastId) {
+    }
+}
@@ -0,0 +1,8 @@
+package com.shareline.service;
+
+/**
+ * Result of a single-pass store: where the bytes landed, how many there were, and their SHA-256
+ * and CRC-32.
+ */
+public record StoredFile(String storedFilename, long size, String sha256, long crc32) {
+}
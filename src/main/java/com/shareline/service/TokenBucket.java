@@ -0,0 +1,53 @@
+package com.shareline.service;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket that lets callers go into debt: a reservation always succeeds and returns how long
+ * the caller has to wait before using what it took. Concurrent callers queue up behind each
+ * other's debt, so the long-run rate holds without a separate wait queue.
+ */
+final class TokenBucket {
+
+    private final double tokensPerNano;
+    private final double capacity;
+    private final LongSupplier nanoClock;
+    private double tokens;
+    private long updatedAt;
+
+    TokenBucket(double tokensPerSecond, double capacity) {
+        this(tokensPerSecond, capacity, System::nanoTime);
+    }
+
+    TokenBucket(double tokensPerSecond, double capacity, LongSupplier nanoClock) {
+        this.tokensPerNano = tokensPerSecond / 1e9;
+        this.capacity = capacity;
+        this.nanoClock = nanoClock;
+        this.tokens = capacity;
+        this.updatedAt = nanoClock.getAsLong();
+    }
+
+    /**
+     * Takes {@code n} tokens.
+     *
+     * @return nanoseconds until they are actually available, 0 if they are right away
+     */
+    synchronized long reserve(long n) {
+        refill();
+        tokens -= n;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerNano);
+    }
+
+    /**
+     * Gives back tokens taken by a reservation that was not used.
+     */
+    synchronized void refund(long n) {
+        tokens = Math.min(capacity, tokens + n);
+    }
+
+    private void refill() {
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - updatedAt) * tokensPerNano);
+        updatedAt = now;
+    }
+}
@@ -0,0 +1,17 @@
+package com.shareline.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * A resumable upload session outlived its TTL; the client has to start a new one.
+ */
+@ResponseStatus(HttpStatus.GONE)
+public class UploadSessionExpiredException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UploadSessionExpiredException(String uploadId) {
+        super("Upload session expired: " + uploadId);
+    }
+}
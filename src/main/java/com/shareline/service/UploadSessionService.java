@@ -0,0 +1,190 @@
+package com.shareline.service;
+
+import com.shareline.dto.FileUploadResponse;
+import com.shareline.dto.UploadSessionResponse;
+import com.shareline.entity.File;
+import com.shareline.entity.UploadSession;
+import com.shareline.entity.User;
+import com.shareline.repository.UploadSessionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Resumable uploads: a client creates a session, PUTs fixed-size chunks (in any order, possibly in
+ * parallel) and finalizes once every chunk has been acknowledged. Chunks are written in place into
+ * the target file, and received chunk indexes are tracked in the database so a session survives
+ * client reconnects and server restarts.
+ */
+@Service
+public class UploadSessionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadSessionService.class);
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final FileStorageService fileStorageService;
+    private final FileService fileService;
+    private final QuotaService quotaService;
+    private final StageObservations stages;
+    private final int chunkSize;
+    private final long sessionTtlHours;
+
+    public UploadSessionService(
+            UploadSessionRepository uploadSessionRepository,
+            FileStorageService fileStorageService,
+            FileService fileService,
+            QuotaService quotaService,
+            StageObservations stages,
+            @Value("${shareline.upload.chunk-size:8388608}") int chunkSize,
+            @Value("${shareline.upload.session-ttl-hours:24}") long sessionTtlHours) {
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.fileStorageService = fileStorageService;
+        this.fileService = fileService;
+        this.quotaService = quotaService;
+        this.stages = stages;
+        this.chunkSize = chunkSize;
+        this.sessionTtlHours = sessionTtlHours;
+    }
+
+    @Transactional
+    public UploadSessionResponse createSession(String originalFilename, Long fileSize, User user) {
+        if (fileSize == null || fileSize < 0) {
+            throw new IllegalArgumentException("File size must be provided");
+        }
+        // Refused before any chunk is sent; completion reserves the space for real
+        quotaService.checkAvailable(user, fileSize);
+
+        UploadSession session = new UploadSession();
+        session.setId(UUID.randomUUID().toString());
+        session.setUser(user);
+        session.setOriginalFilename(originalFilename);
+        session.setStoredFilename(fileStorageService.newStoredFilename(originalFilename));
+        session.setTotalSize(fileSize);
+        session.setChunkSize(chunkSize);
+        session.setExpiresAt(LocalDateTime.now().plusHours(sessionTtlHours));
+
+        return toResponse(uploadSessionRepository.save(session), List.of());
+    }
+
+    public UploadSessionResponse getSession(String uploadId, User user) {
+        UploadSession session = getLiveSessionForUser(uploadId, user);
+        return toResponse(session, uploadSessionRepository.findReceivedChunks(uploadId));
+    }
+
+    // Not transactional: no connection is held while the chunk body streams to disk
+    public UploadSessionResponse writeChunk(String uploadId, int chunkIndex, InputStream data, User user)
+            throws IOException {
+        UploadSession session = getLiveSessionForUser(uploadId, user);
+        if (chunkIndex < 0 || chunkIndex >= session.getTotalChunks()) {
+            throw new IllegalArgumentException("Chunk index out of range: " + chunkIndex);
+        }
+
+        stages.observe("upload.chunk", () -> {
+            fileStorageService.writeChunk(
+                    session.getStoredFilename(),
+                    session.getChunkOffset(chunkIndex),
+                    session.getChunkLength(chunkIndex),
+                    data);
+            return null;
+        });
+        uploadSessionRepository.markChunkReceived(uploadId, chunkIndex);
+
+        return toResponse(session, uploadSessionRepository.findReceivedChunks(uploadId));
+    }
+
+    // Not transactional: assembling reads the whole file, and saveStoredFile keeps its transaction short
+    public FileUploadResponse completeSession(String uploadId, User user) throws IOException {
+        UploadSession session = getLiveSessionForUser(uploadId, user);
+        List<Integer> received = uploadSessionRepository.findReceivedChunks(uploadId);
+        if (session.getTotalSize() > 0 && received.size() != session.getTotalChunks()) {
+            throw new IllegalStateException("Upload incomplete: received " + received.size()
+                    + " of " + session.getTotalChunks() + " chunks");
+        }
+
+        StoredFile stored = stages.observe("upload.assemble",
+                () -> fileStorageService.completePartial(session.getStoredFilename(), session.getTotalSize()));
+        File savedFile;
+        try {
+            savedFile = fileService.saveStoredFile(stored, session.getOriginalFilename(), user);
+        } catch (IOException | RuntimeException e) {
+            // The assembled bytes are gone, so the session could never complete: end it, and the
+            // client starts over instead of retrying against chunks that no longer exist
+            try {
+                uploadSessionRepository.delete(session);
+            } catch (RuntimeException cleanup) {
+                e.addSuppressed(cleanup);
+            }
+            throw e;
+        }
+        uploadSessionRepository.delete(session);
+
+        return fileService.toUploadResponse(savedFile);
+    }
+
+    @Transactional
+    public void abortSession(String uploadId, User user) throws IOException {
+        UploadSession session = getSessionForUser(uploadId, user);
+        fileStorageService.deletePartial(session.getStoredFilename());
+        uploadSessionRepository.delete(session);
+    }
+
+    @Scheduled(fixedDelayString = "${shareline.upload.cleanup-interval-ms:3600000}")
+    @Transactional
+    public void purgeExpiredSessions() {
+        List<UploadSession> expired = uploadSessionRepository.findByExpiresAtBefore(LocalDateTime.now());
+        for (UploadSession session : expired) {
+            try {
+                fileStorageService.deletePartial(session.getStoredFilename());
+            } catch (IOException e) {
+                logger.warn("Could not delete partial upload {}: {}", session.getStoredFilename(), e.getMessage());
+            }
+            uploadSessionRepository.delete(session);
+        }
+        if (!expired.isEmpty()) {
+            logger.info("Purged {} expired upload sessions", expired.size());
+        }
+    }
+
+    private UploadSession getSessionForUser(String uploadId, User user) {
+        UploadSession session = uploadSessionRepository.findById(uploadId)
+                .orElseThrow(() -> new RuntimeException("Upload session not found"));
+        if (!session.getUser().getId().equals(user.getId())) {
+            throw new RuntimeException("Upload session not found or access denied");
+        }
+        return session;
+    }
+
+    // Expired sessions are left for purgeExpiredSessions, which may delete their data at any time
+    private UploadSession getLiveSessionForUser(String uploadId, User user) {
+        UploadSession session = getSessionForUser(uploadId, user);
+        if (session.getExpiresAt().isBefore(LocalDateTime.now())) {
+            throw new UploadSessionExpiredException(uploadId);
+        }
+        return session;
+    }
+
+    private UploadSessionResponse toResponse(UploadSession session, List<Integer> receivedChunks) {
+        long bytesReceived = receivedChunks.stream()
+                .mapToLong(session::getChunkLength)
+                .sum();
+        return new UploadSessionResponse(
+                session.getId(),
+                session.getOriginalFilename(),
+                session.getTotalSize(),
+                session.getChunkSize(),
+                session.getTotalChunks(),
+                receivedChunks,
+                bytesReceived,
+                session.getExpiresAt()
+        );
+    }
+}
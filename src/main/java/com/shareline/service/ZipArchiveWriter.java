@@ -0,0 +1,493 @@
+package com.shareline.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a ZIP archive of stored files straight to an output stream, one entry after another, so
+ * nothing but a couple of fixed-size buffers is held in memory however large the archive gets.
+ * <p>
+ * Compressible entries are deflated and followed by a data descriptor. Everything else is stored
+ * as is, with the CRC-32 recorded at upload time in the local header. The output depends only on
+ * the entries, so the same archive can be generated again byte for byte. When every entry is
+ * stored the layout can be computed without reading any content: {@link #length()} is known up
+ * front and {@link #write(OutputStream, long, long)} can serve any byte range, skipping the
+ * content before it instead of reading it. ZIP64 records are added only where sizes or offsets
+ * need them.
+ * <p>
+ * Entries with a local path are copied with {@link FileChannel#transferTo}; the others are read
+ * through their {@link Source}, which only ever asks for the part of the content that is sent.
+ */
+public class ZipArchiveWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long ZIP64_THRESHOLD = 0xFFFFFFFFL;
+    // Larger compressible entries are stored, so deflated entries never need ZIP64 sizes
+    private static final long MAX_DEFLATE_SIZE = 0xF0000000L;
+    private static final int MAX_ENTRIES_WITHOUT_ZIP64 = 0xFFFF;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int ZIP64_END_SIZE = 56;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    private static final int VERSION_DEFAULT = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+
+    private final List<Entry> entries;
+
+    public ZipArchiveWriter(List<Entry> entries) {
+        this.entries = List.copyOf(entries);
+    }
+
+    /**
+     * True if no entry is deflated, so the archive's length and the position of every byte are
+     * known without reading the content.
+     */
+    public boolean isSeekable() {
+        return entries.stream().noneMatch(Entry::isDeflated);
+    }
+
+    public long length() throws IOException {
+        requireSeekable();
+        // Nothing falls inside the window, so only the layout is computed
+        Sink sink = new Sink(OutputStream.nullOutputStream(), Long.MAX_VALUE, Long.MAX_VALUE);
+        writeTo(sink);
+        return sink.position;
+    }
+
+    public void write(OutputStream out) throws IOException {
+        writeTo(new Sink(out, 0, Long.MAX_VALUE));
+    }
+
+    /**
+     * Writes only bytes {@code start} to {@code end} (inclusive) of the archive.
+     */
+    public void write(OutputStream out, long start, long end) throws IOException {
+        requireSeekable();
+        writeTo(new Sink(out, start, end + 1));
+    }
+
+    private void requireSeekable() {
+        if (!isSeekable()) {
+            throw new IllegalStateException("Archive layout is only known in advance when no entry is deflated");
+        }
+    }
+
+    private void writeTo(Sink sink) throws IOException {
+        List<CentralRecord> records = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            if (sink.isDone()) {
+                return;
+            }
+            records.add(entry.isDeflated() ? writeDeflated(entry, sink) : writeStored(entry, sink));
+        }
+        writeCentralDirectory(records, sink);
+    }
+
+    private CentralRecord writeStored(Entry entry, Sink sink) throws IOException {
+        long offset = sink.position;
+        byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+        boolean zip64 = entry.size >= ZIP64_THRESHOLD;
+
+        int headerLength = LOCAL_HEADER_SIZE + name.length + (zip64 ? 20 : 0);
+        if (sink.isSkipped(headerLength)) {
+            sink.skip(headerLength);
+        } else {
+            ByteBuffer header = littleEndian(headerLength);
+            header.putInt(LOCAL_HEADER_SIGNATURE);
+            header.putShort((short) (zip64 ? VERSION_ZIP64 : VERSION_DEFAULT));
+            header.putShort((short) FLAG_UTF8);
+            header.putShort((short) METHOD_STORED);
+            putDosDateTime(header, entry.modified);
+            header.putInt((int) entry.crc32());
+            header.putInt((int) (zip64 ? ZIP64_THRESHOLD : entry.size));
+            header.putInt((int) (zip64 ? ZIP64_THRESHOLD : entry.size));
+            header.putShort((short) name.length);
+            header.putShort((short) (zip64 ? 20 : 0));
+            header.put(name);
+            if (zip64) {
+                header.putShort((short) ZIP64_EXTRA_ID);
+                header.putShort((short) 16);
+                header.putLong(entry.size);
+                header.putLong(entry.size);
+            }
+            sink.write(header.array());
+        }
+
+        if (sink.isSkipped(entry.size)) {
+            sink.skip(entry.size);
+        } else {
+            if (entry.path != null) {
+                try (FileChannel channel = FileChannel.open(entry.path, StandardOpenOption.READ)) {
+                    sink.transferFrom(channel, entry.size);
+                }
+            } else {
+                sink.copyFrom(entry.source, entry.size);
+            }
+        }
+        return new CentralRecord(entry, name, METHOD_STORED, FLAG_UTF8, offset, null, entry.size);
+    }
+
+    private CentralRecord writeDeflated(Entry entry, Sink sink) throws IOException {
+        long offset = sink.position;
+        byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+        int flags = FLAG_UTF8 | FLAG_DATA_DESCRIPTOR;
+
+        // CRC and sizes follow the data in the descriptor
+        ByteBuffer header = littleEndian(LOCAL_HEADER_SIZE + name.length);
+        header.putInt(LOCAL_HEADER_SIGNATURE);
+        header.putShort((short) VERSION_DEFAULT);
+        header.putShort((short) flags);
+        header.putShort((short) METHOD_DEFLATED);
+        putDosDateTime(header, entry.modified);
+        header.putInt(0);
+        header.putInt(0);
+        header.putInt(0);
+        header.putShort((short) name.length);
+        header.putShort((short) 0);
+        header.put(name);
+        sink.write(header.array());
+
+        long dataStart = sink.position;
+        CRC32 crc = new CRC32();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try (InputStream in = entry.open()) {
+            DeflaterOutputStream out = new DeflaterOutputStream(sink, deflater, BUFFER_SIZE);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long total = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+                total += read;
+            }
+            out.finish();
+            if (total != entry.size) {
+                throw new IOException("Size of " + entry.name + " changed while archiving");
+            }
+        } finally {
+            deflater.end();
+        }
+        long compressedSize = sink.position - dataStart;
+
+        ByteBuffer descriptor = littleEndian(16);
+        descriptor.putInt(DATA_DESCRIPTOR_SIGNATURE);
+        descriptor.putInt((int) crc.getValue());
+        descriptor.putInt((int) compressedSize);
+        descriptor.putInt((int) entry.size);
+        sink.write(descriptor.array());
+
+        return new CentralRecord(entry, name, METHOD_DEFLATED, flags, offset, crc.getValue(), compressedSize);
+    }
+
+    private void writeCentralDirectory(List<CentralRecord> records, Sink sink) throws IOException {
+        long directoryOffset = sink.position;
+        for (CentralRecord record : records) {
+            int length = record.length();
+            if (sink.isSkipped(length)) {
+                sink.skip(length);
+            } else {
+                sink.write(record.header());
+            }
+        }
+        long directorySize = sink.position - directoryOffset;
+
+        boolean zip64 = records.size() >= MAX_ENTRIES_WITHOUT_ZIP64
+                || directoryOffset >= ZIP64_THRESHOLD
+                || directorySize >= ZIP64_THRESHOLD;
+        if (zip64) {
+            long zip64EndOffset = sink.position;
+            ByteBuffer end64 = littleEndian(ZIP64_END_SIZE + 20);
+            end64.putInt(ZIP64_END_SIGNATURE);
+            end64.putLong(ZIP64_END_SIZE - 12);
+            end64.putShort((short) VERSION_ZIP64);
+            end64.putShort((short) VERSION_ZIP64);
+            end64.putInt(0);
+            end64.putInt(0);
+            end64.putLong(records.size());
+            end64.putLong(records.size());
+            end64.putLong(directorySize);
+            end64.putLong(directoryOffset);
+
+            end64.putInt(ZIP64_LOCATOR_SIGNATURE);
+            end64.putInt(0);
+            end64.putLong(zip64EndOffset);
+            end64.putInt(1);
+            sink.write(end64.array());
+        }
+
+        ByteBuffer end = littleEndian(22);
+        end.putInt(END_SIGNATURE);
+        end.putShort((short) 0);
+        end.putShort((short) 0);
+        end.putShort((short) Math.min(records.size(), MAX_ENTRIES_WITHOUT_ZIP64));
+        end.putShort((short) Math.min(records.size(), MAX_ENTRIES_WITHOUT_ZIP64));
+        end.putInt((int) Math.min(directorySize, ZIP64_THRESHOLD));
+        end.putInt((int) Math.min(directoryOffset, ZIP64_THRESHOLD));
+        end.putShort((short) 0);
+        sink.write(end.array());
+    }
+
+    private static ByteBuffer littleEndian(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void putDosDateTime(ByteBuffer buffer, LocalDateTime time) {
+        if (time == null || time.getYear() < 1980) {
+            time = LocalDateTime.of(1980, 1, 1, 0, 0);
+        } else if (time.getYear() > 2107) {
+            time = LocalDateTime.of(2107, 12, 31, 23, 59, 58);
+        }
+        buffer.putShort((short) ((time.getHour() << 11) | (time.getMinute() << 5) | (time.getSecond() >> 1)));
+        buffer.putShort((short) (((time.getYear() - 1980) << 9) | (time.getMonthValue() << 5) | time.getDayOfMonth()));
+    }
+
+    /**
+     * Reads an entry's content from wherever it is stored.
+     */
+    @FunctionalInterface
+    public interface Source {
+        InputStream open(long offset, long length) throws IOException;
+    }
+
+    /**
+     * One file in the archive. Content without a recorded CRC-32 is read once to compute it, and
+     * only if a header that carries it is actually written.
+     */
+    public static final class Entry {
+        private final String name;
+        private final Path path;
+        private final Source source;
+        private final long size;
+        private final boolean deflate;
+        private final LocalDateTime modified;
+        private Long crc32;
+
+        /**
+         * @param path   the content on local disk, or null to read it from {@code source}
+         * @param source the content, used when there is no local path
+         */
+        public Entry(String name, Path path, Source source, long size, Long crc32, boolean compress,
+                     LocalDateTime modified) {
+            this.name = name;
+            this.path = path;
+            this.source = source;
+            this.size = size;
+            this.crc32 = crc32;
+            this.deflate = compress && size > 0 && size < MAX_DEFLATE_SIZE;
+            this.modified = modified;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isDeflated() {
+            return deflate;
+        }
+
+        long crc32() throws IOException {
+            if (crc32 == null) {
+                CRC32 crc = new CRC32();
+                try (InputStream in = open()) {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        crc.update(buffer, 0, read);
+                    }
+                }
+                crc32 = crc.getValue();
+            }
+            return crc32;
+        }
+
+        private InputStream open() throws IOException {
+            return path != null ? Files.newInputStream(path) : source.open(0, size);
+        }
+    }
+
+    private record CentralRecord(Entry entry, byte[] name, int method, int flags, long offset,
+                                 Long crc32, long compressedSize) {
+
+        private boolean usizeInZip64() {
+            return entry.size >= ZIP64_THRESHOLD;
+        }
+
+        private boolean csizeInZip64() {
+            return compressedSize >= ZIP64_THRESHOLD;
+        }
+
+        private boolean offsetInZip64() {
+            return offset >= ZIP64_THRESHOLD;
+        }
+
+        private int extraLength() {
+            int fields = (usizeInZip64() ? 1 : 0) + (csizeInZip64() ? 1 : 0) + (offsetInZip64() ? 1 : 0);
+            return fields == 0 ? 0 : 4 + 8 * fields;
+        }
+
+        int length() {
+            return CENTRAL_HEADER_SIZE + name.length + extraLength();
+        }
+
+        byte[] header() throws IOException {
+            int extraLength = extraLength();
+            ByteBuffer header = littleEndian(length());
+            header.putInt(CENTRAL_HEADER_SIGNATURE);
+            header.putShort((short) VERSION_ZIP64);
+            header.putShort((short) (extraLength > 0 ? VERSION_ZIP64 : VERSION_DEFAULT));
+            header.putShort((short) flags);
+            header.putShort((short) method);
+            putDosDateTime(header, entry.modified);
+            header.putInt((int) (crc32 != null ? crc32 : entry.crc32()));
+            header.putInt((int) (csizeInZip64() ? ZIP64_THRESHOLD : compressedSize));
+            header.putInt((int) (usizeInZip64() ? ZIP64_THRESHOLD : entry.size));
+            header.putShort((short) name.length);
+            header.putShort((short) extraLength);
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putInt(0);
+            header.putInt((int) (offsetInZip64() ? ZIP64_THRESHOLD : offset));
+            header.put(name);
+            if (extraLength > 0) {
+                header.putShort((short) ZIP64_EXTRA_ID);
+                header.putShort((short) (extraLength - 4));
+                if (usizeInZip64()) {
+                    header.putLong(entry.size);
+                }
+                if (csizeInZip64()) {
+                    header.putLong(compressedSize);
+                }
+                if (offsetInZip64()) {
+                    header.putLong(offset);
+                }
+            }
+            return header.array();
+        }
+    }
+
+    /**
+     * Tracks the position in the archive and passes through only the bytes in [start, limit).
+     */
+    private static final class Sink extends OutputStream {
+        private final OutputStream out;
+        private final long start;
+        private final long limit;
+        private long position;
+
+        Sink(OutputStream out, long start, long limit) {
+            this.out = out;
+            this.start = start;
+            this.limit = limit;
+        }
+
+        boolean isDone() {
+            return position >= limit;
+        }
+
+        /**
+         * True if the next {@code length} bytes fall entirely outside the window.
+         */
+        boolean isSkipped(long length) {
+            return position + length <= start || position >= limit;
+        }
+
+        void skip(long length) {
+            position += length;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long from = Math.max(position, start);
+            long to = Math.min(position + len, limit);
+            if (from < to) {
+                out.write(b, off + (int) (from - position), (int) (to - from));
+            }
+            position += len;
+        }
+
+        /**
+         * Sends the part of the next {@code length} bytes that falls inside the window straight
+         * from the file channel.
+         */
+        void transferFrom(FileChannel channel, long length) throws IOException {
+            long from = Math.max(0, start - position);
+            long to = Math.min(length, limit - position);
+            if (channel.size() != length) {
+                throw new IOException("Stored file size changed while archiving");
+            }
+            WritableByteChannel target = Channels.newChannel(out);
+            long offset = from;
+            while (offset < to) {
+                long sent = channel.transferTo(offset, to - offset, target);
+                if (sent <= 0) {
+                    throw new IOException("Unexpected end of file");
+                }
+                offset += sent;
+            }
+            position += length;
+        }
+
+        /**
+         * Same as {@link #transferFrom}, reading only the part inside the window from the source.
+         */
+        void copyFrom(Source source, long length) throws IOException {
+            long from = Math.max(0, start - position);
+            long to = Math.min(length, limit - position);
+            if (from < to) {
+                try (InputStream in = source.open(from, to - from)) {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    long remaining = to - from;
+                    while (remaining > 0) {
+                        int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                        if (read < 0) {
+                            throw new IOException("Unexpected end of file");
+                        }
+                        out.write(buffer, 0, read);
+                        remaining -= read;
+                    }
+                }
+            }
+            position += length;
+        }
+
+        @Override
+        public void close() {
+            // The underlying stream belongs to the caller
+        }
+    }
+}
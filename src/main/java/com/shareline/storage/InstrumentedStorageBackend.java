@@ -0,0 +1,180 @@
+package com.shareline.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the count, failures and latency of every operation on the wrapped backend. For the
+ * open operations the latency is the time to the first byte, not the time to read the stream.
+ */
+public class InstrumentedStorageBackend implements StorageBackend, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(InstrumentedStorageBackend.class);
+
+    public enum Operation {
+        STORE, OPEN, OPEN_RANGE, DELETE, EXISTS, STAT
+    }
+
+    public record OperationStats(long count, long errors, long totalNanos, long maxNanos) {
+
+        public double meanMillis() {
+            return count == 0 ? 0 : totalNanos / 1e6 / count;
+        }
+
+        public double maxMillis() {
+            return maxNanos / 1e6;
+        }
+    }
+
+    private final StorageBackend delegate;
+    private final Map<Operation, Counters> counters = new EnumMap<>(Operation.class);
+
+    public InstrumentedStorageBackend(StorageBackend delegate) {
+        this.delegate = delegate;
+        for (Operation operation : Operation.values()) {
+            counters.put(operation, new Counters());
+        }
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public void store(String key, InputStream in, long length) throws IOException {
+        timed(Operation.STORE, () -> {
+            delegate.store(key, in, length);
+            return null;
+        });
+    }
+
+    @Override
+    public void storeFile(String key, Path source) throws IOException {
+        timed(Operation.STORE, () -> {
+            delegate.storeFile(key, source);
+            return null;
+        });
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        return timed(Operation.OPEN, () -> delegate.open(key));
+    }
+
+    @Override
+    public InputStream openRange(String key, long offset, long length) throws IOException {
+        return timed(Operation.OPEN_RANGE, () -> delegate.openRange(key, offset, length));
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        timed(Operation.DELETE, () -> {
+            delegate.delete(key);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean exists(String key) throws IOException {
+        return timed(Operation.EXISTS, () -> delegate.exists(key));
+    }
+
+    @Override
+    public Optional<StorageStat> stat(String key) throws IOException {
+        return timed(Operation.STAT, () -> delegate.stat(key));
+    }
+
+    @Override
+    public String describe(String key) {
+        return delegate.describe(key);
+    }
+
+    @Override
+    public Optional<Path> localPath(String key) {
+        return delegate.localPath(key);
+    }
+
+    /**
+     * Totals since startup, per operation.
+     */
+    public Map<Operation, OperationStats> snapshot() {
+        Map<Operation, OperationStats> snapshot = new EnumMap<>(Operation.class);
+        counters.forEach((operation, c) -> snapshot.put(operation, new OperationStats(
+                c.count.sum(), c.errors.sum(), c.totalNanos.sum(), c.maxNanos.get())));
+        return snapshot;
+    }
+
+    @Scheduled(fixedDelayString = "${shareline.storage.stats-interval-ms:300000}")
+    public void logStats() {
+        StringBuilder line = new StringBuilder();
+        snapshot().forEach((operation, stats) -> {
+            if (stats.count() > 0) {
+                line.append(String.format(" %s[n=%d, err=%d, mean=%.2fms, max=%.2fms]",
+                        operation.name().toLowerCase(Locale.ROOT), stats.count(), stats.errors(),
+                        stats.meanMillis(), stats.maxMillis()));
+            }
+        });
+        if (!line.isEmpty()) {
+            logger.info("Storage ({}):{}", getName(), line);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!(delegate instanceof AutoCloseable closeable)) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.warn("Failed to close storage ({})", getName(), e);
+        }
+    }
+
+    private <T> T timed(Operation operation, StorageCall<T> call) throws IOException {
+        long started = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = call.call();
+            failed = false;
+            return result;
+        } finally {
+            counters.get(operation).record(System.nanoTime() - started, failed);
+        }
+    }
+
+    @FunctionalInterface
+    private interface StorageCall<T> {
+        T call() throws IOException;
+    }
+
+    private static final class Counters {
+        final LongAdder count = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos, boolean failed) {
+            count.increment();
+            if (failed) {
+                errors.increment();
+            }
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+    }
+}
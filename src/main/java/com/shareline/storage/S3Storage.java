@@ -0,0 +1,280 @@
+package com.shareline.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stores objects in an S3-compatible bucket (AWS S3, MinIO, Ceph RGW, ...).
+ * <ul>
+ *     <li>Objects up to {@code partSize} go up in a single PUT</li>
+ *     <li>Larger files are sent as a multipart upload whose parts are read straight from the file
+ *     and uploaded in parallel on a shared pool, so total upload concurrency stays bounded</li>
+ *     <li>A failed multipart upload is aborted, so the bucket doesn't keep orphaned parts</li>
+ *     <li>Ranged reads map onto ranged GETs</li>
+ * </ul>
+ */
+public class S3Storage implements StorageBackend, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(S3Storage.class);
+
+    // S3 rejects multipart parts below 5MB, except the last one
+    static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    static final int MAX_PARTS = 10_000;
+    private static final String CONTENT_TYPE = "application/octet-stream";
+
+    private final S3Client s3;
+    private final String bucket;
+    private final String prefix;
+    private final long partSize;
+    private final ExecutorService partExecutor;
+
+    public S3Storage(S3Client s3, String bucket, String prefix, long partSize, int uploadParallelism) {
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.prefix = prefix == null || prefix.isEmpty() ? "" : prefix.endsWith("/") ? prefix : prefix + "/";
+        this.partSize = Math.max(partSize, MIN_PART_SIZE);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.partExecutor = Executors.newFixedThreadPool(uploadParallelism, task -> {
+            Thread thread = new Thread(task, "s3-upload-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            s3.headBucket(b -> b.bucket(bucket));
+        } catch (SdkException e) {
+            logger.warn("S3 bucket {} is not reachable yet: {}", bucket, e.getMessage());
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "s3";
+    }
+
+    @Override
+    public void store(String key, InputStream in, long length) throws IOException {
+        try {
+            if (length >= 0 && length <= partSize) {
+                s3.putObject(b -> b.bucket(bucket).key(objectKey(key)).contentLength(length).contentType(CONTENT_TYPE),
+                        RequestBody.fromInputStream(in, length));
+            } else {
+                uploadStreamInParts(objectKey(key), in);
+            }
+        } catch (SdkException e) {
+            throw new IOException("Could not store " + describe(key), e);
+        }
+    }
+
+    @Override
+    public void storeFile(String key, Path source) throws IOException {
+        long size = Files.size(source);
+        try {
+            if (size <= partSize) {
+                s3.putObject(b -> b.bucket(bucket).key(objectKey(key)).contentLength(size).contentType(CONTENT_TYPE),
+                        RequestBody.fromFile(source));
+            } else {
+                uploadFileInParts(objectKey(key), source, size);
+            }
+        } catch (SdkException e) {
+            throw new IOException("Could not store " + describe(key), e);
+        }
+        Files.deleteIfExists(source);
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        try {
+            return s3.getObject(b -> b.bucket(bucket).key(objectKey(key)));
+        } catch (NoSuchKeyException e) {
+            throw new NoSuchFileException(key);
+        } catch (SdkException e) {
+            throw new IOException("Could not read " + describe(key), e);
+        }
+    }
+
+    @Override
+    public InputStream openRange(String key, long offset, long length) throws IOException {
+        if (length <= 0) {
+            return InputStream.nullInputStream();
+        }
+        String range = "bytes=" + offset + "-" + (offset + length - 1);
+        try {
+            return s3.getObject(b -> b.bucket(bucket).key(objectKey(key)).range(range));
+        } catch (NoSuchKeyException e) {
+            throw new NoSuchFileException(key);
+        } catch (SdkException e) {
+            throw new IOException("Could not read " + describe(key), e);
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        try {
+            s3.deleteObject(b -> b.bucket(bucket).key(objectKey(key)));
+        } catch (SdkException e) {
+            throw new IOException("Could not delete " + describe(key), e);
+        }
+    }
+
+    @Override
+    public boolean exists(String key) throws IOException {
+        return stat(key).isPresent();
+    }
+
+    @Override
+    public Optional<StorageStat> stat(String key) throws IOException {
+        try {
+            HeadObjectResponse head = s3.headObject(b -> b.bucket(bucket).key(objectKey(key)));
+            return Optional.of(new StorageStat(head.contentLength(), head.lastModified()));
+        } catch (NoSuchKeyException e) {
+            return Optional.empty();
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return Optional.empty();
+            }
+            throw new IOException("Could not stat " + describe(key), e);
+        } catch (SdkException e) {
+            throw new IOException("Could not stat " + describe(key), e);
+        }
+    }
+
+    @Override
+    public String describe(String key) {
+        return "s3://" + bucket + "/" + objectKey(key);
+    }
+
+    @Override
+    public void close() {
+        partExecutor.shutdownNow();
+        s3.close();
+    }
+
+    private void uploadFileInParts(String objectKey, Path source, long size) throws IOException {
+        String uploadId = s3.createMultipartUpload(b -> b.bucket(bucket).key(objectKey).contentType(CONTENT_TYPE))
+                .uploadId();
+        long partLength = partLength(size, partSize);
+        int partCount = (int) ((size + partLength - 1) / partLength);
+        List<Future<CompletedPart>> futures = new ArrayList<>(partCount);
+        try {
+            for (int i = 0; i < partCount; i++) {
+                int partNumber = i + 1;
+                long offset = i * partLength;
+                long length = Math.min(partLength, size - offset);
+                futures.add(partExecutor.submit(() -> {
+                    RequestBody body = RequestBody.fromContentProvider(
+                            () -> openSlice(source, offset, length), length, CONTENT_TYPE);
+                    String etag = s3.uploadPart(b -> b.bucket(bucket).key(objectKey).uploadId(uploadId)
+                            .partNumber(partNumber).contentLength(length), body).eTag();
+                    return CompletedPart.builder().partNumber(partNumber).eTag(etag).build();
+                }));
+            }
+            List<CompletedPart> parts = new ArrayList<>(partCount);
+            for (Future<CompletedPart> future : futures) {
+                parts.add(future.get());
+            }
+            complete(objectKey, uploadId, parts);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort(objectKey, uploadId, futures);
+            throw new IOException("Interrupted while uploading " + objectKey, e);
+        } catch (ExecutionException e) {
+            abort(objectKey, uploadId, futures);
+            throw new IOException("Could not upload part of " + objectKey, e.getCause());
+        } catch (RuntimeException e) {
+            abort(objectKey, uploadId, futures);
+            throw e;
+        }
+    }
+
+    /**
+     * Streams of unknown length can't be sliced in parallel: parts are buffered and sent in turn.
+     */
+    private void uploadStreamInParts(String objectKey, InputStream in) throws IOException {
+        String uploadId = s3.createMultipartUpload(b -> b.bucket(bucket).key(objectKey).contentType(CONTENT_TYPE))
+                .uploadId();
+        try {
+            List<CompletedPart> parts = new ArrayList<>();
+            byte[] buffer = new byte[(int) Math.min(partSize, Integer.MAX_VALUE - 8)];
+            int filled;
+            while ((filled = in.readNBytes(buffer, 0, buffer.length)) > 0 || parts.isEmpty()) {
+                int partNumber = parts.size() + 1;
+                int length = filled;
+                String etag = s3.uploadPart(b -> b.bucket(bucket).key(objectKey).uploadId(uploadId)
+                        .partNumber(partNumber).contentLength((long) length),
+                        RequestBody.fromInputStream(new ByteArrayInputStream(buffer, 0, length), length))
+                        .eTag();
+                parts.add(CompletedPart.builder().partNumber(partNumber).eTag(etag).build());
+                if (filled < buffer.length) {
+                    break;
+                }
+            }
+            complete(objectKey, uploadId, parts);
+        } catch (IOException | RuntimeException e) {
+            abort(objectKey, uploadId, List.of());
+            throw e;
+        }
+    }
+
+    private void complete(String objectKey, String uploadId, List<CompletedPart> parts) {
+        s3.completeMultipartUpload(b -> b.bucket(bucket).key(objectKey).uploadId(uploadId)
+                .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build()));
+    }
+
+    private void abort(String objectKey, String uploadId, List<Future<CompletedPart>> futures) {
+        futures.forEach(future -> future.cancel(true));
+        try {
+            s3.abortMultipartUpload(b -> b.bucket(bucket).key(objectKey).uploadId(uploadId));
+        } catch (SdkException e) {
+            logger.warn("Could not abort multipart upload {} of {}: {}", uploadId, objectKey, e.getMessage());
+        }
+    }
+
+    /**
+     * Length of every part but the last when uploading {@code size} bytes in parts. Very large
+     * files get larger parts rather than more of them, so they stay within S3's 10,000 parts.
+     */
+    static long partLength(long size, long partSize) {
+        return Math.max(partSize, (size + MAX_PARTS - 1) / MAX_PARTS);
+    }
+
+    private static InputStream openSlice(Path source, long offset, long length) {
+        try {
+            FileChannel channel = FileChannel.open(source, StandardOpenOption.READ);
+            channel.position(offset);
+            return new LimitedInputStream(Channels.newInputStream(channel), length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String objectKey(String key) {
+        return prefix + key;
+    }
+}
@@ -0,0 +1,229 @@
+package com.shareline.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Stores objects as plain files spread over one or more root directories, typically one per disk.
+ * <ul>
+ *     <li>Each key is placed on a root chosen by rendezvous hashing, so adding a root only moves
+ *     the share of new writes that lands on it</li>
+ *     <li>Reads look on the key's own root first and then on the others, so objects written
+ *     before a root was added stay readable where they are</li>
+ *     <li>Writes land in a temporary sibling first and are renamed into place</li>
+ * </ul>
+ */
+public class ShardedLocalStorage implements StorageBackend {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final List<Path> roots;
+    private final long[] rootSeeds;
+
+    public ShardedLocalStorage(List<Path> roots) {
+        if (roots.isEmpty()) {
+            throw new IllegalArgumentException("At least one storage root is required");
+        }
+        this.roots = new ArrayList<>(roots.size());
+        this.rootSeeds = new long[roots.size()];
+        for (int i = 0; i < roots.size(); i++) {
+            Path root = roots.get(i).toAbsolutePath().normalize();
+            try {
+                Files.createDirectories(root);
+            } catch (IOException e) {
+                throw new RuntimeException("Could not create storage root " + root, e);
+            }
+            this.roots.add(root);
+            this.rootSeeds[i] = fnv(root.toString());
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "local";
+    }
+
+    @Override
+    public void store(String key, InputStream in, long length) throws IOException {
+        Path target = primaryPath(key);
+        Path temp = tempSibling(target);
+        try {
+            long copied;
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                copied = in.transferTo(out);
+            }
+            if (length >= 0 && copied != length) {
+                throw new IOException("Expected " + length + " bytes for " + key + ", got " + copied);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    @Override
+    public void storeFile(String key, Path source) throws IOException {
+        Path target = primaryPath(key);
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            // The root is on another filesystem than the staging area: copy, then rename into place
+            Path temp = tempSibling(target);
+            try {
+                Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException | RuntimeException copyFailure) {
+                Files.deleteIfExists(temp);
+                throw copyFailure;
+            }
+            Files.deleteIfExists(source);
+        }
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        return Files.newInputStream(existingPath(key));
+    }
+
+    @Override
+    public InputStream openRange(String key, long offset, long length) throws IOException {
+        FileChannel channel = FileChannel.open(existingPath(key), StandardOpenOption.READ);
+        try {
+            channel.position(offset);
+            return new LimitedInputStream(Channels.newInputStream(channel), length);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        for (Path root : roots) {
+            Path path = resolve(root, key);
+            if (Files.deleteIfExists(path)) {
+                // Drop the emptied parent (a user or fan-out directory), but never the root itself
+                Path parent = path.getParent();
+                if (parent != null && !parent.equals(root)) {
+                    try {
+                        Files.deleteIfExists(parent);
+                    } catch (DirectoryNotEmptyException e) {
+                        // Still in use, keep it
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return findPath(key).isPresent();
+    }
+
+    @Override
+    public Optional<StorageStat> stat(String key) throws IOException {
+        Optional<Path> path = findPath(key);
+        if (path.isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path.get(), BasicFileAttributes.class);
+            return Optional.of(new StorageStat(attributes.size(), attributes.lastModifiedTime().toInstant()));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public String describe(String key) {
+        return findPath(key).orElseGet(() -> primaryPath(key)).toString();
+    }
+
+    @Override
+    public Optional<Path> localPath(String key) {
+        return Optional.of(findPath(key).orElseGet(() -> primaryPath(key)));
+    }
+
+    /**
+     * Root the key is written to: the one with the highest hash of (root, key).
+     */
+    Path primaryPath(String key) {
+        long keyHash = fnv(key);
+        int best = 0;
+        long bestScore = Long.MIN_VALUE;
+        for (int i = 0; i < roots.size(); i++) {
+            long score = mix(keyHash ^ rootSeeds[i]);
+            if (score > bestScore) {
+                best = i;
+                bestScore = score;
+            }
+        }
+        return resolve(roots.get(best), key);
+    }
+
+    private Optional<Path> findPath(String key) {
+        Path primary = primaryPath(key);
+        if (Files.isRegularFile(primary)) {
+            return Optional.of(primary);
+        }
+        for (Path root : roots) {
+            Path path = resolve(root, key);
+            if (!path.equals(primary) && Files.isRegularFile(path)) {
+                return Optional.of(path);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private Path existingPath(String key) throws NoSuchFileException {
+        return findPath(key).orElseThrow(() -> new NoSuchFileException(key));
+    }
+
+    private static Path resolve(Path root, String key) {
+        Path path = root.resolve(key).normalize();
+        if (!path.startsWith(root) || path.equals(root)) {
+            throw new IllegalArgumentException("Invalid storage key: " + key);
+        }
+        return path;
+    }
+
+    private static Path tempSibling(Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        return target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+    }
+
+    private static long fnv(String value) {
+        long hash = FNV_OFFSET;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    // SplitMix64 finalizer, so seeds that differ in a few bits still give independent scores
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,67 @@
+package com.shareline.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Where stored content lives. Keys are relative, slash-separated names such as
+ * blobs/ab/cd/&lt;sha256&gt;, or userId/uuid.ext for uploads stored before deduplication; each
+ * backend maps them onto its own namespace.
+ * <p>
+ * Reads of a key that doesn't exist fail with {@link java.nio.file.NoSuchFileException}, whatever
+ * the backend.
+ */
+public interface StorageBackend {
+
+    /**
+     * Short name used in logs and metrics ("local", "s3").
+     */
+    String getName();
+
+    /**
+     * Stores the stream under the key, replacing any existing object.
+     *
+     * @param length exact number of bytes in the stream, or -1 if unknown
+     */
+    void store(String key, InputStream in, long length) throws IOException;
+
+    /**
+     * Stores a local file under the key. The source is consumed: it is moved or deleted once the
+     * object is stored.
+     */
+    void storeFile(String key, Path source) throws IOException;
+
+    InputStream open(String key) throws IOException;
+
+    /**
+     * Opens {@code length} bytes of the object starting at {@code offset}.
+     */
+    InputStream openRange(String key, long offset, long length) throws IOException;
+
+    /**
+     * Deletes the object if it exists.
+     */
+    void delete(String key) throws IOException;
+
+    boolean exists(String key) throws IOException;
+
+    /**
+     * Size and modification time of the object, or empty if it doesn't exist.
+     */
+    Optional<StorageStat> stat(String key) throws IOException;
+
+    /**
+     * Location of the object recorded with the file row, for operators.
+     */
+    String describe(String key);
+
+    /**
+     * Where the object is, or would be, on the local filesystem. Only local backends return a
+     * path; callers use it to serve with sendfile instead of copying through the heap.
+     */
+    default Optional<Path> localPath(String key) {
+        return Optional.empty();
+    }
+}
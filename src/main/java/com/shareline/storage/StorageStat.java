@@ -0,0 +1,6 @@
+package com.shareline.storage;
+
+import java.time.Instant;
+
+public record StorageStat(long size, Instant lastModified) {
+}
@@ -0,0 +1,19 @@
+-- PROCESSING while post-upload jobs for the file are outstanding, then READY (or FAILED if the
+-- content type could not be determined); files from before the queue are READY
+ALTER TABLE files ADD COLUMN IF NOT EXISTS processing_status VARCHAR(16) NOT NULL DEFAULT 'READY';
+
+-- Durable queue of post-upload work, claimed with FOR UPDATE SKIP LOCKED. A claimed job is leased
+-- until locked_until, so a job whose worker died is picked up again once the lease runs out
+CREATE TABLE IF NOT EXISTS file_jobs (
+    id BIGSERIAL PRIMARY KEY,
+    file_id BIGINT NOT NULL REFERENCES files(id) ON DELETE CASCADE,
+    stage VARCHAR(32) NOT NULL,
+    attempts INTEGER NOT NULL DEFAULT 0,
+    run_at TIMESTAMP NOT NULL,
+    locked_until TIMESTAMP,
+    last_error VARCHAR(1000),
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_file_jobs_run_at ON file_jobs(run_at);
+CREATE INDEX IF NOT EXISTS idx_file_jobs_file_id ON file_jobs(file_id);
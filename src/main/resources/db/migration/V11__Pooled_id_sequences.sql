@@ -0,0 +1,5 @@
+-- Ids for files and their jobs are handed out by Hibernate in blocks of 50 (allocationSize), so
+-- rows are inserted in JDBC batches instead of one round trip each for the generated key. The
+-- column defaults keep working for rows inserted by hand; they just skip ahead in steps of 50
+ALTER SEQUENCE files_id_seq INCREMENT BY 50;
+ALTER SEQUENCE file_jobs_id_seq INCREMENT BY 50;
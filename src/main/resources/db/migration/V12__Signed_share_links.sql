@@ -0,0 +1,14 @@
+-- Bumped whenever signed share links of a file must stop working (re-share, revoke, delete).
+-- A signed link carries the generation it was issued for; 0 means none was ever issued
+ALTER TABLE files ADD COLUMN IF NOT EXISTS share_generation INTEGER NOT NULL DEFAULT 0;
+
+-- Revocation list for signed share links, mirrored in memory by every node: links of file_id
+-- issued for a generation below min_generation are refused. No foreign key, since entries must
+-- outlive deleted files; rows are pruned once every link they could refuse has expired anyway
+CREATE TABLE IF NOT EXISTS share_revocations (
+    file_id BIGINT PRIMARY KEY,
+    min_generation INTEGER NOT NULL,
+    revoked_at TIMESTAMP NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_share_revocations_revoked_at ON share_revocations(revoked_at);
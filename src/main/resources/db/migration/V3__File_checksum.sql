@@ -0,0 +1,2 @@
+-- SHA-256 of the stored bytes (hex), computed while the upload streams to disk
+ALTER TABLE files ADD COLUMN IF NOT EXISTS checksum VARCHAR(64);
@@ -0,0 +1,13 @@
+-- Content-addressed, reference-counted blobs shared by identical uploads
+CREATE TABLE IF NOT EXISTS blobs (
+    sha256 VARCHAR(64) PRIMARY KEY,
+    storage_path VARCHAR(500) NOT NULL,
+    size BIGINT NOT NULL,
+    ref_count INTEGER NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Files uploaded before deduplication keep blob_hash NULL and own their file directly
+ALTER TABLE files ADD COLUMN IF NOT EXISTS blob_hash VARCHAR(64) REFERENCES blobs(sha256);
+
+CREATE INDEX IF NOT EXISTS idx_files_blob_hash ON files(blob_hash);
@@ -0,0 +1,5 @@
+-- Keyset pagination of a user's files by (created_at, id), newest first
+CREATE INDEX IF NOT EXISTS idx_files_user_created_id ON files(user_id, created_at DESC, id DESC);
+
+-- Covered by the leading column of the composite index
+DROP INDEX IF EXISTS idx_files_user_id;
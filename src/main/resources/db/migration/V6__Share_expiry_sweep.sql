@@ -0,0 +1,6 @@
+-- Only rows with a live, expiring share are of interest to the expired-share sweeper
+CREATE INDEX IF NOT EXISTS idx_files_share_expires_at ON files(share_expires_at)
+    WHERE share_token IS NOT NULL AND share_expires_at IS NOT NULL;
+
+-- Duplicates the index behind the UNIQUE constraint on share_token
+DROP INDEX IF EXISTS idx_files_share_token;
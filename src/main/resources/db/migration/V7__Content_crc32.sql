@@ -0,0 +1,4 @@
+-- CRC-32 of the stored bytes, computed alongside the SHA-256 so ZIP archives can store entries
+-- without reading them twice. NULL for content uploaded before this column existed.
+ALTER TABLE blobs ADD COLUMN IF NOT EXISTS crc32 BIGINT;
+ALTER TABLE files ADD COLUMN IF NOT EXISTS crc32 BIGINT;
@@ -0,0 +1,2 @@
+-- Files stored before deduplication, walked in id order by the layout migration
+CREATE INDEX IF NOT EXISTS idx_files_legacy ON files(id) WHERE blob_hash IS NULL;
@@ -0,0 +1,10 @@
+-- Bytes of file content each user holds, kept up to date by uploads and deletes so quota checks
+-- never have to sum the files table. Deduplicated content still counts in full for every owner.
+ALTER TABLE users ADD COLUMN IF NOT EXISTS storage_used BIGINT NOT NULL DEFAULT 0;
+
+-- Per-user override of shareline.quota.default-bytes; NULL uses the default, 0 or less is unlimited
+ALTER TABLE users ADD COLUMN IF NOT EXISTS storage_quota BIGINT;
+
+UPDATE users u SET storage_used = s.total
+FROM (SELECT user_id, SUM(file_size) AS total FROM files GROUP BY user_id) s
+WHERE u.id = s.user_id;
@@ -0,0 +1,195 @@
+package com.shareline.controller;
+
+import com.shareline.entity.File;
+import com.shareline.service.FileService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ArchiveWriterTest {
+
+    private static final long DEFLATE_MAX_BYTES = 64 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    private FileService fileService;
+    private ArchiveWriter archiveWriter;
+    private long nextId = 1;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        fileService = mock(FileService.class);
+        when(fileService.getLocalPath(any())).thenAnswer(call ->
+                Optional.of(tempDir.resolve(((File) call.getArgument(0)).getFilename())));
+        archiveWriter = new ArchiveWriter(fileService, DEFLATE_MAX_BYTES);
+    }
+
+    @Test
+    void smallArchivesDeflateTextAndAreNotResumable() throws Exception {
+        List<File> files = List.of(file("notes.txt", "text/plain", text(4_000)), file("photo.jpg", "image/jpeg", 1_000));
+
+        MockHttpServletResponse response = get(files, null, null);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getHeader(HttpHeaders.ACCEPT_RANGES)).isEqualTo("none");
+        assertThat(response.getHeader(HttpHeaders.CONTENT_LENGTH)).isNull();
+    }
+
+    @Test
+    void largeArchivesStoreTextSoTheyCanBeResumed() throws Exception {
+        List<File> files = List.of(file("notes.txt", "text/plain", text(4_000)),
+                file("video.mp4", "video/mp4", 100_000));
+
+        MockHttpServletResponse full = get(files, null, null);
+
+        assertThat(full.getStatus()).isEqualTo(200);
+        assertThat(full.getHeader(HttpHeaders.ACCEPT_RANGES)).isEqualTo("bytes");
+        byte[] body = full.getContentAsByteArray();
+        assertThat(full.getContentLengthLong()).isEqualTo(body.length);
+        assertThat(body.length).isGreaterThan(104_000);
+
+        MockHttpServletResponse resumed = get(files, "bytes=50000-", full.getHeader(HttpHeaders.ETAG));
+        assertThat(resumed.getStatus()).isEqualTo(206);
+        assertThat(resumed.getHeader(HttpHeaders.ETAG)).isEqualTo(full.getHeader(HttpHeaders.ETAG));
+        assertThat(resumed.getHeader(HttpHeaders.CONTENT_RANGE))
+                .isEqualTo("bytes 50000-" + (body.length - 1) + "/" + body.length);
+        assertThat(resumed.getContentAsByteArray()).isEqualTo(Arrays.copyOfRange(body, 50_000, body.length));
+    }
+
+    @Test
+    void staleIfRangeGetsTheWholeArchive() throws Exception {
+        List<File> files = List.of(file("video.mp4", "video/mp4", 100_000));
+
+        MockHttpServletResponse response = get(files, "bytes=100-", "\"zip-stale\"");
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsByteArray()).hasSize((int) response.getContentLengthLong());
+    }
+
+    @Test
+    void etagIsStableAndCoversEveryEntry() throws Exception {
+        File a = file("a.bin", "application/octet-stream", 1_000);
+        File b = file("b.bin", "application/octet-stream", 2_000);
+        File renamed = copy(b);
+        renamed.setOriginalFilename("c.bin");
+        File changed = file("b.bin", "application/octet-stream", 2_000);
+
+        String etag = etag(List.of(a, b));
+
+        assertThat(etag).startsWith("\"zip-").isEqualTo(etag(List.of(a, b))).isEqualTo(etag(List.of(copy(a), copy(b))));
+        assertThat(etag(List.of(b, a))).isNotEqualTo(etag);
+        assertThat(etag(List.of(a, renamed))).isNotEqualTo(etag);
+        assertThat(etag(List.of(a, changed))).isNotEqualTo(etag);
+        assertThat(etag(List.of(a))).isNotEqualTo(etag);
+    }
+
+    @Test
+    void etagReflectsWhetherEntriesAreDeflated() throws Exception {
+        File text = file("notes.txt", "text/plain", text(4_000));
+        File big = file("video.mp4", "video/mp4", 100_000);
+        String deflated = etag(List.of(text));
+
+        // With another writer the same file would be stored, which is a different archive
+        ArchiveWriter storesEverything = new ArchiveWriter(fileService, 0);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        storesEverything.write(List.of(text), "files.zip", new MockHttpServletRequest("GET", "/"), response);
+
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isNotEqualTo(deflated);
+        assertThat(etag(List.of(text, big))).isNotEqualTo(etag(List.of(text)));
+    }
+
+    @Test
+    void ifNoneMatchGivesNotModified() throws Exception {
+        List<File> files = List.of(file("a.bin", "application/octet-stream", 1_000));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, etag(files));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        archiveWriter.write(files, "files.zip", request, response);
+
+        assertThat(response.getStatus()).isEqualTo(304);
+        assertThat(response.getContentAsByteArray()).isEmpty();
+    }
+
+    private MockHttpServletResponse get(List<File> files, String range, String ifRange) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        if (range != null) {
+            request.addHeader(HttpHeaders.RANGE, range);
+        }
+        if (ifRange != null) {
+            request.addHeader(HttpHeaders.IF_RANGE, ifRange);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        archiveWriter.write(files, "files.zip", request, response);
+        return response;
+    }
+
+    private String etag(List<File> files) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("HEAD", "/");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        archiveWriter.write(files, "files.zip", request, response);
+        return response.getHeader(HttpHeaders.ETAG);
+    }
+
+    private File file(String name, String mimeType, int size) throws Exception {
+        byte[] content = new byte[size];
+        new Random(nextId).nextBytes(content);
+        return file(name, mimeType, content);
+    }
+
+    private File file(String name, String mimeType, byte[] content) throws IOException, NoSuchAlgorithmException {
+        File file = new File();
+        file.setId(nextId++);
+        file.setFilename("content-" + file.getId());
+        file.setOriginalFilename(name);
+        file.setMimeType(mimeType);
+        file.setFileSize((long) content.length);
+        file.setCreatedAt(LocalDateTime.of(2024, 5, 17, 12, 30));
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        file.setCrc32(crc.getValue());
+        file.setChecksum(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content)));
+        Files.write(tempDir.resolve(file.getFilename()), content);
+        return file;
+    }
+
+    private static File copy(File file) {
+        File copy = new File();
+        copy.setId(file.getId());
+        copy.setFilename(file.getFilename());
+        copy.setOriginalFilename(file.getOriginalFilename());
+        copy.setMimeType(file.getMimeType());
+        copy.setFileSize(file.getFileSize());
+        copy.setCreatedAt(file.getCreatedAt());
+        copy.setCrc32(file.getCrc32());
+        copy.setChecksum(file.getChecksum());
+        return copy;
+    }
+
+    private static byte[] text(int length) {
+        return "all work and no play\n".repeat(length / 21 + 1).substring(0, length).getBytes(StandardCharsets.UTF_8);
+    }
+}
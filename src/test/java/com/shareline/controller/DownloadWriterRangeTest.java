@@ -0,0 +1,84 @@
+package com.shareline.controller;
+
+import com.shareline.controller.DownloadWriter.ByteRange;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DownloadWriterRangeTest {
+
+    private static final long SIZE = 1000;
+
+    @Test
+    void parsesSingleRanges() {
+        assertThat(DownloadWriter.parseRanges("bytes=0-99", SIZE)).containsExactly(new ByteRange(0, 99));
+        assertThat(DownloadWriter.parseRanges("bytes=900-", SIZE)).containsExactly(new ByteRange(900, 999));
+        assertThat(DownloadWriter.parseRanges("bytes=-100", SIZE)).containsExactly(new ByteRange(900, 999));
+    }
+
+    @Test
+    void clampsRangesToTheFile() {
+        assertThat(DownloadWriter.parseRanges("bytes=500-5000", SIZE)).containsExactly(new ByteRange(500, 999));
+        assertThat(DownloadWriter.parseRanges("bytes=-5000", SIZE)).containsExactly(new ByteRange(0, 999));
+    }
+
+    @Test
+    void sortsAndMergesOverlappingAndAdjacentRanges() {
+        assertThat(DownloadWriter.parseRanges("bytes=500-599, 0-99, 100-199, 550-650", SIZE))
+                .containsExactly(new ByteRange(0, 199), new ByteRange(500, 650));
+    }
+
+    @Test
+    void unsatisfiableRangesGiveAnEmptyList() {
+        assertThat(DownloadWriter.parseRanges("bytes=1000-", SIZE)).isEmpty();
+        assertThat(DownloadWriter.parseRanges("bytes=-0", SIZE)).isEmpty();
+    }
+
+    @Test
+    void malformedOrExcessiveHeadersAreIgnored() {
+        assertThat(DownloadWriter.parseRanges("items=0-1", SIZE)).isNull();
+        assertThat(DownloadWriter.parseRanges("bytes=abc", SIZE)).isNull();
+        assertThat(DownloadWriter.parseRanges("bytes=x-1", SIZE)).isNull();
+        assertThat(DownloadWriter.parseRanges("bytes=50-10", SIZE)).isNull();
+        String many = IntStream.range(0, 17).mapToObj(i -> i * 10 + "-" + i * 10).collect(Collectors.joining(","));
+        assertThat(DownloadWriter.parseRanges("bytes=" + many, SIZE)).isNull();
+    }
+
+    @Test
+    void rangeLengthAndContentRange() {
+        ByteRange range = new ByteRange(100, 199);
+
+        assertThat(range.length()).isEqualTo(100);
+        assertThat(range.contentRange(SIZE)).isEqualTo("bytes 100-199/1000");
+    }
+
+    @Test
+    void ifRangeMustMatchTheCurrentValidator() {
+        String etag = "\"abc\"";
+        long lastModified = 1_700_000_000_000L;
+
+        assertThat(DownloadWriter.isRangeApplicable(request(null), etag, lastModified)).isTrue();
+        assertThat(DownloadWriter.isRangeApplicable(request("\"abc\""), etag, lastModified)).isTrue();
+        assertThat(DownloadWriter.isRangeApplicable(request("\"old\""), etag, lastModified)).isFalse();
+        // Weak validators never match
+        assertThat(DownloadWriter.isRangeApplicable(request("W/\"abc\""), etag, lastModified)).isFalse();
+        assertThat(DownloadWriter.isRangeApplicable(request("Tue, 14 Nov 2023 22:13:20 GMT"), etag, lastModified))
+                .isTrue();
+        assertThat(DownloadWriter.isRangeApplicable(request("Mon, 13 Nov 2023 22:13:20 GMT"), etag, lastModified))
+                .isFalse();
+    }
+
+    private static MockHttpServletRequest request(String ifRange) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        if (ifRange != null) {
+            request.addHeader(HttpHeaders.IF_RANGE, ifRange);
+        }
+        return request;
+    }
+}
@@ -0,0 +1,88 @@
+package com.shareline.controller;
+
+import com.shareline.entity.File;
+import com.shareline.service.BulkFileService;
+import com.shareline.service.CurrentUserService;
+import com.shareline.service.ShareRateLimiter;
+import com.shareline.service.ShareRateLimiter.Throttle;
+import com.shareline.service.ShareService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ShareControllerLimitsTest {
+
+    private static final String IP = "203.0.113.7";
+    private static final String KNOWN = "3f2b8a4e-1c0d-4e6f-9a7b-5d4c3b2a1f0e";
+    private static final String UNKNOWN = "9d1c7e55-0b3a-4f2e-8c6d-2a4b6c8d0e1f";
+
+    private ShareService shareService;
+    private ShareRateLimiter limiter;
+    private DownloadWriter downloadWriter;
+    private ArchiveWriter archiveWriter;
+    private ShareController controller;
+    private MockHttpServletRequest request;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        shareService = mock(ShareService.class);
+        limiter = mock(ShareRateLimiter.class);
+        downloadWriter = mock(DownloadWriter.class);
+        archiveWriter = mock(ArchiveWriter.class);
+        controller = new ShareController(shareService, mock(BulkFileService.class), mock(CurrentUserService.class),
+                downloadWriter, archiveWriter, limiter, "http://localhost:8080");
+        request = new MockHttpServletRequest("GET", "/api/share/x");
+        request.setRemoteAddr(IP);
+
+        File file = new File();
+        file.setId(1L);
+        when(shareService.getFileByShareToken(KNOWN)).thenReturn(file);
+        when(shareService.getFileByShareToken(UNKNOWN)).thenThrow(new RuntimeException("Share link not found or expired"));
+        when(limiter.admit(anyList(), anyString())).thenReturn(Throttle.NONE);
+    }
+
+    @Test
+    void knownTokensAreLimitedByTheirOwnBucket() throws Exception {
+        controller.downloadSharedFile(KNOWN, request, new MockHttpServletResponse());
+
+        verify(limiter).admit(List.of(KNOWN), IP);
+        verify(downloadWriter).write(any(), any(Boolean.class), any(), any());
+    }
+
+    @Test
+    void unknownTokensOnlyCountAgainstTheClient() throws Exception {
+        assertThatThrownBy(() -> controller.downloadSharedFile(UNKNOWN, request, new MockHttpServletResponse()))
+                .hasMessageContaining("not found");
+        assertThatThrownBy(() -> controller.getSharedFileInfo(UNKNOWN, request))
+                .hasMessageContaining("not found");
+
+        verify(limiter, never()).admit(List.of(UNKNOWN), IP);
+        verify(limiter, times(2)).admit(List.of(), IP);
+    }
+
+    @Test
+    void archivesWithAnUnknownTokenOnlyCountAgainstTheClient() throws Exception {
+        List<String> tokens = List.of(KNOWN, UNKNOWN);
+        when(shareService.archiveTokens(tokens)).thenReturn(tokens);
+        when(shareService.getFilesByShareTokens(tokens)).thenThrow(new RuntimeException("Share link not found or expired"));
+
+        assertThatThrownBy(() -> controller.downloadSharedArchive(tokens, request, new MockHttpServletResponse()))
+                .hasMessageContaining("not found");
+
+        verify(limiter, never()).admit(tokens, IP);
+        verify(limiter).admit(List.of(), IP);
+    }
+}
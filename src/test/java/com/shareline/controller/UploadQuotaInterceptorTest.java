@@ -0,0 +1,109 @@
+package com.shareline.controller;
+
+import com.shareline.entity.User;
+import com.shareline.service.CurrentUserService;
+import com.shareline.service.QuotaExceededException;
+import com.shareline.service.QuotaService;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+import org.springframework.security.oauth2.core.user.OAuth2User;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.longThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UploadQuotaInterceptorTest {
+
+    private static final long MB = 1024 * 1024;
+
+    private QuotaService quotaService;
+    private UploadQuotaInterceptor interceptor;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        CurrentUserService currentUserService = mock(CurrentUserService.class);
+        quotaService = mock(QuotaService.class);
+        interceptor = new UploadQuotaInterceptor(currentUserService, quotaService);
+        user = new User();
+        user.setId(7L);
+
+        OAuth2User principal = new DefaultOAuth2User(AuthorityUtils.createAuthorityList("ROLE_USER"),
+                Map.of("sub", "google-7"), "sub");
+        when(currentUserService.getCurrentUser(principal)).thenReturn(user);
+        SecurityContextHolder.getContext().setAuthentication(
+                new OAuth2AuthenticationToken(principal, principal.getAuthorities(), "google"));
+        doThrow(new QuotaExceededException(11 * MB, 10 * MB)).when(quotaService)
+                .checkAvailable(eq(user), longThat(bytes -> bytes > 10 * MB));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void bodiesPastTheQuotaAreRefusedBeforeParsing() {
+        HttpServletRequest request = upload(20 * MB);
+
+        assertThatThrownBy(() -> interceptor.preHandle(request, new MockHttpServletResponse(), new Object()))
+                .isInstanceOf(QuotaExceededException.class);
+    }
+
+    @Test
+    void bodiesThatFitGoThrough() {
+        assertThat(interceptor.preHandle(upload(5 * MB), new MockHttpServletResponse(), new Object())).isTrue();
+    }
+
+    @Test
+    void multipartOverheadAloneDoesNotRefuseAFileThatFits() {
+        // A 10 MB file, the whole remaining quota, plus its part headers
+        assertThat(interceptor.preHandle(upload(10 * MB + 300), new MockHttpServletResponse(), new Object()))
+                .isTrue();
+    }
+
+    @Test
+    void bodiesOfUnknownLengthAreLeftToTheController() {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/files/upload");
+
+        assertThat(interceptor.preHandle(request, new MockHttpServletResponse(), new Object())).isTrue();
+        verify(quotaService, never()).checkAvailable(eq(user), anyLong());
+    }
+
+    private static HttpServletRequest upload(long contentLength) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/files/upload");
+        request.setContentType("multipart/form-data; boundary=x");
+        // Declared, not sent: nothing may read the body
+        return new HttpServletRequestWrapper(request) {
+            @Override
+            public long getContentLengthLong() {
+                return contentLength;
+            }
+
+            @Override
+            public ServletInputStream getInputStream() {
+                throw new AssertionError("Body read before the quota check");
+            }
+        };
+    }
+
+}
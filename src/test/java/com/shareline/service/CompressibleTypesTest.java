@@ -0,0 +1,26 @@
+package com.shareline.service;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.NullSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompressibleTypesTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"text/plain", "text/csv; charset=UTF-8", "application/json", "application/ld+json",
+            "application/xml", "application/atom+xml", "image/svg+xml", "application/javascript",
+            "Application/JSON"})
+    void textLikeTypesAreCompressible(String mimeType) {
+        assertThat(CompressibleTypes.isCompressible(mimeType)).isTrue();
+    }
+
+    @ParameterizedTest
+    @NullSource
+    @ValueSource(strings = {"application/octet-stream", "application/x-executable", "application/x-tar",
+            "application/zip", "audio/wav", "image/bmp", "image/png", "video/mp4"})
+    void otherTypesAreLeftAsIs(String mimeType) {
+        assertThat(CompressibleTypes.isCompressible(mimeType)).isFalse();
+    }
+}
@@ -0,0 +1,213 @@
+package com.shareline.service;
+
+import com.shareline.entity.File;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ShareLinkSignerTest {
+
+    private static final String HASH = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+    private static final String KEY_1 = "1:" + key(1);
+    private static final String KEY_2 = "2:" + key(2);
+
+    @TempDir
+    Path uploadDir;
+
+    private FileStorageService storage;
+
+    @BeforeEach
+    void setUp() {
+        // blobKey() is all the signer uses, so no backend is needed
+        storage = new FileStorageService(uploadDir.toString(), null);
+    }
+
+    @Test
+    void verifyReturnsTheSignedFile() {
+        ShareLinkSigner signer = signer(KEY_1, 1);
+        File file = sharedFile();
+
+        File verified = signer.verify(signer.sign(file)).orElseThrow();
+
+        assertThat(verified.getId()).isEqualTo(file.getId());
+        assertThat(verified.getShareGeneration()).isEqualTo(3);
+        assertThat(verified.getBlobHash()).isEqualTo(HASH);
+        assertThat(verified.getChecksum()).isEqualTo(HASH);
+        assertThat(verified.getFilename()).isEqualTo(storage.blobKey(HASH));
+        assertThat(verified.getFileSize()).isEqualTo(file.getFileSize());
+        assertThat(verified.getMimeType()).isEqualTo("application/pdf");
+        assertThat(verified.getCrc32()).isEqualTo(0xCBF43926L);
+        assertThat(verified.getOriginalFilename()).isEqualTo("Quarterly report — Q3.pdf");
+        assertThat(verified.getCreatedAt()).isEqualTo(file.getCreatedAt().truncatedTo(ChronoUnit.MILLIS));
+        assertThat(verified.getShareExpiresAt()).isEqualTo(file.getShareExpiresAt().truncatedTo(ChronoUnit.MILLIS));
+        assertThat(verified.getProcessingStatus()).isEqualTo(File.ProcessingStatus.READY);
+    }
+
+    @Test
+    void verifyKeepsOptionalFieldsEmpty() {
+        ShareLinkSigner signer = signer(KEY_1, 1);
+        File file = sharedFile();
+        file.setMimeType(null);
+        file.setCrc32(null);
+
+        File verified = signer.verify(signer.sign(file)).orElseThrow();
+
+        assertThat(verified.getMimeType()).isNull();
+        assertThat(verified.getCrc32()).isNull();
+    }
+
+    @Test
+    void verifyRejectsAChangedPayload() {
+        ShareLinkSigner signer = signer(KEY_1, 1);
+        String token = signer.sign(sharedFile());
+        byte[] payload = Base64.getUrlDecoder().decode(token.substring(0, token.indexOf('.')));
+        // Bump the file id
+        payload[10]++;
+        String tampered = Base64.getUrlEncoder().withoutPadding().encodeToString(payload)
+                + token.substring(token.indexOf('.'));
+
+        assertThat(signer.verify(tampered)).isEmpty();
+    }
+
+    @Test
+    void verifyRejectsAChangedSignature() {
+        ShareLinkSigner signer = signer(KEY_1, 1);
+        String token = signer.sign(sharedFile());
+        int mac = token.indexOf('.') + 1;
+        String tampered = token.substring(0, mac) + (token.charAt(mac) == 'A' ? 'B' : 'A') + token.substring(mac + 1);
+
+        assertThat(signer.verify(tampered)).isEmpty();
+    }
+
+    @Test
+    void verifyRejectsMalformedTokens() {
+        ShareLinkSigner signer = signer(KEY_1, 1);
+
+        assertThat(signer.verify("no-separator")).isEmpty();
+        assertThat(signer.verify(".abc")).isEmpty();
+        assertThat(signer.verify("not*base64.abc")).isEmpty();
+        assertThat(signer.verify("AQ.abc")).isEmpty();
+    }
+
+    @Test
+    void verifyRejectsTokensFromAnUnknownKeyVersion() {
+        String token = signer(KEY_1, 1).sign(sharedFile());
+
+        assertThat(signer(KEY_2, 2).verify(token)).isEmpty();
+    }
+
+    @Test
+    void verifyAcceptsTokensFromARetiringKey() {
+        String token = signer(KEY_1, 1).sign(sharedFile());
+        ShareLinkSigner rotated = signer(KEY_1 + "," + KEY_2, 2);
+
+        assertThat(rotated.verify(token)).isPresent();
+        assertThat(rotated.verify(rotated.sign(sharedFile()))).isPresent();
+    }
+
+    @Test
+    void verifyRejectsTheSameVersionWithAnotherSecret() {
+        String token = signer(KEY_1, 1).sign(sharedFile());
+
+        assertThat(signer("1:" + key(9), 1).verify(token)).isEmpty();
+    }
+
+    @Test
+    void linksExpireWithTheShare() {
+        ShareLinkSigner signer = signer(KEY_1, 1);
+        File file = sharedFile();
+        file.setShareExpiresAt(LocalDateTime.now().minusMinutes(1));
+
+        Optional<File> verified = signer.verify(signer.sign(file));
+
+        // Still genuine; the caller refuses it as expired
+        assertThat(verified).isPresent();
+        assertThat(verified.get().isShareExpired()).isTrue();
+    }
+
+    @Test
+    void linksLiveAtMostMaxDays() {
+        ShareLinkSigner signer = signer(KEY_1, 1);
+        File file = sharedFile();
+        file.setShareExpiresAt(null);
+
+        LocalDateTime expiry = signer.verify(signer.sign(file)).orElseThrow().getShareExpiresAt();
+
+        assertThat(expiry).isBetween(LocalDateTime.now().plusDays(29), LocalDateTime.now().plusDays(30));
+        assertThat(signer.expiryFor(LocalDateTime.now().plusDays(90))).isBefore(LocalDateTime.now().plusDays(31));
+        LocalDateTime soon = LocalDateTime.now().plusDays(2);
+        assertThat(signer.expiryFor(soon)).isEqualTo(soon);
+    }
+
+    @Test
+    void onlyReadyContentAddressedFilesAreSigned() {
+        ShareLinkSigner signer = signer(KEY_1, 1);
+        File processing = sharedFile();
+        processing.setProcessingStatus(File.ProcessingStatus.PROCESSING);
+        File legacy = sharedFile();
+        legacy.setBlobHash(null);
+        legacy.setFilename("42/6a1c.pdf");
+        File unmigrated = sharedFile();
+        unmigrated.setFilename("42/6a1c.pdf");
+
+        assertThat(signer.canSign(sharedFile())).isTrue();
+        assertThat(signer.canSign(processing)).isFalse();
+        assertThat(signer.canSign(legacy)).isFalse();
+        assertThat(signer.canSign(unmigrated)).isFalse();
+        assertThatThrownBy(() -> signer.sign(processing)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(new ShareLinkSigner(storage, false, KEY_1, 1, 30).canSign(sharedFile())).isFalse();
+    }
+
+    @Test
+    void keysAreValidatedAtStartup() {
+        assertThatThrownBy(() -> signer(KEY_1, 2)).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> signer("1:" + Base64.getEncoder().encodeToString(new byte[16]), 1))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> signer("70000:" + key(1), 70000)).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> signer("no-version", 1)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void signedTokensAreToldApartFromRandomTokens() {
+        assertThat(ShareLinkSigner.isSignedToken(signer(KEY_1, 1).sign(sharedFile()))).isTrue();
+        assertThat(ShareLinkSigner.isSignedToken("3f2b8a4e-1c0d-4e6f-9a7b-5d4c3b2a1f0e")).isFalse();
+        assertThat(ShareLinkSigner.isSignedToken(null)).isFalse();
+    }
+
+    private ShareLinkSigner signer(String keys, int activeKey) {
+        return new ShareLinkSigner(storage, true, keys, activeKey, 30);
+    }
+
+    private File sharedFile() {
+        File file = new File();
+        file.setId(1234L);
+        file.setBlobHash(HASH);
+        file.setChecksum(HASH);
+        file.setFilename(storage.blobKey(HASH));
+        file.setOriginalFilename("Quarterly report — Q3.pdf");
+        file.setFileSize(5_000_000_000L);
+        file.setMimeType("application/pdf");
+        file.setCrc32(0xCBF43926L);
+        file.setCreatedAt(LocalDateTime.now().minusDays(3));
+        file.setShareExpiresAt(LocalDateTime.now().plusDays(7));
+        file.setShareGeneration(3);
+        file.setProcessingStatus(File.ProcessingStatus.READY);
+        return file;
+    }
+
+    private static String key(int seed) {
+        byte[] key = new byte[32];
+        Arrays.fill(key, (byte) seed);
+        return Base64.getEncoder().encodeToString(key);
+    }
+}
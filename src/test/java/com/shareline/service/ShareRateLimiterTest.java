@@ -0,0 +1,104 @@
+package com.shareline.service;
+
+import com.shareline.service.ShareRateLimiter.Scope;
+import com.shareline.service.ShareRateLimiter.Throttle;
+import org.junit.jupiter.api.Test;
+
+import java.io.InterruptedIOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ShareRateLimiterTest {
+
+    private static final String IP = "203.0.113.7";
+
+    @Test
+    void rejectsOnlyWhenTheWaitWouldExceedTheMaximum() throws InterruptedIOException {
+        // One request per second per token, no byte limits, IP and node out of the way
+        ShareRateLimiter limiter = limiter(100, 1, 1);
+
+        limiter.admit("a", IP);
+
+        assertThatThrownBy(() -> limiter.admit("a", IP))
+                .isInstanceOfSatisfying(RateLimitExceededException.class,
+                        e -> assertThat(e.getRetryAfterSeconds()).isEqualTo(1));
+        assertThat(limiter.snapshot().get(Scope.TOKEN).requestsRejected()).isEqualTo(1);
+        // Other tokens have their own buckets
+        limiter.admit("b", IP);
+    }
+
+    @Test
+    void waitsInsteadOfRejectingWithinTheMaximum() throws InterruptedIOException {
+        // 50 requests per second: the second request waits about 20ms
+        ShareRateLimiter limiter = limiter(100, 50, 1);
+
+        limiter.admit("a", IP);
+        long start = System.nanoTime();
+        limiter.admit("a", IP);
+
+        assertThat(System.nanoTime() - start).isGreaterThan(10_000_000L);
+        assertThat(limiter.snapshot().get(Scope.TOKEN).requestsDelayed()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectedRequestsAreRefundedToEveryScope() throws InterruptedIOException {
+        // The IP allows exactly two requests; a rejected third must not use up one of them
+        ShareRateLimiter limiter = limiter(100, 1, 1, 0.001, 2);
+
+        limiter.admit("a", IP);
+        assertThatThrownBy(() -> limiter.admit("a", IP)).isInstanceOf(RateLimitExceededException.class);
+
+        limiter.admit("b", IP);
+        assertThatThrownBy(() -> limiter.admit("c", IP)).isInstanceOf(RateLimitExceededException.class);
+    }
+
+    @Test
+    void archivesCountAgainstEveryTokenInThem() throws InterruptedIOException {
+        ShareRateLimiter limiter = limiter(100, 1, 1);
+
+        limiter.admit(List.of("a", "b"), IP);
+
+        assertThatThrownBy(() -> limiter.admit("a", IP)).isInstanceOf(RateLimitExceededException.class);
+        assertThatThrownBy(() -> limiter.admit("b", IP)).isInstanceOf(RateLimitExceededException.class);
+        assertThatThrownBy(() -> limiter.admit(List.of("c", "a"), IP)).isInstanceOf(RateLimitExceededException.class);
+        // The rejected archive gave back what it took from "c"
+        limiter.admit("c", IP);
+    }
+
+    @Test
+    void archiveBodiesArePacedByEveryTokensBandwidth() throws InterruptedIOException {
+        // 64KB/s per token: the second link's bucket is drained by the archive too
+        ShareRateLimiter limiter = new ShareRateLimiter(true, 10, 100, 600,
+                1000, 1000, 64 * 1024, 1000, 1000, 0, 1000, 1000, 0);
+
+        Throttle archive = limiter.admit(List.of("a", "b"), IP);
+        assertThat(archive.isUnlimited()).isFalse();
+        archive.acquire(64 * 1024);
+
+        long start = System.nanoTime();
+        limiter.admit("b", IP).acquire(6 * 1024);
+        assertThat(System.nanoTime() - start).isGreaterThan(50_000_000L);
+    }
+
+    @Test
+    void disabledLimiterAdmitsEverything() throws InterruptedIOException {
+        ShareRateLimiter limiter = new ShareRateLimiter(false, 0, 100, 600,
+                1, 1, 1, 1, 1, 1, 1, 1, 1);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(limiter.admit(List.of("a", "b"), IP).isUnlimited()).isTrue();
+        }
+    }
+
+    private static ShareRateLimiter limiter(long maxWaitMs, double tokenRequests, double tokenBurst) {
+        return limiter(maxWaitMs, tokenRequests, tokenBurst, 1000, 1000);
+    }
+
+    private static ShareRateLimiter limiter(long maxWaitMs, double tokenRequests, double tokenBurst,
+                                            double ipRequests, double ipBurst) {
+        return new ShareRateLimiter(true, maxWaitMs, 100, 600,
+                tokenRequests, tokenBurst, 0, ipRequests, ipBurst, 0, 1000, 1000, 0);
+    }
+}
@@ -0,0 +1,80 @@
+package com.shareline.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong now = new AtomicLong(1_000 * SECOND);
+
+    @Test
+    void startsFullAndServesTheBurstWithoutWaiting() {
+        TokenBucket bucket = new TokenBucket(10, 5, now::get);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(bucket.reserve(1)).isZero();
+        }
+        assertThat(bucket.reserve(1)).isEqualTo(SECOND / 10);
+    }
+
+    @Test
+    void refillsAtTheConfiguredRate() {
+        TokenBucket bucket = new TokenBucket(10, 5, now::get);
+        bucket.reserve(5);
+
+        now.addAndGet(SECOND / 5);
+
+        assertThat(bucket.reserve(2)).isZero();
+        assertThat(bucket.reserve(1)).isEqualTo(SECOND / 10);
+    }
+
+    @Test
+    void neverRefillsPastCapacity() {
+        TokenBucket bucket = new TokenBucket(10, 5, now::get);
+
+        now.addAndGet(60 * SECOND);
+
+        assertThat(bucket.reserve(5)).isZero();
+        assertThat(bucket.reserve(1)).isEqualTo(SECOND / 10);
+    }
+
+    @Test
+    void reservationsQueueUpBehindEachOthersDebt() {
+        TokenBucket bucket = new TokenBucket(1_000, 1_000, now::get);
+        bucket.reserve(1_000);
+
+        assertThat(bucket.reserve(500)).isEqualTo(SECOND / 2);
+        assertThat(bucket.reserve(500)).isEqualTo(SECOND);
+
+        // The debt is paid off by refill, not forgiven
+        now.addAndGet(SECOND / 2);
+        assertThat(bucket.reserve(1)).isEqualTo(SECOND / 2 + SECOND / 1_000);
+    }
+
+    @Test
+    void refundsGiveBackUnusedReservations() {
+        TokenBucket bucket = new TokenBucket(10, 5, now::get);
+        bucket.reserve(5);
+        assertThat(bucket.reserve(3)).isPositive();
+
+        bucket.refund(3);
+
+        assertThat(bucket.reserve(1)).isEqualTo(SECOND / 10);
+    }
+
+    @Test
+    void refundsDoNotOverfill() {
+        TokenBucket bucket = new TokenBucket(10, 5, now::get);
+
+        bucket.refund(100);
+
+        assertThat(bucket.reserve(5)).isZero();
+        assertThat(bucket.reserve(1)).isPositive();
+    }
+}
@@ -0,0 +1,107 @@
+package com.shareline.service;
+
+import com.shareline.entity.UploadSession;
+import com.shareline.entity.User;
+import com.shareline.repository.UploadSessionRepository;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UploadSessionServiceTest {
+
+    private static final int CHUNK_SIZE = 4;
+
+    @TempDir
+    Path uploadDir;
+
+    private UploadSessionRepository repository;
+    private FileStorageService storage;
+    private FileService fileService;
+    private UploadSessionService service;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(UploadSessionRepository.class);
+        storage = new FileStorageService(uploadDir.toString(), null);
+        fileService = mock(FileService.class);
+        service = new UploadSessionService(repository, storage, fileService, mock(QuotaService.class),
+                new StageObservations(ObservationRegistry.NOOP), CHUNK_SIZE, 24);
+        user = new User();
+        user.setId(7L);
+    }
+
+    @Test
+    void expiredSessionsRefuseChunks() {
+        UploadSession session = session(LocalDateTime.now().minusMinutes(1));
+
+        assertThatThrownBy(() -> service.writeChunk(session.getId(), 0, new ByteArrayInputStream(new byte[4]), user))
+                .isInstanceOf(UploadSessionExpiredException.class);
+        assertThat(Files.exists(uploadDir.resolve(session.getStoredFilename() + ".part"))).isFalse();
+        verify(repository, never()).markChunkReceived(any(), anyInt());
+    }
+
+    @Test
+    void expiredSessionsCannotBeCompleted() throws Exception {
+        UploadSession session = session(LocalDateTime.now().minusMinutes(1));
+        when(repository.findReceivedChunks(session.getId())).thenReturn(List.of(0, 1));
+
+        assertThatThrownBy(() -> service.completeSession(session.getId(), user))
+                .isInstanceOf(UploadSessionExpiredException.class);
+        verify(fileService, never()).saveStoredFile(any(), any(), any());
+    }
+
+    @Test
+    void liveSessionsAcceptChunks() throws Exception {
+        UploadSession session = session(LocalDateTime.now().plusHours(1));
+
+        service.writeChunk(session.getId(), 1, new ByteArrayInputStream(new byte[] {1, 2, 3, 4}), user);
+
+        verify(repository).markChunkReceived(session.getId(), 1);
+    }
+
+    @Test
+    void aFailedSaveEndsTheSession() throws Exception {
+        UploadSession session = session(LocalDateTime.now().plusHours(1));
+        when(repository.findReceivedChunks(session.getId())).thenReturn(List.of(0, 1));
+        service.writeChunk(session.getId(), 0, new ByteArrayInputStream(new byte[] {1, 2, 3, 4}), user);
+        service.writeChunk(session.getId(), 1, new ByteArrayInputStream(new byte[] {5, 6, 7, 8}), user);
+        when(fileService.saveStoredFile(any(), eq("data.bin"), eq(user)))
+                .thenThrow(new QuotaExceededException(8, 0));
+
+        assertThatThrownBy(() -> service.completeSession(session.getId(), user))
+                .isInstanceOf(QuotaExceededException.class);
+        verify(repository).delete(session);
+    }
+
+    private UploadSession session(LocalDateTime expiresAt) {
+        UploadSession session = new UploadSession();
+        session.setId("3f2b8a4e-1c0d-4e6f-9a7b-5d4c3b2a1f0e");
+        session.setUser(user);
+        session.setOriginalFilename("data.bin");
+        session.setStoredFilename(storage.newStoredFilename("data.bin"));
+        session.setTotalSize(8L);
+        session.setChunkSize(CHUNK_SIZE);
+        session.setExpiresAt(expiresAt);
+        when(repository.findById(session.getId())).thenReturn(Optional.of(session));
+        return session;
+    }
+}
@@ -0,0 +1,296 @@
+package com.shareline.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ZipArchiveWriterTest {
+
+    private static final LocalDateTime MODIFIED = LocalDateTime.of(2024, 5, 17, 12, 30, 44);
+    private static final long ZIP64_THRESHOLD = 0xFFFFFFFFL;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void storedArchiveIsReadableAndHasTheComputedLength() throws IOException {
+        byte[] first = content(10_000, 1);
+        byte[] second = content(3, 2);
+        ZipArchiveWriter archive = new ZipArchiveWriter(List.of(
+                stored("first.bin", first), stored("dir_second.bin", second), stored("empty", new byte[0])));
+
+        byte[] bytes = write(archive);
+
+        assertThat(archive.isSeekable()).isTrue();
+        assertThat(archive.length()).isEqualTo(bytes.length);
+        try (ZipFile zip = open(bytes)) {
+            assertThat(zip.size()).isEqualTo(3);
+            assertEntry(zip, "first.bin", first, ZipEntry.STORED);
+            assertEntry(zip, "dir_second.bin", second, ZipEntry.STORED);
+            assertEntry(zip, "empty", new byte[0], ZipEntry.STORED);
+        }
+    }
+
+    @Test
+    void localHeadersSitAtTheRecordedOffsets() throws IOException {
+        byte[] first = content(1234, 1);
+        byte[] second = content(99, 2);
+        String secondName = "zweite Datei – ü.txt";
+        byte[] bytes = write(new ZipArchiveWriter(List.of(stored("a.bin", first), stored(secondName, second))));
+
+        List<CentralEntry> directory = centralDirectory(bytes);
+
+        assertThat(directory).extracting(CentralEntry::offset)
+                .containsExactly(0L, 30L + "a.bin".length() + first.length);
+        for (CentralEntry entry : directory) {
+            assertThat(le(bytes, (int) entry.offset(), 4)).isEqualTo(0x04034b50L);
+        }
+        assertThat(directory.get(1).name()).isEqualTo(secondName);
+    }
+
+    @Test
+    void rangesMatchTheFullArchive() throws IOException {
+        byte[] first = content(100_000, 1);
+        byte[] second = content(5_000, 2);
+        ZipArchiveWriter archive = new ZipArchiveWriter(List.of(stored("a", first), remote("b", second)));
+        byte[] full = write(archive);
+
+        long[][] ranges = {{0, 0}, {0, 29}, {10, 50_000}, {50_000, full.length - 1}, {full.length - 22, full.length - 1},
+                {100_020, 100_040}};
+        for (long[] range : ranges) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            archive.write(out, range[0], range[1]);
+            assertThat(out.toByteArray())
+                    .as("bytes %d-%d", range[0], range[1])
+                    .isEqualTo(Arrays.copyOfRange(full, (int) range[0], (int) range[1] + 1));
+        }
+    }
+
+    @Test
+    void outputIsTheSameEveryTime() throws IOException {
+        List<ZipArchiveWriter.Entry> entries = List.of(stored("a", content(500, 1)),
+                deflated("b.txt", "hello hello hello".repeat(100).getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(write(new ZipArchiveWriter(entries))).isEqualTo(write(new ZipArchiveWriter(entries)));
+    }
+
+    @Test
+    void deflatedEntriesAreReadableButMakeTheArchiveUnseekable() throws IOException {
+        byte[] text = "line of text\n".repeat(1_000).getBytes(StandardCharsets.UTF_8);
+        ZipArchiveWriter archive = new ZipArchiveWriter(List.of(deflated("a.txt", text), stored("b", content(10, 3))));
+
+        byte[] bytes = write(archive);
+
+        assertThat(archive.isSeekable()).isFalse();
+        assertThat(bytes.length).isLessThan(text.length);
+        assertThatThrownBy(archive::length).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> archive.write(new ByteArrayOutputStream(), 0, 10))
+                .isInstanceOf(IllegalStateException.class);
+        try (ZipFile zip = open(bytes)) {
+            assertEntry(zip, "a.txt", text, ZipEntry.DEFLATED);
+        }
+    }
+
+    @Test
+    void entriesBelowTheZip64ThresholdHaveNoZip64Fields() throws IOException {
+        long size = ZIP64_THRESHOLD - 1;
+        ZipArchiveWriter archive = new ZipArchiveWriter(List.of(sparse("big", size)));
+
+        byte[] header = range(archive, 0, 32);
+        assertThat(le(header, 18, 4)).isEqualTo(size);
+        assertThat(le(header, 22, 4)).isEqualTo(size);
+        // Extra field length
+        assertThat(le(header, 28, 2)).isZero();
+
+        // The directory starts past 4 GB, so the end records need ZIP64 anyway
+        Zip64End end = zip64End(archive);
+        assertThat(end.directoryOffset()).isEqualTo(30 + 3 + size);
+        assertThat(end.entries()).isEqualTo(1);
+    }
+
+    @Test
+    void entriesAtTheZip64ThresholdCarryZip64Sizes() throws IOException {
+        long size = ZIP64_THRESHOLD;
+        ZipArchiveWriter archive = new ZipArchiveWriter(List.of(sparse("big", size), sparse("small", 10)));
+
+        byte[] header = range(archive, 0, 52);
+        assertThat(le(header, 18, 4)).isEqualTo(ZIP64_THRESHOLD);
+        assertThat(le(header, 28, 2)).isEqualTo(20);
+        assertThat(le(header, 33, 2)).isEqualTo(1);
+        assertThat(ByteBuffer.wrap(header, 37, 16).order(ByteOrder.LITTLE_ENDIAN).getLong()).isEqualTo(size);
+
+        Zip64End end = zip64End(archive);
+        byte[] directory = range(archive, end.directoryOffset(), end.directoryOffset() + end.directorySize() - 1);
+        List<CentralEntry> entries = parseCentralDirectory(directory, end.entries());
+        assertThat(entries).extracting(CentralEntry::size).containsExactly(size, 10L);
+        // The second entry starts past 4 GB, so its offset moves to the ZIP64 extra field
+        assertThat(entries).extracting(CentralEntry::offset).containsExactly(0L, 30L + 3 + 20 + size);
+        assertThat(end.directoryOffset()).isEqualTo(30L + 3 + 20 + size + 30 + 5 + 10);
+        assertThat(archive.length()).isEqualTo(end.directoryOffset() + end.directorySize() + 56 + 20 + 22);
+    }
+
+    @Test
+    void smallArchivesHaveNoZip64Records() throws IOException {
+        byte[] bytes = write(new ZipArchiveWriter(List.of(stored("a", content(100, 1)))));
+
+        // End of central directory only, no ZIP64 locator before it
+        assertThat(le(bytes, bytes.length - 22, 4)).isEqualTo(0x06054b50L);
+        assertThat(le(bytes, bytes.length - 42, 4)).isNotEqualTo(0x07064b50L);
+    }
+
+    private ZipArchiveWriter.Entry stored(String name, byte[] content) throws IOException {
+        Path path = Files.write(tempDir.resolve("content-" + name.hashCode()), content);
+        return new ZipArchiveWriter.Entry(name, path, null, content.length, crc(content), false, MODIFIED);
+    }
+
+    private static ZipArchiveWriter.Entry remote(String name, byte[] content) {
+        return new ZipArchiveWriter.Entry(name, null,
+                (offset, length) -> new ByteArrayInputStream(content, (int) offset, (int) length),
+                content.length, null, false, MODIFIED);
+    }
+
+    private static ZipArchiveWriter.Entry deflated(String name, byte[] content) {
+        return new ZipArchiveWriter.Entry(name, null,
+                (offset, length) -> new ByteArrayInputStream(content, (int) offset, (int) length),
+                content.length, null, true, MODIFIED);
+    }
+
+    /**
+     * An entry whose content is never read as long as only its headers are requested.
+     */
+    private static ZipArchiveWriter.Entry sparse(String name, long size) {
+        return new ZipArchiveWriter.Entry(name, null, (offset, length) -> {
+            throw new IOException("Content of " + name + " should not be read");
+        }, size, 0L, false, MODIFIED);
+    }
+
+    private static byte[] write(ZipArchiveWriter archive) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        archive.write(out);
+        return out.toByteArray();
+    }
+
+    private static byte[] range(ZipArchiveWriter archive, long start, long end) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        archive.write(out, start, end);
+        return out.toByteArray();
+    }
+
+    private ZipFile open(byte[] bytes) throws IOException {
+        Path file = Files.write(Files.createTempFile(tempDir, "archive", ".zip"), bytes);
+        return new ZipFile(file.toFile());
+    }
+
+    private static void assertEntry(ZipFile zip, String name, byte[] content, int method) throws IOException {
+        ZipEntry entry = zip.getEntry(name);
+        assertThat(entry).as(name).isNotNull();
+        assertThat(entry.getMethod()).isEqualTo(method);
+        assertThat(entry.getCrc()).isEqualTo(crc(content));
+        assertThat(entry.getLastModifiedTime().toMillis())
+                .isEqualTo(MODIFIED.atZone(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli());
+        try (InputStream in = zip.getInputStream(entry)) {
+            assertThat(in.readAllBytes()).isEqualTo(content);
+        }
+    }
+
+    private static Zip64End zip64End(ZipArchiveWriter archive) throws IOException {
+        long length = archive.length();
+        byte[] tail = range(archive, length - 98, length - 1);
+        assertThat(le(tail, 76, 4)).isEqualTo(0x06054b50L);
+        // Offsets in the classic end record are saturated
+        assertThat(le(tail, 76 + 16, 4)).isEqualTo(ZIP64_THRESHOLD);
+        assertThat(le(tail, 56, 4)).isEqualTo(0x07064b50L);
+        long zip64EndOffset = ByteBuffer.wrap(tail, 64, 8).order(ByteOrder.LITTLE_ENDIAN).getLong();
+        assertThat(zip64EndOffset).isEqualTo(length - 98);
+        assertThat(le(tail, 0, 4)).isEqualTo(0x06064b50L);
+        ByteBuffer end = ByteBuffer.wrap(tail).order(ByteOrder.LITTLE_ENDIAN);
+        return new Zip64End(end.getLong(32), end.getLong(40), end.getLong(48));
+    }
+
+    private static List<CentralEntry> centralDirectory(byte[] bytes) {
+        int end = bytes.length - 22;
+        assertThat(le(bytes, end, 4)).isEqualTo(0x06054b50L);
+        int count = (int) le(bytes, end + 10, 2);
+        int offset = (int) le(bytes, end + 16, 4);
+        return parseCentralDirectory(Arrays.copyOfRange(bytes, offset, end), count);
+    }
+
+    private static List<CentralEntry> parseCentralDirectory(byte[] directory, long count) {
+        List<CentralEntry> entries = new ArrayList<>();
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            assertThat(le(directory, position, 4)).isEqualTo(0x02014b50L);
+            long size = le(directory, position + 24, 4);
+            long compressedSize = le(directory, position + 20, 4);
+            long offset = le(directory, position + 42, 4);
+            int nameLength = (int) le(directory, position + 28, 2);
+            int extraLength = (int) le(directory, position + 30, 2);
+            String name = new String(directory, position + 46, nameLength, StandardCharsets.UTF_8);
+            ByteBuffer extra = ByteBuffer.wrap(directory, position + 46 + nameLength, extraLength)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (extraLength > 0) {
+                assertThat(extra.getShort()).isEqualTo((short) 1);
+                extra.getShort();
+                // ZIP64 fields appear in this order, only for the values that overflowed
+                if (size == ZIP64_THRESHOLD) {
+                    size = extra.getLong();
+                }
+                if (compressedSize == ZIP64_THRESHOLD) {
+                    extra.getLong();
+                }
+                if (offset == ZIP64_THRESHOLD) {
+                    offset = extra.getLong();
+                }
+            }
+            entries.add(new CentralEntry(name, size, offset));
+            position += 46 + nameLength + extraLength;
+        }
+        assertThat(position).isEqualTo(directory.length);
+        return entries;
+    }
+
+    private static long le(byte[] bytes, int offset, int length) {
+        long value = 0;
+        for (int i = length - 1; i >= 0; i--) {
+            value = (value << 8) | (bytes[offset + i] & 0xff);
+        }
+        return value;
+    }
+
+    private static byte[] content(int size, int seed) {
+        byte[] content = new byte[size];
+        new java.util.Random(seed).nextBytes(content);
+        return content;
+    }
+
+    private static long crc(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return crc.getValue();
+    }
+
+    private record CentralEntry(String name, long size, long offset) {
+    }
+
+    private record Zip64End(long entries, long directorySize, long directoryOffset) {
+    }
+}
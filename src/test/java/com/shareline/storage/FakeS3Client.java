@@ -0,0 +1,213 @@
+package com.shareline.storage;
+
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
+import software.amazon.awssdk.services.s3.model.HeadBucketResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.NoSuchUploadException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An in-memory bucket behind the synchronous S3 client API, recording the calls {@link S3Storage}
+ * makes: single PUTs, multipart uploads part by part, aborts and ranged GETs.
+ */
+class FakeS3Client implements S3Client {
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    final List<String> puts = new CopyOnWriteArrayList<>();
+    final List<String> ranges = new CopyOnWriteArrayList<>();
+    final List<String> aborted = new CopyOnWriteArrayList<>();
+    // Part lengths of every multipart upload that was completed, by object key
+    final Map<String, List<Long>> completedParts = new ConcurrentHashMap<>();
+
+    private final Map<String, SortedMap<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    private final AtomicInteger uploadIds = new AtomicInteger();
+    private volatile int failingPart;
+
+    /**
+     * Makes every upload of the given part number fail, 0 for none.
+     */
+    void failPart(int partNumber) {
+        this.failingPart = partNumber;
+    }
+
+    int openUploads() {
+        return uploads.size();
+    }
+
+    @Override
+    public HeadBucketResponse headBucket(HeadBucketRequest request) {
+        return HeadBucketResponse.builder().build();
+    }
+
+    @Override
+    public PutObjectResponse putObject(PutObjectRequest request, RequestBody body) {
+        byte[] content = read(body);
+        check(request.contentLength() == content.length, "Content-Length doesn't match the body");
+        puts.add(request.key());
+        objects.put(request.key(), content);
+        return PutObjectResponse.builder().eTag(etag(content)).build();
+    }
+
+    @Override
+    public CreateMultipartUploadResponse createMultipartUpload(CreateMultipartUploadRequest request) {
+        String uploadId = request.key() + "#" + uploadIds.incrementAndGet();
+        uploads.put(uploadId, new ConcurrentSkipListMap<>());
+        return CreateMultipartUploadResponse.builder().bucket(request.bucket()).key(request.key())
+                .uploadId(uploadId).build();
+    }
+
+    @Override
+    public UploadPartResponse uploadPart(UploadPartRequest request, RequestBody body) {
+        SortedMap<Integer, byte[]> parts = upload(request.uploadId());
+        if (request.partNumber() == failingPart) {
+            throw S3Exception.builder().statusCode(500).message("Part " + failingPart + " failed").build();
+        }
+        byte[] content = read(body);
+        check(request.contentLength() == content.length, "Content-Length doesn't match the part");
+        parts.put(request.partNumber(), content);
+        return UploadPartResponse.builder().eTag(etag(content)).build();
+    }
+
+    @Override
+    public CompleteMultipartUploadResponse completeMultipartUpload(CompleteMultipartUploadRequest request) {
+        SortedMap<Integer, byte[]> parts = upload(request.uploadId());
+        List<CompletedPart> completed = request.multipartUpload().parts();
+        check(!completed.isEmpty(), "A multipart upload needs at least one part");
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        List<Long> lengths = new ArrayList<>();
+        for (int i = 0; i < completed.size(); i++) {
+            CompletedPart part = completed.get(i);
+            byte[] bytes = parts.get(part.partNumber());
+            check(part.partNumber() == i + 1, "Parts must be listed in order");
+            check(bytes != null && etag(bytes).equals(part.eTag()), "Unknown part " + part.partNumber());
+            check(i == completed.size() - 1 || bytes.length >= S3Storage.MIN_PART_SIZE,
+                    "Part " + part.partNumber() + " is below the minimum size");
+            content.writeBytes(bytes);
+            lengths.add((long) bytes.length);
+        }
+        uploads.remove(request.uploadId());
+        objects.put(request.key(), content.toByteArray());
+        completedParts.put(request.key(), lengths);
+        return CompleteMultipartUploadResponse.builder().bucket(request.bucket()).key(request.key()).build();
+    }
+
+    @Override
+    public AbortMultipartUploadResponse abortMultipartUpload(AbortMultipartUploadRequest request) {
+        upload(request.uploadId());
+        uploads.remove(request.uploadId());
+        aborted.add(request.key());
+        return AbortMultipartUploadResponse.builder().build();
+    }
+
+    @Override
+    public ResponseInputStream<GetObjectResponse> getObject(GetObjectRequest request) {
+        byte[] content = objects.get(request.key());
+        if (content == null) {
+            throw NoSuchKeyException.builder().statusCode(404).message(request.key()).build();
+        }
+        int from = 0;
+        int to = content.length;
+        if (request.range() != null) {
+            ranges.add(request.range());
+            Matcher range = RANGE.matcher(request.range());
+            check(range.matches(), "Unsupported range " + request.range());
+            from = Integer.parseInt(range.group(1));
+            to = Math.min(content.length, Integer.parseInt(range.group(2)) + 1);
+            check(from < content.length, "Range not satisfiable: " + request.range());
+        }
+        byte[] body = Arrays.copyOfRange(content, from, to);
+        return new ResponseInputStream<>(GetObjectResponse.builder().contentLength((long) body.length).build(),
+                AbortableInputStream.create(new ByteArrayInputStream(body)));
+    }
+
+    @Override
+    public HeadObjectResponse headObject(HeadObjectRequest request) {
+        byte[] content = objects.get(request.key());
+        if (content == null) {
+            throw NoSuchKeyException.builder().statusCode(404).message(request.key()).build();
+        }
+        return HeadObjectResponse.builder().contentLength((long) content.length).lastModified(Instant.EPOCH).build();
+    }
+
+    @Override
+    public DeleteObjectResponse deleteObject(DeleteObjectRequest request) {
+        objects.remove(request.key());
+        return DeleteObjectResponse.builder().build();
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private SortedMap<Integer, byte[]> upload(String uploadId) {
+        SortedMap<Integer, byte[]> parts = uploads.get(uploadId);
+        if (parts == null) {
+            throw NoSuchUploadException.builder().statusCode(404).message(uploadId).build();
+        }
+        return parts;
+    }
+
+    private static byte[] read(RequestBody body) {
+        try (InputStream in = body.contentStreamProvider().newStream()) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String etag(byte[] content) {
+        return "\"" + Integer.toHexString(Arrays.hashCode(content)) + "-" + content.length + "\"";
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw S3Exception.builder().statusCode(400).message(message).build();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.shareline.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class S3StorageTest {
+
+    private static final long MB = 1024 * 1024;
+    private static final long PART = S3Storage.MIN_PART_SIZE;
+
+    @TempDir
+    Path tempDir;
+
+    private FakeS3Client s3;
+    private S3Storage storage;
+
+    @BeforeEach
+    void setUp() {
+        s3 = new FakeS3Client();
+        storage = new S3Storage(s3, "shareline", "files", PART, 4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        storage.close();
+    }
+
+    @Test
+    void partsGrowOnlyWhenTheyWouldExceedTheLimit() {
+        assertThat(S3Storage.partLength(12 * MB, PART)).isEqualTo(PART);
+        assertThat(S3Storage.partLength(PART * S3Storage.MAX_PARTS, PART)).isEqualTo(PART);
+        // One byte more and the parts grow just enough to stay within 10,000
+        long size = PART * S3Storage.MAX_PARTS + 1;
+        long partLength = S3Storage.partLength(size, PART);
+        assertThat(partLength).isEqualTo(PART + 1);
+        assertThat((size + partLength - 1) / partLength).isLessThanOrEqualTo(S3Storage.MAX_PARTS);
+        // 5 TB, S3's largest object
+        long largest = 5L * 1024 * 1024 * MB;
+        assertThat((largest + S3Storage.partLength(largest, PART) - 1) / S3Storage.partLength(largest, PART))
+                .isLessThanOrEqualTo(S3Storage.MAX_PARTS);
+    }
+
+    @Test
+    void filesUpToOnePartGoUpInOnePut() throws IOException {
+        byte[] content = bytes((int) PART);
+
+        storage.storeFile("blobs/ab/cd/abcd", file(content));
+
+        assertThat(s3.puts).containsExactly("files/blobs/ab/cd/abcd");
+        assertThat(s3.objects.get("files/blobs/ab/cd/abcd")).isEqualTo(content);
+        assertThat(s3.completedParts).isEmpty();
+    }
+
+    @Test
+    void largerFilesAreSlicedIntoParts() throws IOException {
+        byte[] content = bytes((int) (2 * PART + 3 * MB));
+        Path source = file(content);
+
+        storage.storeFile("big", source);
+
+        assertThat(s3.completedParts.get("files/big")).containsExactly(PART, PART, 3 * MB);
+        assertThat(s3.objects.get("files/big")).isEqualTo(content);
+        assertThat(s3.puts).isEmpty();
+        // Moved, like the local backend does
+        assertThat(Files.exists(source)).isFalse();
+    }
+
+    @Test
+    void filesThatFillTheirLastPartExactlyHaveNoEmptyPart() throws IOException {
+        byte[] content = bytes((int) (2 * PART));
+
+        storage.storeFile("even", file(content));
+
+        assertThat(s3.completedParts.get("files/even")).containsExactly(PART, PART);
+    }
+
+    @Test
+    void aFailedPartAbortsTheUploadAndKeepsTheSource() throws IOException {
+        Path source = file(bytes((int) (2 * PART + 1)));
+        s3.failPart(2);
+
+        assertThatThrownBy(() -> storage.storeFile("big", source)).isInstanceOf(IOException.class);
+
+        assertThat(s3.aborted).containsExactly("files/big");
+        assertThat(s3.openUploads()).isZero();
+        assertThat(s3.objects).doesNotContainKey("files/big");
+        assertThat(Files.exists(source)).isTrue();
+    }
+
+    @Test
+    void streamsOfKnownLengthUpToOnePartGoUpInOnePut() throws IOException {
+        byte[] content = bytes(1000);
+
+        storage.store("small", new ByteArrayInputStream(content), content.length);
+
+        assertThat(s3.puts).containsExactly("files/small");
+        assertThat(s3.objects.get("files/small")).isEqualTo(content);
+    }
+
+    @Test
+    void streamsOfUnknownLengthAreBufferedPartByPart() throws IOException {
+        byte[] content = bytes((int) (2 * PART + 1));
+
+        storage.store("stream", new ByteArrayInputStream(content), -1);
+
+        assertThat(s3.completedParts.get("files/stream")).containsExactly(PART, PART, 1L);
+        assertThat(s3.objects.get("files/stream")).isEqualTo(content);
+    }
+
+    @Test
+    void streamsThatFillTheirLastPartExactlyHaveNoEmptyPart() throws IOException {
+        byte[] content = bytes((int) PART);
+
+        storage.store("stream", new ByteArrayInputStream(content), -1);
+
+        assertThat(s3.completedParts.get("files/stream")).containsExactly(PART);
+    }
+
+    @Test
+    void emptyStreamsOfUnknownLengthBecomeEmptyObjects() throws IOException {
+        storage.store("empty", InputStream.nullInputStream(), -1);
+
+        assertThat(s3.completedParts.get("files/empty")).containsExactly(0L);
+        assertThat(s3.objects.get("files/empty")).isEmpty();
+    }
+
+    @Test
+    void aFailedStreamAbortsTheUpload() {
+        InputStream failing = new InputStream() {
+            private int read;
+
+            @Override
+            public int read() throws IOException {
+                if (read++ >= PART + 10) {
+                    throw new IOException("Client went away");
+                }
+                return 7;
+            }
+        };
+
+        assertThatThrownBy(() -> storage.store("stream", failing, -1)).hasMessage("Client went away");
+
+        assertThat(s3.aborted).containsExactly("files/stream");
+        assertThat(s3.openUploads()).isZero();
+        assertThat(s3.objects).doesNotContainKey("files/stream");
+    }
+
+    @Test
+    void rangesMapOntoInclusiveByteRanges() throws IOException {
+        byte[] content = bytes(1000);
+        storage.store("obj", new ByteArrayInputStream(content), content.length);
+
+        try (InputStream in = storage.openRange("obj", 100, 50)) {
+            assertThat(in.readAllBytes()).isEqualTo(Arrays.copyOfRange(content, 100, 150));
+        }
+        try (InputStream in = storage.openRange("obj", 999, 1)) {
+            assertThat(in.readAllBytes()).containsExactly(content[999]);
+        }
+        try (InputStream in = storage.openRange("obj", 0, 1000)) {
+            assertThat(in.readAllBytes()).isEqualTo(content);
+        }
+        assertThat(s3.ranges).isEqualTo(List.of("bytes=100-149", "bytes=999-999", "bytes=0-999"));
+    }
+
+    @Test
+    void emptyRangesAreNotRequested() throws IOException {
+        try (InputStream in = storage.openRange("missing", 10, 0)) {
+            assertThat(in.readAllBytes()).isEmpty();
+        }
+        assertThat(s3.ranges).isEmpty();
+    }
+
+    @Test
+    void missingObjectsAreReportedAsMissingFiles() throws IOException {
+        assertThatThrownBy(() -> storage.open("missing")).isInstanceOf(NoSuchFileException.class);
+        assertThatThrownBy(() -> storage.openRange("missing", 0, 10)).isInstanceOf(NoSuchFileException.class);
+        assertThat(storage.exists("missing")).isFalse();
+        assertThat(storage.describe("missing")).isEqualTo("s3://shareline/files/missing");
+    }
+
+    private Path file(byte[] content) throws IOException {
+        Path path = Files.createTempFile(tempDir, "upload", ".bin");
+        Files.write(path, content);
+        return path;
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}